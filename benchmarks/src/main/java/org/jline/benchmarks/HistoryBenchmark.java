@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.reader.History;
+import org.jline.reader.LineReader;
+import org.jline.reader.impl.LineReaderImpl;
+import org.jline.reader.impl.history.DefaultHistory;
+import org.jline.terminal.impl.DumbTerminal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for {@link DefaultHistory}.
+ * <p>
+ * The {@code legacy*} benchmarks reproduce the access patterns of the previous
+ * {@link LinkedList} based storage, so that both can be compared on the same
+ * data sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    LineReader reader;
+    DefaultHistory history;
+    LinkedList<History.Entry> legacy;
+    Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        DumbTerminal terminal = new DumbTerminal(
+                "bench", "dumb", new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(),
+                StandardCharsets.UTF_8);
+        reader = new LineReaderImpl(terminal);
+        reader.setVariable(LineReader.HISTORY_SIZE, size);
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, size);
+        reader.setOpt(LineReader.Option.HISTORY_SEARCH_INDEX);
+        history = new DefaultHistory(reader);
+        legacy = new LinkedList<>();
+        file = Files.createTempFile("jline-history", ".txt");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            String line = "command " + i;
+            history.add(Instant.now(), line);
+            legacy.add(new HistoryEntry(i, line));
+            sb.append(line).append('\n');
+        }
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void randomGet(Blackhole bh) {
+        for (int i = 0; i < 1000; i++) {
+            bh.consume(history.get(history.first() + (i * 7919) % size));
+        }
+    }
+
+    @Benchmark
+    public void legacyRandomGet(Blackhole bh) {
+        for (int i = 0; i < 1000; i++) {
+            bh.consume(legacy.get((i * 7919) % size).line());
+        }
+    }
+
+    /**
+     * Reads the whole file back with duplicate checking: every line is a duplicate.
+     */
+    @Benchmark
+    public void readWithDuplicateCheck(Blackhole bh) throws IOException {
+        history.read(file, true);
+        bh.consume(history.size());
+    }
+
+    /**
+     * A single duplicate lookup with the previous linear scan; reading a file
+     * performed one such scan per line.
+     */
+    @Benchmark
+    public boolean legacyDuplicateLookup() {
+        String line = "command " + (size - 1);
+        for (History.Entry e : legacy) {
+            if (e.line().trim().equals(line.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public void iterateFromMiddle(Blackhole bh) {
+        var it = history.iterator(history.first() + size / 2);
+        while (it.hasNext()) {
+            bh.consume(it.next());
+        }
+    }
+
+    /**
+     * Looks up the most recent entry containing a rare term through the search index.
+     */
+    @Benchmark
+    public int indexedSearch() {
+        int[] candidates = history.searchCandidates("mand 123");
+        for (int i = candidates.length - 1; i >= 0; i--) {
+            if (history.get(candidates[i]).toLowerCase().contains("mand 123")) {
+                return candidates[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up the same entry by lower-casing and scanning every entry.
+     */
+    @Benchmark
+    public int linearSearch() {
+        var it = history.reverseIterator();
+        while (it.hasNext()) {
+            History.Entry e = it.next();
+            if (e.line().toLowerCase().contains("mand 123")) {
+                return e.index();
+            }
+        }
+        return -1;
+    }
+
+    static class HistoryEntry implements History.Entry {
+        private final int index;
+        private final String line;
+
+        HistoryEntry(int index, String line) {
+            this.index = index;
+            this.line = line;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public Instant time() {
+            return Instant.EPOCH;
+        }
+
+        @Override
+        public String line() {
+            return line;
+        }
+    }
+}
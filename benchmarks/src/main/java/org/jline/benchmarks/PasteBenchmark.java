@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.utils.NonBlockingReader;
+import org.jline.utils.NonBlockingReaderImpl;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for reading a large paste through a {@link NonBlockingReaderImpl}.
+ * <p>
+ * The input is provided in chunks, as a terminal would, and is read either one
+ * character at a time with a timeout, or with {@link NonBlockingReader#readBuffered(char[], long)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasteBenchmark {
+
+    static final int SIZE = 1024 * 1024;
+
+    @Param({"64", "4096"})
+    int chunk;
+
+    char[] paste;
+
+    @Setup
+    public void setup() {
+        paste = new char[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            paste[i] = i % 80 == 79 ? '\n' : (char) ('a' + i % 26);
+        }
+    }
+
+    @Benchmark
+    public int readChars() throws IOException {
+        NonBlockingReader reader = new NonBlockingReaderImpl("paste", new ChunkedReader(paste, chunk));
+        try {
+            int count = 0;
+            while (reader.read(100) >= 0) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public int readBuffered() throws IOException {
+        NonBlockingReader reader = new NonBlockingReaderImpl("paste", new ChunkedReader(paste, chunk));
+        try {
+            char[] buf = new char[8192];
+            int count = 0;
+            int nb;
+            while ((nb = reader.readBuffered(buf, 100)) >= 0) {
+                count += nb;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * A reader returning at most {@code chunk} characters per read.
+     */
+    static class ChunkedReader extends Reader {
+        private final char[] data;
+        private final int chunk;
+        private int pos;
+
+        ChunkedReader(char[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos >= data.length) {
+                return -1;
+            }
+            int nb = Math.min(Math.min(len, chunk), data.length - pos);
+            System.arraycopy(data, pos, cbuf, off, nb);
+            pos += nb;
+            return nb;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.builtins.ScreenTerminal;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for the output processing of {@link ScreenTerminal}.
+ * <p>
+ * The output mimics what a terminal typically receives when running commands:
+ * plain log lines, colored directory listings and a progress bar redrawn in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScreenTerminalBenchmark {
+
+    static final int CHUNK = 4096;
+
+    @Param({"log", "ls", "progress"})
+    String output;
+
+    String text;
+    char[] chars;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024 * 1024) {
+            switch (output) {
+                case "log":
+                    sb.append("2025-01-01 12:00:")
+                            .append(10 + random.nextInt(50))
+                            .append(" INFO  [main] org.example.Service - Processed request ")
+                            .append(random.nextInt(100000))
+                            .append(" in ")
+                            .append(random.nextInt(1000))
+                            .append(" ms\r\n");
+                    break;
+                case "ls":
+                    sb.append("-rw-r--r--  1 user  staff  ")
+                            .append(random.nextInt(100000))
+                            .append(" Jan  1 12:00 \033[1;34mdirectory")
+                            .append(random.nextInt(100))
+                            .append("\033[0m  \033[38;5;")
+                            .append(random.nextInt(256))
+                            .append("mfile")
+                            .append(random.nextInt(1000))
+                            .append(".txt\033[0m\r\n");
+                    break;
+                default:
+                    int percent = random.nextInt(101);
+                    sb.append("\r\033[K\033[32m[");
+                    for (int i = 0; i < 50; i++) {
+                        sb.append(i * 2 < percent ? '#' : ' ');
+                    }
+                    sb.append("]\033[0m ").append(percent).append('%');
+                    break;
+            }
+        }
+        text = sb.toString();
+        chars = text.toCharArray();
+    }
+
+    @Benchmark
+    public ScreenTerminal writeString() {
+        ScreenTerminal terminal = new ScreenTerminal(120, 40);
+        terminal.write(text);
+        return terminal;
+    }
+
+    @Benchmark
+    public ScreenTerminal writeChunks() {
+        ScreenTerminal terminal = new ScreenTerminal(120, 40);
+        for (int off = 0; off < chars.length; off += CHUNK) {
+            terminal.write(chars, off, Math.min(CHUNK, chars.length - off));
+        }
+        return terminal;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.builtins.SyntaxHighlighter;
+import org.jline.utils.AttributedString;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for {@link SyntaxHighlighter}, highlighting large files line by line
+ * with the grammars of the demo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntaxHighlighterBenchmark {
+
+    static final String[] GRAMMARS = {"dark.nanorctheme", "java.nanorc", "json.nanorc", "xml.nanorc"};
+    static final int LINES = 20000;
+
+    @Param({"Java", "XML", "JSON"})
+    String syntax;
+
+    Path dir;
+    SyntaxHighlighter highlighter;
+    List<AttributedString> lines;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("nanorc");
+        for (String grammar : GRAMMARS) {
+            try (InputStream in = SyntaxHighlighterBenchmark.class.getResourceAsStream("/nanorc/" + grammar)) {
+                Files.copy(in, dir.resolve(grammar));
+            }
+        }
+        Path nanorc = dir.resolve("jnanorc");
+        Files.write(
+                nanorc,
+                ("theme " + dir.resolve("dark.nanorctheme") + "\n" + "include " + dir + "/*.nanorc\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        highlighter = SyntaxHighlighter.build(nanorc, syntax);
+
+        Random random = new Random(0);
+        lines = new ArrayList<>();
+        while (lines.size() < LINES) {
+            switch (syntax) {
+                case "Java":
+                    java(random);
+                    break;
+                case "XML":
+                    xml(random);
+                    break;
+                default:
+                    json(random);
+                    break;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String grammar : GRAMMARS) {
+            Files.deleteIfExists(dir.resolve(grammar));
+        }
+        Files.deleteIfExists(dir.resolve("jnanorc"));
+        Files.deleteIfExists(dir);
+    }
+
+    private void java(Random random) {
+        int n = random.nextInt(1000);
+        add("    /**");
+        add("     * Returns the value of the entry " + n + ", or {@code null} if it does not exist.");
+        add("     *");
+        add("     * @param key the key of the entry");
+        add("     */");
+        add("    @Override");
+        add("    public synchronized Object getEntry" + n + "(String key) throws IOException {");
+        add("        // Lookup in the cache first");
+        add("        int hash = key.hashCode() * 31 + " + random.nextInt(100000) + ";");
+        add("        if (cache.containsKey(key) && hash != 0x1f) {");
+        add("            return cache.get(key);");
+        add("        }");
+        add("        /* not cached */ String value = org.example.util.Strings.trim(\"entry-\" + key);");
+        add("        for (int i = 0; i < MAX_ENTRIES; i++) {");
+        add("            LOGGER.debug(\"Checking entry {} for {}\", i, value);");
+        add("        }");
+        add("        return value != null ? value : Boolean.FALSE;");
+        add("    }");
+        add("");
+    }
+
+    private void xml(Random random) {
+        int n = random.nextInt(1000);
+        add("  <!-- dependency " + n + " -->");
+        add("  <dependency scope=\"test\" optional=\"false\">");
+        add("    <groupId>org.example.group" + n + "</groupId>");
+        add("    <artifactId>artifact-" + random.nextInt(100) + "</artifactId>");
+        add("    <version>" + random.nextInt(10) + "." + random.nextInt(10) + ".0</version>");
+        add("    <description>Tom &amp; Jerry &lt;" + n + "&gt;</description>");
+        add("    <exclusions><exclusion><groupId>*</groupId></exclusion></exclusions>");
+        add("  </dependency>");
+    }
+
+    private void json(Random random) {
+        add("  {");
+        add("    \"id\": " + random.nextInt(1000000) + ",");
+        add("    \"name\": \"item \\u00e9" + random.nextInt(1000) + "\",");
+        add("    \"price\": " + random.nextInt(1000) + "." + random.nextInt(100) + "e-2,");
+        add("    \"available\": " + random.nextBoolean() + ",");
+        add("    \"tags\": [\"a\", \"b\\n\", \"c\\\"d\"],");
+        add("    \"parent\": null");
+        add("  },");
+    }
+
+    private void add(String line) {
+        lines.add(new AttributedString(line));
+    }
+
+    @Benchmark
+    public void highlight(Blackhole bh) {
+        highlighter.reset();
+        for (AttributedString line : lines) {
+            bh.consume(highlighter.highlight(line));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.reader.Candidate;
+import org.jline.reader.CompletingParsedLine;
+import org.jline.reader.CompletionMatcher;
+import org.jline.reader.impl.CompletionMatcherImpl;
+import org.jline.reader.impl.DefaultParser;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for the typo matching tier of {@link CompletionMatcherImpl}.
+ * <p>
+ * The {@code bruteForce} benchmark alternates between two lists of distinct but equal
+ * candidates, so that each list is normalized again and the distance to every candidate is
+ * computed, while the {@code indexed} benchmark matches the same candidate list again, which
+ * looks typos up in the index built for that list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypoMatchingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int size;
+
+    List<Candidate> candidates;
+    CompletionMatcher matcher;
+    // Copies of the candidates, matched in turn by bruteForceMatcher
+    List<List<Candidate>> copies;
+    CompletionMatcher bruteForceMatcher;
+    int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 4 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            candidates.add(new Candidate(sb.toString()));
+        }
+        // a word with a typo, which is neither a prefix nor a substring of any candidate
+        String word = candidates.get(size / 2).value();
+        word = word.charAt(1) + word.substring(0, 1) + word.substring(2);
+        matcher = matcher(word);
+        matcher.matches(candidates);
+        copies = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            List<Candidate> copy = new ArrayList<>(size);
+            for (Candidate candidate : candidates) {
+                copy.add(new Candidate(candidate.value()));
+            }
+            copies.add(copy);
+        }
+        bruteForceMatcher = matcher(word);
+    }
+
+    private static CompletionMatcher matcher(String word) {
+        CompletionMatcher matcher = new CompletionMatcherImpl();
+        matcher.compile(
+                new HashMap<>(),
+                false,
+                (CompletingParsedLine) new DefaultParser().parse(word, word.length()),
+                false,
+                2,
+                "original");
+        return matcher;
+    }
+
+    @Benchmark
+    public List<Candidate> bruteForce() {
+        next = 1 - next;
+        return bruteForceMatcher.matches(copies.get(next));
+    }
+
+    @Benchmark
+    public List<Candidate> indexed() {
+        return matcher.matches(candidates);
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.util.regex.Pattern;
+
+/**
+ * Computes the set of characters a match of a regular expression can start with.
+ * <p>
+ * The set is used to skip the regular expressions which can not match a text
+ * without running them.  It is only computed for the expressions whose matches
+ * always start with an ASCII character, and which can not match an empty string:
+ * the analysis gives up on any construct it does not know, which only means that
+ * the expression will be run on every text.
+ * <p>
+ * Sets are stored as two longs, the bit <code>c</code> being set for the character
+ * <code>c</code>.
+ */
+final class FirstChars {
+
+    private final String regex;
+    private final boolean caseInsensitive;
+    private int pos;
+
+    private FirstChars(Pattern pattern) {
+        this.regex = pattern.pattern();
+        this.caseInsensitive = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+    }
+
+    /**
+     * Returns the characters the matches of the given pattern can start with.
+     *
+     * @param pattern the pattern
+     * @return the set of characters, or <code>null</code> if it is not known
+     */
+    static long[] of(Pattern pattern) {
+        if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return null;
+        }
+        try {
+            FirstChars fc = new FirstChars(pattern);
+            long[] set = fc.alternation();
+            return fc.pos == fc.regex.length() ? set : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the characters of the given text.
+     *
+     * @param text the text
+     * @param set the set of characters to fill
+     */
+    static void collect(CharSequence text, long[] set) {
+        set[0] = 0;
+        set[1] = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                set[c >> 6] |= 1L << c;
+            }
+        }
+    }
+
+    static boolean intersects(long[] set1, long[] set2) {
+        return (set1[0] & set2[0]) != 0 || (set1[1] & set2[1]) != 0;
+    }
+
+    private long[] alternation() {
+        long[] set = sequence();
+        while (set != null && pos < regex.length() && regex.charAt(pos) == '|') {
+            pos++;
+            long[] other = sequence();
+            if (other == null) {
+                return null;
+            }
+            set[0] |= other[0];
+            set[1] |= other[1];
+        }
+        return set;
+    }
+
+    /**
+     * Returns the first characters of a branch, skipping the branch.
+     */
+    private long[] sequence() {
+        // Skip the leading word boundaries
+        while (regex.startsWith("\\b", pos)) {
+            pos += 2;
+        }
+        long[] set = atom();
+        if (set == null || !quantifier()) {
+            return null;
+        }
+        // Skip the rest of the branch
+        int depth = 0;
+        boolean inClass = false;
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '\\') {
+                pos++;
+            } else if (inClass) {
+                if (c == '[') {
+                    // Nested classes
+                    return null;
+                } else if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+                // A closing bracket at the beginning of a class is a character of the class
+                if (regex.startsWith("]", pos + 1)) {
+                    pos++;
+                } else if (regex.startsWith("^]", pos + 1)) {
+                    pos += 2;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                break;
+            }
+            pos++;
+        }
+        return set;
+    }
+
+    /**
+     * Skips the quantifier following an atom, if any.
+     *
+     * @return <code>false</code> if the atom can be repeated zero times
+     */
+    private boolean quantifier() {
+        if (pos >= regex.length()) {
+            return true;
+        }
+        char c = regex.charAt(pos);
+        if (c == '?' || c == '*') {
+            return false;
+        }
+        if (c == '{') {
+            int i = pos + 1;
+            int min = 0;
+            while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                min = min * 10 + regex.charAt(i++) - '0';
+            }
+            return min > 0;
+        }
+        return true;
+    }
+
+    private long[] atom() {
+        if (pos >= regex.length()) {
+            return null;
+        }
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '(':
+                if (regex.startsWith("?:", pos)) {
+                    pos += 2;
+                } else if (regex.startsWith("?", pos)) {
+                    // Flags, named groups and look-around
+                    return null;
+                }
+                long[] set = alternation();
+                if (set == null || pos >= regex.length() || regex.charAt(pos) != ')') {
+                    return null;
+                }
+                pos++;
+                return set;
+            case '[':
+                return charClass();
+            case '\\':
+                return escape();
+            case '.':
+            case '^':
+            case '$':
+            case '|':
+            case ')':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                return null;
+            default:
+                return chars(c, c);
+        }
+    }
+
+    private long[] charClass() {
+        if (pos < regex.length() && regex.charAt(pos) == '^') {
+            return null;
+        }
+        long[] set = new long[2];
+        boolean first = true;
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos++);
+            if (c == ']' && !first) {
+                return set;
+            }
+            first = false;
+            long[] item;
+            char from = c;
+            if (c == '[' || (c == '&' && regex.startsWith("&", pos))) {
+                // Unions and intersections
+                return null;
+            } else if (c == '\\') {
+                if (pos >= regex.length()) {
+                    return null;
+                }
+                char e = regex.charAt(pos);
+                if (Character.isLetterOrDigit(e)) {
+                    item = escape();
+                    if (item == null) {
+                        return null;
+                    }
+                    set[0] |= item[0];
+                    set[1] |= item[1];
+                    continue;
+                }
+                from = e;
+                pos++;
+            }
+            char to = from;
+            if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                pos++;
+                to = regex.charAt(pos++);
+                if (to == '\\') {
+                    if (pos >= regex.length() || Character.isLetterOrDigit(regex.charAt(pos))) {
+                        return null;
+                    }
+                    to = regex.charAt(pos++);
+                } else if (to == '[') {
+                    return null;
+                }
+            }
+            item = chars(from, to);
+            if (item == null) {
+                return null;
+            }
+            set[0] |= item[0];
+            set[1] |= item[1];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the characters matched by an escape sequence, the backslash being skipped.
+     */
+    private long[] escape() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 'd':
+                return chars('0', '9');
+            case 'w':
+                return union(chars('a', 'z'), chars('A', 'Z'), chars('0', '9'), chars('_', '_'));
+            case 's':
+                return union(chars('\t', '\r'), chars(' ', ' '));
+            case 't':
+                return chars('\t', '\t');
+            case 'n':
+                return chars('\n', '\n');
+            case 'r':
+                return chars('\r', '\r');
+            case 'f':
+                return chars('\f', '\f');
+            case 'e':
+                return chars('\u001b', '\u001b');
+            case 'p':
+                return posixClass();
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    // Other classes, boundaries, back references, quotes, ...
+                    return null;
+                }
+                return chars(c, c);
+        }
+    }
+
+    /**
+     * Returns the characters of the POSIX classes, which only match ASCII characters.
+     */
+    private long[] posixClass() {
+        int end = regex.indexOf('}', pos);
+        if (!regex.startsWith("{", pos) || end < 0) {
+            return null;
+        }
+        String name = regex.substring(pos + 1, end);
+        pos = end + 1;
+        switch (name) {
+            case "Lower":
+                return chars('a', 'z');
+            case "Upper":
+                return chars('A', 'Z');
+            case "Alpha":
+                return union(chars('a', 'z'), chars('A', 'Z'));
+            case "Digit":
+                return chars('0', '9');
+            case "Alnum":
+                return union(chars('a', 'z'), chars('A', 'Z'), chars('0', '9'));
+            case "Punct":
+                return union(chars('!', '/'), chars(':', '@'), chars('[', '`'), chars('{', '~'));
+            case "Graph":
+                return chars('!', '~');
+            case "Print":
+                return chars(' ', '~');
+            case "Blank":
+                return union(chars(' ', ' '), chars('\t', '\t'));
+            case "Cntrl":
+                return union(chars('\u0000', '\u001f'), chars('\u007f', '\u007f'));
+            case "XDigit":
+                return union(chars('0', '9'), chars('a', 'f'), chars('A', 'F'));
+            case "Space":
+                return union(chars('\t', '\r'), chars(' ', ' '));
+            default:
+                return null;
+        }
+    }
+
+    private long[] chars(char from, char to) {
+        if (from > to || to >= 128) {
+            return null;
+        }
+        long[] set = new long[2];
+        for (char c = from; c <= to; c++) {
+            set[c >> 6] |= 1L << c;
+            if (caseInsensitive && Character.isLetter(c)) {
+                char o = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+                set[o >> 6] |= 1L << o;
+            }
+        }
+        return set;
+    }
+
+    private static long[] union(long[]... sets) {
+        long[] set = new long[2];
+        for (long[] s : sets) {
+            set[0] |= s[0];
+            set[1] |= s[1];
+        }
+        return set;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jline.utils.AttributedString;
+
+/**
+ * Syntax highlighted lines of a text, with the highlighting state at the beginning of each line.
+ * <p>
+ * The states are computed for a run of consecutive lines, starting at the beginning of
+ * the text or, when a line far from the run is requested, a few lines before it, the
+ * highlighter being then reset.  The state of a line is kept until the line, or a line
+ * before it, is modified and {@link #invalidate(int)} is called, so that a line can be
+ * highlighted again without highlighting the lines before it.  The most recently used
+ * highlighted lines are also kept, so that scrolling does not highlight anything.
+ * <p>
+ * This class is not thread safe.
+ */
+class HighlightedLines {
+
+    /**
+     * Provides the lines of the text.
+     */
+    @FunctionalInterface
+    interface LineSource {
+        /**
+         * Returns a line of the text.
+         *
+         * @param line the line number, starting at 0
+         * @return the line, or <code>null</code> if the text has less lines
+         * @throws IOException if the line can not be read
+         */
+        AttributedString line(int line) throws IOException;
+    }
+
+    static final int CACHE_SIZE = 1024;
+
+    private final SyntaxHighlighter highlighter;
+    private final LineSource source;
+    // First line of the run
+    private int start;
+    // States at the beginning of the lines start, start + 1, ...
+    private final List<SyntaxHighlighter.State> states = new ArrayList<>();
+    // Most recently used highlighted lines
+    private final Map<Integer, AttributedString> lines =
+            new LinkedHashMap<Integer, AttributedString>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, AttributedString> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    HighlightedLines(SyntaxHighlighter highlighter, LineSource source) {
+        this.highlighter = highlighter;
+        this.source = source;
+        clear();
+    }
+
+    /**
+     * Returns a highlighted line.
+     * <p>
+     * If the state of the line is not known and the line is more than <code>lookBehind</code>
+     * lines away from the known states, the line is highlighted as if the text started
+     * <code>lookBehind</code> lines before it.
+     *
+     * @param line the line number, starting at 0
+     * @param lookBehind the number of lines to highlight before a line far from the known states
+     * @return the highlighted line, or <code>null</code> if the text has less lines
+     * @throws IOException if a line can not be read
+     */
+    AttributedString get(int line, int lookBehind) throws IOException {
+        if (line < 0) {
+            return null;
+        }
+        AttributedString highlighted = lines.get(line);
+        if (highlighted != null) {
+            return highlighted;
+        }
+        if (line < start && start - line <= lookBehind) {
+            prepend(Math.max(0, line - lookBehind));
+            highlighted = lines.get(line);
+            if (highlighted != null) {
+                return highlighted;
+            }
+        } else if (line < start || line > end() + lookBehind) {
+            restart(Math.max(0, line - lookBehind));
+        }
+        while (end() < line) {
+            if (highlight(end()) == null) {
+                return null;
+            }
+        }
+        return highlight(line);
+    }
+
+    /**
+     * Discards the highlighting of the given line and of the lines following it,
+     * which must be called when the line has been modified, inserted or removed.
+     *
+     * @param line the first modified line
+     */
+    void invalidate(int line) {
+        if (line <= start) {
+            clear();
+        } else {
+            int end = line - start + 1;
+            if (end < states.size()) {
+                states.subList(end, states.size()).clear();
+            }
+            lines.keySet().removeIf(l -> l >= line);
+        }
+    }
+
+    /**
+     * Discards the highlighting of all the lines.
+     */
+    void clear() {
+        restart(0);
+    }
+
+    /**
+     * Returns the last line whose state is known.
+     */
+    private int end() {
+        return start + states.size() - 1;
+    }
+
+    private void restart(int line) {
+        start = line;
+        states.clear();
+        states.add(SyntaxHighlighter.State.INITIAL);
+        lines.clear();
+    }
+
+    /**
+     * Highlights a line whose state is known, recording the state of the next line.
+     */
+    private AttributedString highlight(int line) throws IOException {
+        AttributedString text = source.line(line);
+        if (text == null) {
+            return null;
+        }
+        SyntaxHighlighter.State state = states.get(line - start);
+        AttributedString highlighted = highlighter.setState(state).highlight(text);
+        lines.put(line, highlighted);
+        if (line == end()) {
+            SyntaxHighlighter.State next = highlighter.getState();
+            states.add(next.equals(state) ? state : next);
+        }
+        return highlighted;
+    }
+
+    /**
+     * Computes the states from the given line up to the start of the run,
+     * keeping the states of the run if the state at its start does not change.
+     */
+    private void prepend(int line) throws IOException {
+        List<SyntaxHighlighter.State> prefix = new ArrayList<>();
+        SyntaxHighlighter.State state = SyntaxHighlighter.State.INITIAL;
+        highlighter.reset();
+        for (int i = line; i < start; i++) {
+            AttributedString text = source.line(i);
+            if (text == null) {
+                // The text has been truncated
+                restart(line);
+                return;
+            }
+            prefix.add(state);
+            lines.put(i, highlighter.highlight(text));
+            SyntaxHighlighter.State next = highlighter.getState();
+            state = next.equals(state) ? state : next;
+        }
+        if (!state.equals(states.get(0))) {
+            lines.keySet().removeIf(l -> l >= start);
+            states.clear();
+            states.add(state);
+        }
+        states.addAll(0, prefix);
+        start = line;
+    }
+}
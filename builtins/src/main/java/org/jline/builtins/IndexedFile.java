@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Line access to a file which is not loaded in memory.
+ * <p>
+ * The file is scanned by a background thread which records the offset of every
+ * {@link #STEP}-th line, so that the index stays small even for very large files.
+ * Lines are read from the file when requested: the lines between two recorded
+ * offsets are read and decoded together, the last group being kept to serve
+ * sequential accesses.
+ * <p>
+ * Lines are split the same way as {@link java.io.BufferedReader#readLine()}:
+ * a line is terminated by a line feed, a carriage return, or a carriage return
+ * followed by a line feed.  Only charsets in which those characters are encoded
+ * as single bytes which cannot appear inside other characters are supported,
+ * see {@link #isSupported(Charset)}.
+ * <p>
+ * Once the file has been indexed, {@link #update()} indexes the bytes appended
+ * to the file, which allows following a file which is being written.
+ */
+class IndexedFile implements Closeable {
+
+    /**
+     * Number of lines between two recorded offsets.
+     */
+    static final int STEP = 64;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final Charset charset;
+    private final RandomAccessFile file;
+    private final Thread indexer;
+    // Key of the file, used to detect when the file has been replaced
+    private final Object fileKey;
+
+    // Offsets of the lines 0, STEP, 2 * STEP, ...
+    private long[] offsets = new long[1024];
+    // Number of lines indexed so far
+    private volatile int count;
+    // Whether the whole file has been indexed
+    private volatile boolean complete;
+    // Length of the indexed file
+    private long length;
+    private IOException failure;
+    // State of the scan at the end of the indexed bytes
+    private boolean lineStart = true;
+    private boolean cr;
+
+    // Last group of lines read
+    private int group = -1;
+    private String[] groupLines;
+
+    IndexedFile(Path path, Charset charset) throws IOException {
+        this.path = path;
+        this.charset = charset;
+        // Lines are read through a RandomAccessFile rather than a FileChannel,
+        // as interrupting the reading thread with ctrl-C would close the channel
+        this.file = new RandomAccessFile(path.toFile(), "r");
+        this.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        this.indexer = new Thread(this::index, "Less indexer " + path.getFileName());
+        this.indexer.setDaemon(true);
+        this.indexer.start();
+    }
+
+    /**
+     * Checks whether files using the given charset can be indexed.
+     *
+     * @param charset the charset
+     * @return <code>true</code> if the charset is supported
+     */
+    static boolean isSupported(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * Checks whether the given file can be indexed, which requires a regular file
+     * of the default file system, as the file is read through a {@link RandomAccessFile},
+     * and a supported charset.
+     *
+     * @param path the file
+     * @param charset the charset
+     * @return <code>true</code> if the file can be indexed
+     */
+    static boolean isSupported(Path path, Charset charset) {
+        return path.getFileSystem() == FileSystems.getDefault() && Files.isRegularFile(path) && isSupported(charset);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns whether the whole file has been indexed.
+     *
+     * @return <code>true</code> if the file has been indexed
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the number of lines indexed so far, which is the number
+     * of lines of the file once the index is complete.
+     *
+     * @return the number of lines indexed
+     */
+    int indexedLines() {
+        return count;
+    }
+
+    /**
+     * Returns the number of lines of the file, waiting for the index to be complete.
+     *
+     * @return the number of lines
+     * @throws IOException if the file can not be read, or if the thread is interrupted
+     */
+    synchronized int size() throws IOException {
+        while (!complete) {
+            await();
+        }
+        return count;
+    }
+
+    /**
+     * Returns a line of the file, without its terminator.
+     * This method waits for the line to be indexed.
+     *
+     * @param line the line number, starting at 0
+     * @return the line, or <code>null</code> if the file has less lines
+     * @throws IOException if the file can not be read, or if the thread is interrupted
+     */
+    synchronized String line(int line) throws IOException {
+        if (line < 0) {
+            return null;
+        }
+        int g = line / STEP;
+        if (g != group) {
+            // Wait for the end of the group to be known
+            while (!complete && count <= (g + 1) * STEP) {
+                await();
+            }
+            if (line >= count) {
+                return null;
+            }
+            long start = offsets[g];
+            long end = count > (g + 1) * STEP ? offsets[g + 1] : length;
+            groupLines = readLines(start, end, Math.min(STEP, count - g * STEP));
+            group = g;
+        }
+        return line - g * STEP < groupLines.length ? groupLines[line - g * STEP] : null;
+    }
+
+    private String[] readLines(long start, long end, int nb) throws IOException {
+        byte[] bytes = new byte[(int) Math.min(end - start, Integer.MAX_VALUE - 8)];
+        file.seek(start);
+        int len = 0;
+        while (len < bytes.length) {
+            int n = file.read(bytes, len, bytes.length - len);
+            if (n < 0) {
+                break;
+            }
+            len += n;
+        }
+        String[] lines = new String[nb];
+        int from = 0;
+        for (int i = 0; i < nb; i++) {
+            int to = from;
+            while (to < len && bytes[to] != '\n' && bytes[to] != '\r') {
+                to++;
+            }
+            lines[i] = new String(bytes, from, to - from, charset);
+            if (to < len && bytes[to] == '\r' && to + 1 < len && bytes[to + 1] == '\n') {
+                to++;
+            }
+            from = to + 1;
+        }
+        return lines;
+    }
+
+    private void await() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Indexes the bytes appended to the file since it has been indexed.
+     * This method does nothing until the initial indexing is complete.
+     *
+     * @return the number of lines of the file, or <code>-1</code> if the file
+     *         has been truncated or replaced by another file
+     * @throws IOException if the file can not be read
+     */
+    synchronized int update() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (!complete) {
+            return count;
+        }
+        if (isReplaced() || file.length() < length) {
+            return -1;
+        }
+        if (file.length() > length) {
+            byte[] bytes = new byte[BLOCK_SIZE];
+            file.seek(length);
+            int n;
+            while ((n = file.read(bytes)) > 0) {
+                scan(bytes, n);
+            }
+            // The last line may have been completed
+            group = -1;
+        }
+        return count;
+    }
+
+    private boolean isReplaced() {
+        try {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return fileKey != null && !fileKey.equals(key);
+        } catch (IOException e) {
+            // The file may be about to be recreated
+            return false;
+        }
+    }
+
+    private void index() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            int n;
+            while ((n = channel.read(buffer)) >= 0) {
+                synchronized (this) {
+                    scan(buffer.array(), n);
+                    notifyAll();
+                }
+                buffer.clear();
+            }
+            synchronized (this) {
+                complete = true;
+                notifyAll();
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Scans the given bytes, which follow the bytes already scanned.
+     */
+    private void scan(byte[] bytes, int n) {
+        long[] offsets = this.offsets;
+        int count = this.count;
+        for (int i = 0; i < n; i++) {
+            byte b = bytes[i];
+            if (cr) {
+                cr = false;
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (lineStart) {
+                if (count % STEP == 0) {
+                    if (count / STEP == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[count / STEP] = length + i;
+                }
+                count++;
+                lineStart = false;
+            }
+            if (b == '\n') {
+                lineStart = true;
+            } else if (b == '\r') {
+                lineStart = true;
+                cr = true;
+            }
+        }
+        this.offsets = offsets;
+        this.count = count;
+        this.length += n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexer.interrupt();
+        file.close();
+    }
+}
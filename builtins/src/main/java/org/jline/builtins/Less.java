@@ -16,15 +16,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
-import java.nio.file.FileSystems;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Stream;
 
 import org.jline.builtins.Nano.PatternHistory;
 import org.jline.builtins.Source.ResourceSource;
@@ -72,6 +71,10 @@ public class Less {
 
     private static final int ESCAPE = 27;
     private static final String MESSAGE_FILE_INFO = "FILE_INFO";
+    private static final int STYLED_LINES_CACHE_SIZE = 1024;
+    private static final int SEARCH_CHUNK_SIZE = 256;
+    private static final long SEARCH_PROGRESS_INTERVAL = 100;
+    private static final long FOLLOW_INTERVAL = 250;
 
     public boolean quitAtSecondEof;
     public boolean quitAtFirstEof;
@@ -84,6 +87,7 @@ public class Less {
     public boolean ignoreCaseAlways;
     public boolean noKeypad;
     public boolean noInit;
+    public boolean follow;
     protected List<Integer> tabs = Collections.singletonList(4);
     protected String syntaxName;
     private String historyLog = null;
@@ -101,6 +105,17 @@ public class Less {
     protected int firstLineInMemory = 0;
     protected List<AttributedString> lines = new ArrayList<>();
 
+    // Regular files are not loaded in memory: lines are read from the file
+    // when needed and only the most recently used styled lines are kept
+    private IndexedFile indexedFile;
+    private final Map<Integer, AttributedString> styledLines =
+            new LinkedHashMap<Integer, AttributedString>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, AttributedString> eldest) {
+                    return size() > STYLED_LINES_CACHE_SIZE;
+                }
+            };
+
     protected int firstLineToDisplay = 0;
     protected int firstColumnToDisplay = 0;
     protected int offsetInLine = 0;
@@ -115,6 +130,7 @@ public class Less {
     protected int halfWindow;
 
     protected int nbEof;
+    private boolean following;
 
     protected PatternHistory patternHistory = new PatternHistory(null);
     protected String pattern;
@@ -122,7 +138,11 @@ public class Less {
 
     protected final Size size = new Size();
 
+    // Lines of the last screen displayed, used to show the search progress
+    private List<AttributedString> displayedLines;
+
     SyntaxHighlighter syntaxHighlighter;
+    private HighlightedLines highlightedLines;
     private final List<Path> syntaxFiles = new ArrayList<>();
     private boolean highlight = true;
     private boolean nanorcIgnoreErrors;
@@ -145,6 +165,7 @@ public class Less {
             "  -Y --syntax=name             The name of the syntax highlighting to use.",
             "     --no-init                 Disable terminal initialization",
             "     --no-keypad               Disable keypad handling",
+            "     --follow                  Follow the end of the file, like tail -f",
             "     --ignorercfiles           Don't look at the system's lessrc nor at the user's lessrc.",
             "  -H --historylog=name         Log search strings to file, so they can be retrieved in later sessions"
         };
@@ -172,9 +193,8 @@ public class Less {
                 errorMessage = "Encountered error while reading config file: " + lessrc;
             }
         } else if (new File("/usr/share/nano").exists() && !ignorercfiles) {
-            PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:/usr/share/nano/*.nanorc");
-            try (Stream<Path> pathStream = Files.walk(Paths.get("/usr/share/nano"))) {
-                pathStream.filter(pathMatcher::matches).forEach(syntaxFiles::add);
+            try {
+                syntaxFiles.addAll(NanorcCache.glob(Paths.get("/usr/share/nano"), "*.nanorc"));
                 nanorcIgnoreErrors = true;
             } catch (IOException e) {
                 errorMessage = "Encountered error while reading nanorc files";
@@ -221,6 +241,9 @@ public class Less {
             if (opts.isSet("no-keypad")) {
                 noKeypad = true;
             }
+            if (opts.isSet("follow")) {
+                follow = true;
+            }
             if (opts.isSet("historylog")) {
                 historyLog = opts.get("historylog");
             }
@@ -370,6 +393,11 @@ public class Less {
                 display(false);
                 checkInterrupted();
 
+                if (follow) {
+                    followSource();
+                    display(false);
+                }
+
                 options.put("-e", Operation.OPT_QUIT_AT_SECOND_EOF);
                 options.put("--quit-at-eof", Operation.OPT_QUIT_AT_SECOND_EOF);
                 options.put("-E", Operation.OPT_QUIT_AT_FIRST_EOF);
@@ -510,6 +538,12 @@ public class Less {
                                     moveTo(lineNum);
                                 }
                                 break;
+                            case GO_TO_PERCENT_OR_N:
+                                moveToPercent(getStrictPositiveNumberInBuffer(0));
+                                break;
+                            case FORWARD_FOREVER:
+                                followSource();
+                                break;
                             case HOME:
                                 moveTo(0);
                                 break;
@@ -686,6 +720,9 @@ public class Less {
             if (reader != null) {
                 reader.close();
             }
+            if (indexedFile != null) {
+                indexedFile.close();
+            }
             if (status != null) {
                 status.restore();
             }
@@ -934,8 +971,8 @@ public class Less {
                             if (type == '/') {
                                 moveToNextMatch();
                             } else {
-                                if (lines.size() - firstLineToDisplay <= size.getRows()) {
-                                    firstLineToDisplay = lines.size();
+                                if (linesRead() - firstLineToDisplay <= size.getRows()) {
+                                    firstLineToDisplay = linesRead();
                                 } else {
                                     moveForward(size.getRows() - 1);
                                 }
@@ -1010,6 +1047,12 @@ public class Less {
         boolean wasOpen = false;
         if (reader != null) {
             reader.close();
+            reader = null;
+            wasOpen = true;
+        }
+        if (indexedFile != null) {
+            indexedFile.close();
+            indexedFile = null;
             wasOpen = true;
         }
         boolean open;
@@ -1017,15 +1060,21 @@ public class Less {
         do {
             Source source = sources.get(sourceIdx);
             try {
-                InputStream in = source.read();
+                Path path = source instanceof Source.PathSource ? ((Source.PathSource) source).getPath() : null;
+                if (path != null && IndexedFile.isSupported(path, Charset.defaultCharset())) {
+                    indexedFile = new IndexedFile(path, Charset.defaultCharset());
+                } else {
+                    InputStream in = source.read();
+                    reader = new BufferedReader(new InputStreamReader(new InterruptibleInputStream(in)));
+                }
                 if (sources.size() == 2 || sourceIdx == 0) {
                     message = source.getName();
                 } else {
                     message = source.getName() + " (file " + sourceIdx + " of " + (sources.size() - 1) + ")";
                 }
-                reader = new BufferedReader(new InputStreamReader(new InterruptibleInputStream(in)));
                 firstLineInMemory = 0;
                 lines = new ArrayList<>();
+                styledLines.clear();
                 firstLineToDisplay = 0;
                 firstColumnToDisplay = 0;
                 offsetInLine = 0;
@@ -1036,6 +1085,7 @@ public class Less {
                     syntaxHighlighter =
                             SyntaxHighlighter.build(syntaxFiles, source.getName(), syntaxName, nanorcIgnoreErrors);
                 }
+                highlightedLines = new HighlightedLines(syntaxHighlighter, this::getLine);
                 open = true;
                 if (displayMessage) {
                     AttributedStringBuilder asb = new AttributedStringBuilder();
@@ -1081,6 +1131,69 @@ public class Less {
         }
     }
 
+    /**
+     * Follows the end of the current file, displaying the lines appended to the file
+     * until ctrl-C or another key is pressed, the other keys being then processed as usual.
+     * <p>
+     * The size of the file is polled while waiting for a key.  Once the file has been
+     * indexed, only the appended bytes are read, and the file is reopened if it has
+     * been truncated or replaced, for example when a log file is rotated.
+     */
+    void followSource() throws IOException {
+        if (indexedFile == null) {
+            moveForward(Integer.MAX_VALUE);
+            message = "Cannot follow this input";
+            return;
+        }
+        AtomicBoolean interrupted = new AtomicBoolean();
+        SignalHandler prevHandler = terminal.handle(Signal.INT, s -> interrupted.set(true));
+        following = true;
+        try {
+            moveForward(Integer.MAX_VALUE);
+            while (!interrupted.get()) {
+                message = "Waiting for data... (interrupt to abort)";
+                display(false);
+                int c = terminal.reader().peek(FOLLOW_INTERVAL);
+                if (c == 3) {
+                    terminal.reader().read();
+                    break;
+                } else if (c != NonBlockingReader.READ_EXPIRED) {
+                    break;
+                }
+                int previous = indexedFile.indexedLines();
+                int count = indexedFile.update();
+                if (count < 0) {
+                    openSource();
+                    moveForward(Integer.MAX_VALUE);
+                } else {
+                    // The last line may have been completed
+                    styledLines.keySet().removeIf(l -> l >= previous - 1);
+                    highlightedLines.invalidate(previous - 1);
+                    // Moving forward by less than a window does not clear the display,
+                    // so that only the changed lines are redrawn
+                    int appended = count - previous;
+                    if (appended >= size.getRows() - 1) {
+                        moveForward(Integer.MAX_VALUE);
+                    } else if (appended > 0) {
+                        moveForward(appended);
+                    }
+                }
+            }
+        } finally {
+            following = false;
+            nbEof = 0;
+            message = null;
+            terminal.handle(Signal.INT, prevHandler);
+        }
+    }
+
+    void moveToPercent(int percent) throws IOException {
+        int count = lineCount();
+        if (count > 0) {
+            moveTo((int) ((long) (count - 1) * Math.min(percent, 100) / 100));
+        }
+    }
+
     private void moveToNextMatch() throws IOException {
         moveToNextMatch(false);
     }
@@ -1089,18 +1202,15 @@ public class Less {
         Pattern compiled = getPattern();
         Pattern dpCompiled = getPattern(true);
         if (compiled != null) {
-            for (int lineNumber = firstLineToDisplay + 1; ; lineNumber++) {
-                AttributedString line = getLine(lineNumber);
-                if (line == null) {
-                    break;
-                } else if (!toBeDisplayed(line, dpCompiled)) {
-                    continue;
-                } else if (compiled.matcher(line).find()) {
-                    display.clear();
-                    firstLineToDisplay = lineNumber;
-                    offsetInLine = 0;
-                    return;
-                }
+            Search search = findMatch(compiled, dpCompiled, firstLineToDisplay + 1, true);
+            if (search.cancelled) {
+                message = "Search interrupted";
+                return;
+            } else if (search.result >= 0) {
+                display.clear();
+                firstLineToDisplay = search.result;
+                offsetInLine = 0;
+                return;
             }
         }
         if (spanFiles) {
@@ -1129,18 +1239,15 @@ public class Less {
         Pattern compiled = getPattern();
         Pattern dpCompiled = getPattern(true);
         if (compiled != null) {
-            for (int lineNumber = firstLineToDisplay - 1; lineNumber >= firstLineInMemory; lineNumber--) {
-                AttributedString line = getLine(lineNumber);
-                if (line == null) {
-                    break;
-                } else if (!toBeDisplayed(line, dpCompiled)) {
-                    continue;
-                } else if (compiled.matcher(line).find()) {
-                    display.clear();
-                    firstLineToDisplay = lineNumber;
-                    offsetInLine = 0;
-                    return;
-                }
+            Search search = findMatch(compiled, dpCompiled, firstLineToDisplay - 1, false);
+            if (search.cancelled) {
+                message = "Search interrupted";
+                return;
+            } else if (search.result >= 0) {
+                display.clear();
+                firstLineToDisplay = search.result;
+                offsetInLine = 0;
+                return;
             }
         }
         if (spanFiles) {
@@ -1162,6 +1269,131 @@ public class Less {
         }
     }
 
+    /**
+     * Searches the first line matching the given patterns.
+     * <p>
+     * The search is run on a background thread while this thread shows its progress
+     * in the status line and cancels it if ctrl-C is pressed.
+     */
+    private Search findMatch(Pattern compiled, Pattern dpCompiled, int from, boolean forward) throws IOException {
+        Search search = new Search(compiled, dpCompiled, from, forward);
+        Thread thread = new Thread(search, "Less search");
+        thread.setDaemon(true);
+        SignalHandler prevHandler = terminal.handle(Signal.INT, s -> search.cancel());
+        try {
+            thread.start();
+            while (!search.await(SEARCH_PROGRESS_INTERVAL)) {
+                if (terminal.reader().peek(1) == 3) {
+                    terminal.reader().read();
+                    search.cancel();
+                } else if (!search.cancelled) {
+                    int line = search.position + 1;
+                    String progress = "";
+                    if (indexedFile != null && indexedFile.isComplete() && indexedFile.indexedLines() > 0) {
+                        progress = " (" + (long) line * 100 / indexedFile.indexedLines() + "%)";
+                    }
+                    displayStatus("Searching line " + line + progress + ", ctrl-C to abort");
+                }
+            }
+        } finally {
+            terminal.handle(Signal.INT, prevHandler);
+        }
+        if (search.failure != null) {
+            throw search.failure;
+        }
+        return search;
+    }
+
+    /**
+     * Search for the first line matching a pattern.
+     * <p>
+     * Lines are checked in chunks, publishing the search position and checking
+     * for cancellation after each chunk.  The lines of regular files are matched
+     * directly on the text read from the file, without being styled, unless they
+     * contain escape sequences or tabs.
+     */
+    private class Search implements Runnable {
+        final Pattern compiled;
+        final Pattern dpCompiled;
+        final int from;
+        final boolean forward;
+        volatile int position;
+        volatile boolean cancelled;
+        int result = -1;
+        IOException failure;
+        private boolean done;
+
+        Search(Pattern compiled, Pattern dpCompiled, int from, boolean forward) {
+            this.compiled = compiled;
+            this.dpCompiled = sourceIdx != 0 ? dpCompiled : null;
+            this.from = from;
+            this.forward = forward;
+            this.position = from;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int step = forward ? 1 : -1;
+                int lineNumber = from;
+                while (!cancelled && lineNumber >= firstLineInMemory) {
+                    for (int i = 0; i < SEARCH_CHUNK_SIZE && lineNumber >= firstLineInMemory; i++) {
+                        CharSequence line = text(lineNumber);
+                        if (line == null) {
+                            return;
+                        } else if ((dpCompiled == null || dpCompiled.matcher(line).find())
+                                && compiled.matcher(line).find()) {
+                            result = lineNumber;
+                            return;
+                        }
+                        lineNumber += step;
+                    }
+                    position = lineNumber;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private CharSequence text(int lineNumber) throws IOException {
+            if (indexedFile != null) {
+                String str = indexedFile.line(lineNumber);
+                if (str != null && (str.indexOf(ESCAPE) >= 0 || str.indexOf('\t') >= 0)) {
+                    return AttributedString.fromAnsi(str, tabs);
+                }
+                return str;
+            }
+            // The calling thread does not access the lines while searching
+            return getLine(lineNumber);
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Waits for the search to complete, or for the given time if it has not been cancelled.
+         *
+         * @return <code>true</code> if the search is complete
+         */
+        synchronized boolean await(long timeout) throws InterruptedIOException {
+            try {
+                if (!done) {
+                    wait(cancelled ? 0 : timeout);
+                }
+                return done;
+            } catch (InterruptedException e) {
+                cancel();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
     private String printable(String s) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < s.length(); i++) {
@@ -1188,11 +1420,20 @@ public class Less {
             display.clear();
         }
         if (lines == Integer.MAX_VALUE) {
-            moveTo(Integer.MAX_VALUE);
-            firstLineToDisplay = height - 1;
-            for (int l = 0; l < height - 1; l++) {
-                firstLineToDisplay =
-                        prevLine2display(firstLineToDisplay, dpCompiled).getU();
+            if (dpCompiled == null) {
+                // Start from the last window instead of stepping through the whole source
+                int last = lineCount() - (height - 1);
+                if (last > firstLineToDisplay) {
+                    firstLineToDisplay = last;
+                    offsetInLine = 0;
+                }
+            } else {
+                moveTo(Integer.MAX_VALUE);
+                firstLineToDisplay = height - 1;
+                for (int l = 0; l < height - 1; l++) {
+                    firstLineToDisplay =
+                            prevLine2display(firstLineToDisplay, dpCompiled).getU();
+                }
             }
         }
         while (--lines >= 0) {
@@ -1265,7 +1506,7 @@ public class Less {
         } else {
             message = "(END)";
         }
-        if (!quiet && !veryQuiet && !quitAtFirstEof && !quitAtSecondEof) {
+        if (!following && !quiet && !veryQuiet && !quitAtFirstEof && !quitAtSecondEof) {
             terminal.puts(Capability.bell);
             terminal.writer().flush();
         }
@@ -1329,12 +1570,6 @@ public class Less {
         Pattern dpCompiled = getPattern(true);
         boolean fitOnOneScreen = false;
         boolean eof = false;
-        if (highlight) {
-            syntaxHighlighter.reset();
-            for (int i = Math.max(0, inputLine - height); i < inputLine; i++) {
-                syntaxHighlighter.highlight(getLine(i));
-            }
-        }
         for (int terminalLine = 0; terminalLine < height - 1; terminalLine++) {
             if (curLine == null) {
                 Pair<Integer, AttributedString> nextLine = nextLine2display(inputLine, dpCompiled);
@@ -1348,7 +1583,7 @@ public class Less {
                     eof = true;
                     curLine = new AttributedString("~");
                 } else if (highlight) {
-                    curLine = syntaxHighlighter.highlight(curLine);
+                    curLine = highlightedLines.get(inputLine - 1, height);
                 }
                 if (compiled != null) {
                     curLine = curLine.styleMatches(compiled, AttributedStyle.DEFAULT.inverse());
@@ -1390,11 +1625,13 @@ public class Less {
         AttributedStringBuilder msg = new AttributedStringBuilder();
         if (MESSAGE_FILE_INFO.equals(message)) {
             Source source = sources.get(sourceIdx);
-            Long allLines = source.lines();
+            Long allLines = indexedFile != null
+                    ? (indexedFile.isComplete() ? Long.valueOf(indexedFile.indexedLines()) : null)
+                    : source.lines();
             message = source.getName()
                     + (sources.size() > 2 ? " (file " + sourceIdx + " of " + (sources.size() - 1) + ")" : "")
                     + " lines " + (firstLineToDisplay + 1) + "-" + inputLine + "/"
-                    + (allLines != null ? allLines : lines.size())
+                    + (allLines != null ? allLines : linesRead())
                     + (eof ? " (END)" : "");
         }
         if (buffer.length() > 0) {
@@ -1419,9 +1656,23 @@ public class Less {
         } else {
             display.update(newLines, size.cursorPos(size.getRows() - 1, curPos + 1));
         }
+        displayedLines = newLines;
         return false;
     }
 
+    /**
+     * Replaces the status line of the last screen displayed with the given message.
+     */
+    private void displayStatus(String status) {
+        if (displayedLines == null || displayedLines.isEmpty()) {
+            return;
+        }
+        List<AttributedString> newLines = new ArrayList<>(displayedLines);
+        newLines.set(newLines.size() - 1, new AttributedString(status, AttributedStyle.INVERSE));
+        display.update(newLines, -1);
+        terminal.flush();
+    }
+
     private Pattern getPattern() {
         return getPattern(false);
     }
@@ -1439,6 +1690,17 @@ public class Less {
     }
 
     AttributedString getLine(int line) throws IOException {
+        if (indexedFile != null) {
+            AttributedString styled = styledLines.get(line);
+            if (styled == null) {
+                String str = indexedFile.line(line);
+                if (str != null) {
+                    styled = AttributedString.fromAnsi(str, tabs);
+                    styledLines.put(line, styled);
+                }
+            }
+            return styled;
+        }
         while (line >= lines.size()) {
             String str = reader.readLine();
             if (str != null) {
@@ -1453,6 +1715,25 @@ public class Less {
         return null;
     }
 
+    /**
+     * Returns the number of lines of the current source,
+     * reading the whole source if it is not a regular file.
+     */
+    int lineCount() throws IOException {
+        if (indexedFile != null) {
+            return indexedFile.size();
+        }
+        getLine(Integer.MAX_VALUE - 1);
+        return lines.size();
+    }
+
+    /**
+     * Returns the number of lines of the current source known so far.
+     */
+    private int linesRead() {
+        return indexedFile != null ? indexedFile.indexedLines() : lines.size();
+    }
+
     /**
      * This is for long running commands to be interrupted by ctrl-c
      *
@@ -1502,6 +1783,7 @@ public class Less {
         map.bind(Operation.UNDO_SEARCH, alt('u'));
         map.bind(Operation.GO_TO_FIRST_LINE_OR_N, "g", "<", alt('<'));
         map.bind(Operation.GO_TO_LAST_LINE_OR_N, "G", ">", alt('>'));
+        map.bind(Operation.GO_TO_PERCENT_OR_N, "p", "%");
         map.bind(Operation.HOME, key(terminal, Capability.key_home));
         map.bind(Operation.END, key(terminal, Capability.key_end));
         map.bind(Operation.ADD_FILE, ":e", ctrl('X') + ctrl('V'));
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lines of a memory-mapped file, decoded lazily.
+ * <p>
+ * The file is scanned once to find the line terminators, and split into pieces
+ * of {@link PieceList#MAX_PIECE_SIZE} lines which refer to the bytes of the file.
+ * The lines of a piece are decoded the first time one of them is accessed, and
+ * the pieces which have not been decoded are copied as is when the text is written
+ * with the same charset and line terminators.
+ * <p>
+ * Lines are split the same way as {@link java.io.BufferedReader#readLine()}, which
+ * requires a charset supported by {@link IndexedFile#isSupported(Charset)}.
+ */
+class MappedText extends PieceList<String> {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static class FilePiece extends Piece {
+        final int start;
+        final int end;
+        // Whether all the lines of the piece are terminated by a single line feed
+        final boolean unix;
+
+        FilePiece(int start, int end, int size, boolean unix) {
+            super(null, size);
+            this.start = start;
+            this.end = end;
+            this.unix = unix;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Charset charset;
+
+    private MappedText(ByteBuffer buffer, Charset charset) {
+        this.buffer = buffer;
+        this.charset = charset;
+    }
+
+    /**
+     * Maps the given file, which must be smaller than 2GB.
+     *
+     * @param path the file
+     * @param charset the charset of the file
+     * @return the lines of the file
+     * @throws IOException if the file can not be mapped
+     */
+    static MappedText map(Path path, Charset charset) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        MappedText text = new MappedText(buffer, charset);
+        text.scan();
+        return text;
+    }
+
+    private void scan() {
+        ByteBuffer b = buffer.duplicate();
+        byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        int length = b.limit();
+        int start = 0;
+        int lines = 0;
+        boolean unix = true;
+        boolean cr = false;
+        for (int pos = 0; pos < length; ) {
+            int n = Math.min(bytes.length, length - pos);
+            b.get(bytes, 0, n);
+            for (int i = 0; i < n; i++) {
+                byte c = bytes[i];
+                if (cr) {
+                    cr = false;
+                    if (c == '\n') {
+                        // Second byte of a CRLF terminator
+                        if (lines == MAX_PIECE_SIZE) {
+                            addPiece(new FilePiece(start, pos + i + 1, lines, false));
+                            start = pos + i + 1;
+                            lines = 0;
+                            unix = true;
+                        }
+                        continue;
+                    }
+                }
+                if (lines == MAX_PIECE_SIZE) {
+                    addPiece(new FilePiece(start, pos + i, lines, unix));
+                    start = pos + i;
+                    lines = 0;
+                    unix = true;
+                }
+                if (c == '\n') {
+                    lines++;
+                } else if (c == '\r') {
+                    lines++;
+                    unix = false;
+                    cr = true;
+                }
+            }
+            pos += n;
+        }
+        if (lines == MAX_PIECE_SIZE) {
+            addPiece(new FilePiece(start, length, lines, unix));
+            start = length;
+            lines = 0;
+        }
+        if (start < length) {
+            // A last line with no terminator is only counted here
+            byte last = buffer.get(length - 1);
+            boolean terminated = last == '\n' || last == '\r';
+            addPiece(new FilePiece(start, length, terminated ? lines : lines + 1, unix && terminated));
+        }
+    }
+
+    @Override
+    protected Object[] load(Piece p) {
+        return decode((FilePiece) p);
+    }
+
+    private String[] decode(FilePiece p) {
+        byte[] bytes = new byte[p.end - p.start];
+        ByteBuffer b = buffer.duplicate();
+        b.position(p.start);
+        b.get(bytes);
+        String[] lines = new String[p.size];
+        int from = 0;
+        for (int i = 0; i < p.size; i++) {
+            int to = from;
+            while (to < bytes.length && bytes[to] != '\n' && bytes[to] != '\r') {
+                to++;
+            }
+            lines[i] = new String(bytes, from, to - from, charset);
+            if (to < bytes.length && bytes[to] == '\r' && to + 1 < bytes.length && bytes[to + 1] == '\n') {
+                to++;
+            }
+            from = to + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the lines, each line being followed by the given terminator.
+     * <p>
+     * The pieces of the file which have not been decoded are copied directly to
+     * the output stream when possible, the other lines are written to the writer.
+     *
+     * @param writer the writer encoding the lines to the output stream
+     * @param out the output stream
+     * @param charset the charset of the writer
+     * @param terminator the line terminator
+     * @throws IOException if an error occurs
+     */
+    void write(Writer writer, OutputStream out, Charset charset, String terminator) throws IOException {
+        boolean copy = this.charset.equals(charset) && "\n".equals(terminator);
+        byte[] bytes = null;
+        for (int i = 0; i < pieces(); i++) {
+            Piece p = piece(i);
+            if (p.items == null && copy && ((FilePiece) p).unix) {
+                FilePiece fp = (FilePiece) p;
+                writer.flush();
+                if (bytes == null) {
+                    bytes = new byte[COPY_BUFFER_SIZE];
+                }
+                ByteBuffer b = buffer.duplicate();
+                b.position(fp.start);
+                b.limit(fp.end);
+                while (b.hasRemaining()) {
+                    int n = Math.min(bytes.length, b.remaining());
+                    b.get(bytes, 0, n);
+                    out.write(bytes, 0, n);
+                }
+            } else {
+                // Pieces which have not been decoded are not kept decoded
+                Object[] lines = p.items != null ? p.items : decode((FilePiece) p);
+                for (int j = 0; j < p.size; j++) {
+                    writer.write((String) lines[j]);
+                    writer.write(terminator);
+                }
+            }
+        }
+        writer.flush();
+    }
+}
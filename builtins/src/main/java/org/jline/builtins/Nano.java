@@ -18,12 +18,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
@@ -33,7 +33,6 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
 import org.jline.keymap.BindingReader;
 import org.jline.keymap.KeyMap;
@@ -83,6 +82,9 @@ import static org.jline.keymap.KeyMap.translate;
 @SuppressWarnings({"unused", "SameParameterValue", "BooleanMethodIsAlwaysInverted"})
 public class Nano implements Editor {
 
+    // Files larger than this size are mapped and decoded lazily
+    private static final long MAPPED_FILE_THRESHOLD = 1024 * 1024;
+
     // Final fields
     protected final Terminal terminal;
     protected final Display display;
@@ -264,19 +266,30 @@ public class Nano implements Editor {
         int offsetInLineToDisplay;
 
         int line;
-        List<LinkedList<Integer>> offsets = new ArrayList<>();
+        // Wrapping offsets of the lines, computed lazily
+        List<LinkedList<Integer>> offsets = new PieceList<>();
         int offsetInLine;
         int column;
         int wantedColumn;
         boolean uncut = false;
         int[] markPos = {-1, -1}; // line, offsetInLine + column
         SyntaxHighlighter syntaxHighlighter;
+        // Highlighted lines, which must be invalidated when lines are modified
+        HighlightedLines highlightedLines;
 
         boolean dirty;
 
         protected Buffer(String file) {
             this.file = file;
             this.syntaxHighlighter = SyntaxHighlighter.build(syntaxFiles, file, syntaxName, nanorcIgnoreErrors);
+            this.highlightedLines = new HighlightedLines(
+                    syntaxHighlighter,
+                    l -> l < lines.size()
+                            ? new AttributedStringBuilder()
+                                    .tabs(tabs)
+                                    .append(lines.get(l))
+                                    .toAttributedString()
+                            : null);
         }
 
         public void setDirty(boolean dirty) {
@@ -336,7 +349,7 @@ public class Nano implements Editor {
                 return;
             }
 
-            lines = new ArrayList<>();
+            lines = new PieceList<>();
             lines.add("");
             charset = Charset.defaultCharset();
             computeAllOffsets();
@@ -351,8 +364,20 @@ public class Nano implements Editor {
                 return;
             }
 
-            try (InputStream fis = Files.newInputStream(path)) {
-                read(fis);
+            try {
+                long length = Files.isRegularFile(path) ? Files.size(path) : 0;
+                // Windows does not allow replacing a mapped file when saving,
+                // and only the files of the default file system can be mapped
+                if (length >= MAPPED_FILE_THRESHOLD
+                        && length <= Integer.MAX_VALUE
+                        && !OSUtils.IS_WINDOWS
+                        && path.getFileSystem() == FileSystems.getDefault()) {
+                    map(path);
+                } else {
+                    try (InputStream fis = Files.newInputStream(path)) {
+                        read(fis);
+                    }
+                }
             } catch (IOException e) {
                 setMessage("Error reading " + file + ": " + e.getMessage());
             }
@@ -363,7 +388,7 @@ public class Nano implements Editor {
                 return;
             }
 
-            lines = new ArrayList<>();
+            lines = new PieceList<>();
             lines.add("");
             charset = Charset.defaultCharset();
             computeAllOffsets();
@@ -403,6 +428,41 @@ public class Nano implements Editor {
             if (lines.isEmpty()) {
                 lines.add("");
             }
+            highlightedLines.clear();
+            computeAllOffsets();
+            moveToChar(0);
+        }
+
+        /**
+         * Opens a large file: the file is mapped and its lines are only
+         * decoded when they are accessed.
+         */
+        void map(Path path) throws IOException {
+            try (InputStream fis = Files.newInputStream(path)) {
+                UniversalDetector detector = new UniversalDetector(null);
+                byte[] buffer = new byte[4096];
+                int remaining;
+                while (!detector.isDone() && (remaining = fis.read(buffer)) > 0) {
+                    detector.handleData(buffer, 0, remaining);
+                }
+                detector.dataEnd();
+                if (detector.getDetectedCharset() != null) {
+                    charset = Charset.forName(detector.getDetectedCharset());
+                }
+            } catch (Throwable t) {
+                // Ignore
+            }
+            if (!IndexedFile.isSupported(charset)) {
+                try (InputStream fis = Files.newInputStream(path)) {
+                    read(fis);
+                }
+                return;
+            }
+            lines = MappedText.map(path, charset);
+            if (lines.isEmpty()) {
+                lines.add("");
+            }
+            highlightedLines.clear();
             computeAllOffsets();
             moveToChar(0);
         }
@@ -502,6 +562,7 @@ public class Nano implements Editor {
             }
             ins.add(mod.substring(last) + tail);
             int curPos = length(mod.substring(last));
+            highlightedLines.invalidate(line);
             lines.set(line, ins.get(0));
             offsets.set(line, computeOffsets(ins.get(0)));
             for (int i = 1; i < ins.size(); i++) {
@@ -516,9 +577,18 @@ public class Nano implements Editor {
 
         void computeAllOffsets() {
             offsets.clear();
-            for (String text : lines) {
-                offsets.add(computeOffsets(text));
+            for (int i = 0; i < lines.size(); i++) {
+                offsets.add(null);
+            }
+        }
+
+        private LinkedList<Integer> offsets(int line) {
+            LinkedList<Integer> offsets = this.offsets.get(line);
+            if (offsets == null) {
+                offsets = computeOffsets(lines.get(line));
+                this.offsets.set(line, offsets);
             }
+            return offsets;
         }
 
         LinkedList<Integer> computeOffsets(String line) {
@@ -592,6 +662,7 @@ public class Nano implements Editor {
                         return false;
                     }
                     String prev = lines.get(--line);
+                    highlightedLines.invalidate(line);
                     lines.set(line, prev + text);
                     offsets.set(line, computeOffsets(prev + text));
                     moveToChar(length(prev));
@@ -602,6 +673,7 @@ public class Nano implements Editor {
                     int nb = Math.min(pos, count);
                     int curPos = length(text.substring(0, pos - nb));
                     text = text.substring(0, pos - nb) + text.substring(pos);
+                    highlightedLines.invalidate(line);
                     lines.set(line, text);
                     offsets.set(line, computeOffsets(text));
                     moveToChar(curPos);
@@ -685,7 +757,7 @@ public class Nano implements Editor {
             if (line >= offsets.size()) {
                 return Optional.empty();
             }
-            Iterator<Integer> it = offsets.get(line).descendingIterator();
+            Iterator<Integer> it = offsets(line).descendingIterator();
             while (it.hasNext()) {
                 int off = it.next();
                 if (off < offsetInLine) {
@@ -699,7 +771,7 @@ public class Nano implements Editor {
             if (line >= offsets.size()) {
                 return Optional.empty();
             }
-            return offsets.get(line).stream().filter(o -> o > offsetInLine).findFirst();
+            return offsets(line).stream().filter(o -> o > offsetInLine).findFirst();
         }
 
         public void moveDisplayDown(int lines) {
@@ -847,6 +919,15 @@ public class Nano implements Editor {
             return line < lines.size() ? lines.get(line) : null;
         }
 
+        private AttributedString highlightedLine(int line) {
+            try {
+                return highlightedLines.get(line, size.getRows());
+            } catch (IOException e) {
+                // Lines are held in memory
+                throw new UncheckedIOException(e);
+            }
+        }
+
         String getTitle() {
             return file != null ? "File: " + file : "New Buffer";
         }
@@ -926,8 +1007,7 @@ public class Nano implements Editor {
 
         void highlightDisplayedLine(int curLine, int curOffset, int nextOffset, AttributedStringBuilder line) {
             AttributedString disp = highlight
-                    ? syntaxHighlighter.highlight(
-                            new AttributedStringBuilder().tabs(tabs).append(getLine(curLine)))
+                    ? highlightedLine(curLine)
                     : new AttributedStringBuilder()
                             .tabs(tabs)
                             .append(getLine(curLine))
@@ -999,12 +1079,6 @@ public class Nano implements Editor {
             int curLine = firstLineToDisplay;
             int curOffset = offsetInLineToDisplay;
             int prevLine = -1;
-            if (highlight) {
-                syntaxHighlighter.reset();
-                for (int i = Math.max(0, curLine - nbLines); i < curLine; i++) {
-                    syntaxHighlighter.highlight(getLine(i));
-                }
-            }
             for (int terminalLine = 0; terminalLine < nbLines; terminalLine++) {
                 AttributedStringBuilder line = new AttributedStringBuilder().tabs(tabs);
                 if (printLineNumbers && curLine < lines.size()) {
@@ -1450,6 +1524,7 @@ public class Nano implements Editor {
                 if (uncut || cut2end || toEnd || mark) {
                     cutbuffer = new ArrayList<>();
                 }
+                highlightedLines.invalidate(mark ? getMarkStart()[0] : line);
                 if (mark) {
                     int[] s = getMarkStart();
                     int[] e = getMarkEnd();
@@ -1520,6 +1595,7 @@ public class Nano implements Editor {
             if (cutbuffer.isEmpty()) {
                 return;
             }
+            highlightedLines.invalidate(line);
             String l = lines.get(line);
             int col = charPosition(offsetInLine + column);
             if (cut2end) {
@@ -1604,6 +1680,7 @@ public class Nano implements Editor {
             if (chars + pos < text.length()) {
                 mod += text.substring(chars + pos);
             }
+            highlightedLines.invalidate(line);
             lines.set(line, mod);
             dirty = true;
         }
@@ -1757,9 +1834,8 @@ public class Nano implements Editor {
                 errorMessage = "Encountered error while reading config file: " + nanorc;
             }
         } else if (new File("/usr/share/nano").exists() && !ignorercfiles) {
-            PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:/usr/share/nano/*.nanorc");
-            try (Stream<Path> pathStream = Files.walk(Paths.get("/usr/share/nano"))) {
-                pathStream.filter(pathMatcher::matches).forEach(syntaxFiles::add);
+            try {
+                syntaxFiles.addAll(NanorcCache.glob(Paths.get("/usr/share/nano"), "*.nanorc"));
                 nanorcIgnoreErrors = true;
             } catch (IOException e) {
                 errorMessage = "Encountered error while reading nanorc files";
@@ -2357,18 +2433,25 @@ public class Nano implements Editor {
                 }
             }
             Writer w = new OutputStreamWriter(os, buffer.charset);
-            for (int i = 0; i < buffer.lines.size(); i++) {
-                w.write(buffer.lines.get(i));
-                switch (buffer.format) {
-                    case UNIX:
-                        w.write("\n");
-                        break;
-                    case DOS:
-                        w.write("\r\n");
-                        break;
-                    case MAC:
-                        w.write("\r");
-                        break;
+            String terminator;
+            switch (buffer.format) {
+                case DOS:
+                    terminator = "\r\n";
+                    break;
+                case MAC:
+                    terminator = "\r";
+                    break;
+                default:
+                    terminator = "\n";
+                    break;
+            }
+            if (buffer.lines instanceof MappedText) {
+                // Copy the parts of the file which have not been modified
+                ((MappedText) buffer.lines).write(w, os, buffer.charset, terminator);
+            } else {
+                for (int i = 0; i < buffer.lines.size(); i++) {
+                    w.write(buffer.lines.get(i));
+                    w.write(terminator);
                 }
             }
             w.flush();
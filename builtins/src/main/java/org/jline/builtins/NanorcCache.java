@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.jline.builtins.SyntaxHighlighter.HighlightRule;
+import org.jline.builtins.SyntaxHighlighter.NanorcParser;
+import org.jline.builtins.SyntaxHighlighter.Parser;
+
+/**
+ * Process-wide cache of the files used to build syntax highlighters.
+ * <p>
+ * Themes and grammars are parsed, and the glob patterns of the include directives
+ * resolved, only once.  Each cached value remembers the modification time and size
+ * of the files it has been read from, and of the directories it has been found in,
+ * and is computed again when one of them changes.
+ * <p>
+ * This class is thread safe: the cached values are never modified, and a value
+ * computed by two threads at the same time is simply replaced by the last one.
+ */
+final class NanorcCache {
+
+    private static final Map<Path, Cached<Map<String, String>>> themes = new ConcurrentHashMap<>();
+    private static final Map<Path, Cached<Grammar>> grammars = new ConcurrentHashMap<>();
+    private static final Map<Map.Entry<Path, String>, Cached<List<Path>>> globs = new ConcurrentHashMap<>();
+
+    private NanorcCache() {}
+
+    /**
+     * The grammar of a nanorc file, parsed with a color theme.
+     */
+    static final class Grammar {
+        private final Map<String, String> theme;
+        private final String syntaxName;
+        private final boolean isDefault;
+        private final List<String> fileRegexes;
+        private final Map<String, List<HighlightRule>> rules;
+        private final Parser parser;
+        private volatile List<Pattern> filePatterns;
+
+        private Grammar(Map<String, String> theme, NanorcParser nanorcParser) {
+            this.theme = theme;
+            this.syntaxName = nanorcParser.getSyntaxName();
+            this.isDefault = nanorcParser.isDefault();
+            this.fileRegexes = nanorcParser.getFileRegexes();
+            this.rules = Collections.unmodifiableMap(nanorcParser.getHighlightRules());
+            this.parser = nanorcParser.getParser();
+        }
+
+        /**
+         * Returns whether the grammar applies to the given syntax or file, as
+         * {@link NanorcParser#matches()} would.
+         *
+         * @param name the syntax name, or <code>null</code>
+         * @param target the file name, or <code>null</code>
+         * @return <code>true</code> if the grammar applies
+         */
+        boolean matches(String name, String target) {
+            if (fileRegexes == null) {
+                return false;
+            } else if (name != null) {
+                return name.equals(syntaxName);
+            } else if (target != null) {
+                for (Pattern p : filePatterns()) {
+                    if (p.matcher(target).find()) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        boolean isDefault() {
+            return isDefault;
+        }
+
+        /**
+         * Returns the rules of the grammar, which must not be modified.
+         */
+        Map<String, List<HighlightRule>> getRules() {
+            return rules;
+        }
+
+        /**
+         * Returns a new parser, since parsers keep the state of the highlighting.
+         */
+        Parser newParser() {
+            return parser != null ? new Parser(parser) : null;
+        }
+
+        private List<Pattern> filePatterns() {
+            List<Pattern> patterns = filePatterns;
+            if (patterns == null) {
+                patterns = new ArrayList<>();
+                for (String regex : fileRegexes) {
+                    patterns.add(Pattern.compile(regex));
+                }
+                filePatterns = patterns;
+            }
+            return patterns;
+        }
+    }
+
+    /**
+     * Returns the colors of a theme file.
+     *
+     * @param file the theme file
+     * @return the colors by token name
+     * @throws IOException if the file can not be read
+     */
+    static Map<String, String> theme(Path file) throws IOException {
+        Cached<Map<String, String>> cached = themes.get(file);
+        if (cached == null || !cached.isValid()) {
+            Stamps stamps = new Stamps().add(file);
+            Map<String, String> colorTheme = new HashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        List<String> parts = Arrays.asList(line.split("\\s+", 2));
+                        colorTheme.put(parts.get(0), parts.get(1));
+                    }
+                }
+            }
+            cached = new Cached<>(Collections.unmodifiableMap(colorTheme), stamps);
+            themes.put(file, cached);
+        }
+        return cached.value;
+    }
+
+    /**
+     * Returns the grammar of a nanorc file, parsed with the given theme.
+     *
+     * @param file the nanorc file
+     * @param colorTheme the colors of the theme
+     * @return the grammar
+     * @throws IOException if the file can not be read
+     */
+    static Grammar grammar(Path file, Map<String, String> colorTheme) throws IOException {
+        Cached<Grammar> cached = grammars.get(file);
+        if (cached == null || !cached.isValid() || !cached.value.theme.equals(colorTheme)) {
+            Stamps stamps = new Stamps().add(file);
+            NanorcParser nanorcParser = new NanorcParser(file, null, null, colorTheme);
+            nanorcParser.parse();
+            cached = new Cached<>(new Grammar(colorTheme, nanorcParser), stamps);
+            grammars.put(file, cached);
+        }
+        return cached.value;
+    }
+
+    /**
+     * Returns the files under a directory matching a glob pattern, in the order
+     * of {@link Files#walk(Path, java.nio.file.FileVisitOption...)}.
+     *
+     * @param root the directory
+     * @param glob the glob pattern, relative to the directory
+     * @return the matching files
+     * @throws IOException if the directory can not be walked
+     */
+    static List<Path> glob(Path root, String glob) throws IOException {
+        Map.Entry<Path, String> key = new AbstractMap.SimpleImmutableEntry<>(root, glob);
+        Cached<List<Path>> cached = globs.get(key);
+        if (cached == null || !cached.isValid()) {
+            // A file added to or removed from a directory changes its modification time
+            Stamps stamps = new Stamps();
+            List<Path> files = new ArrayList<>();
+            PathMatcher pathMatcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    stamps.add(dir, attrs);
+                    return visitFile(dir, attrs);
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (pathMatcher.matches(root.relativize(file))) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            cached = new Cached<>(Collections.unmodifiableList(files), stamps);
+            globs.put(key, cached);
+        }
+        return cached.value;
+    }
+
+    /**
+     * Discards all the cached values.
+     */
+    static void clear() {
+        themes.clear();
+        grammars.clear();
+        globs.clear();
+    }
+
+    private static final class Cached<T> {
+        final T value;
+        final Stamps stamps;
+
+        Cached(T value, Stamps stamps) {
+            this.value = value;
+            this.stamps = stamps;
+        }
+
+        boolean isValid() {
+            return stamps.isValid();
+        }
+    }
+
+    /**
+     * The modification times and sizes of files, recorded before reading them.
+     */
+    private static final class Stamps {
+        private final Map<Path, Stamp> stamps = new LinkedHashMap<>();
+
+        Stamps add(Path path) throws IOException {
+            stamps.put(path, Stamp.of(path));
+            return this;
+        }
+
+        void add(Path path, BasicFileAttributes attrs) {
+            stamps.put(path, new Stamp(attrs.lastModifiedTime(), attrs.size()));
+        }
+
+        boolean isValid() {
+            try {
+                for (Map.Entry<Path, Stamp> entry : stamps.entrySet()) {
+                    if (!entry.getValue().equals(Stamp.of(entry.getKey()))) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class Stamp {
+        private static final Stamp MISSING = new Stamp(null, -1);
+
+        private final FileTime lastModified;
+        private final long size;
+
+        Stamp(FileTime lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        static Stamp of(Path path) throws IOException {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                return new Stamp(attrs.lastModifiedTime(), attrs.size());
+            } catch (NoSuchFileException e) {
+                return MISSING;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp stamp = (Stamp) o;
+            return size == stamp.size && Objects.equals(lastModified, stamp.lastModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size);
+        }
+    }
+}
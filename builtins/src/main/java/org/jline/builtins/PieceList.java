@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List stored as a sequence of pieces holding at most {@link #MAX_PIECE_SIZE} elements.
+ * <p>
+ * The sizes of the pieces are kept in a Fenwick tree, so that looking an element up
+ * takes a logarithmic time, and inserting or removing an element only moves the
+ * elements of a single piece.  Pieces are split when they are full and discarded
+ * when they are empty, the tree being then rebuilt.
+ * <p>
+ * The elements of a piece may be loaded lazily: subclasses can add pieces with no
+ * elements loaded using {@link #addPiece(Piece)} and provide their elements with
+ * {@link #load(Piece)}.
+ *
+ * @param <E> the type of the elements
+ */
+class PieceList<E> extends AbstractList<E> implements RandomAccess {
+
+    static final int MAX_PIECE_SIZE = 1024;
+
+    static class Piece {
+        // Elements of the piece, or null if they have not been loaded
+        Object[] items;
+        int size;
+
+        Piece(Object[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+    }
+
+    private Piece[] pieces = new Piece[16];
+    private int nbPieces;
+    // Fenwick tree of the sizes of the pieces, indexed from 1
+    private int[] tree = new int[17];
+    private int size;
+    // Position of the last element looked up
+    private int piece;
+    private int offset;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, size);
+        Piece p = locate(index);
+        return (E) items(p)[offset];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index, size);
+        Object[] items = items(locate(index));
+        E old = (E) items[offset];
+        items[offset] = element;
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, size + 1);
+        Piece p;
+        if (index == size) {
+            p = nbPieces > 0 ? pieces[nbPieces - 1] : null;
+            if (p == null || p.size == MAX_PIECE_SIZE) {
+                p = new Piece(new Object[16], 0);
+                appendPiece(p);
+            }
+            piece = nbPieces - 1;
+            offset = p.size;
+        } else {
+            p = locate(index);
+            if (p.size == MAX_PIECE_SIZE) {
+                split(piece);
+                p = locate(index);
+            }
+        }
+        Object[] items = items(p);
+        if (p.size == items.length) {
+            items = p.items = Arrays.copyOf(items, Math.min(MAX_PIECE_SIZE, items.length * 2));
+        }
+        System.arraycopy(items, offset, items, offset + 1, p.size - offset);
+        items[offset] = element;
+        p.size++;
+        size++;
+        update(piece, 1);
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        checkIndex(index, size);
+        Piece p = locate(index);
+        Object[] items = items(p);
+        E old = (E) items[offset];
+        System.arraycopy(items, offset + 1, items, offset, p.size - offset - 1);
+        items[--p.size] = null;
+        size--;
+        if (p.size == 0) {
+            System.arraycopy(pieces, piece + 1, pieces, piece, nbPieces - piece - 1);
+            pieces[--nbPieces] = null;
+            rebuild();
+        } else {
+            update(piece, -1);
+        }
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        pieces = new Piece[16];
+        nbPieces = 0;
+        size = 0;
+        rebuild();
+        modCount++;
+    }
+
+    /**
+     * Appends a piece, whose elements may not be loaded.
+     *
+     * @param p the piece to append
+     */
+    protected void addPiece(Piece p) {
+        if (p.size > 0) {
+            appendPiece(p);
+            size += p.size;
+            modCount++;
+        }
+    }
+
+    protected int pieces() {
+        return nbPieces;
+    }
+
+    protected Piece piece(int index) {
+        return pieces[index];
+    }
+
+    /**
+     * Loads the elements of a piece added with no elements loaded.
+     *
+     * @param p the piece
+     * @return the elements of the piece
+     */
+    protected Object[] load(Piece p) {
+        throw new IllegalStateException("Piece not loaded");
+    }
+
+    private Object[] items(Piece p) {
+        if (p.items == null) {
+            p.items = load(p);
+        }
+        return p.items;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Returns the piece holding the given element, setting the position of the
+     * piece and the position of the element in that piece.
+     */
+    private Piece locate(int index) {
+        int pos = 0;
+        int rem = index;
+        for (int step = Integer.highestOneBit(nbPieces); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= nbPieces && tree[next] <= rem) {
+                pos = next;
+                rem -= tree[next];
+            }
+        }
+        piece = pos;
+        offset = rem;
+        return pieces[pos];
+    }
+
+    private void split(int index) {
+        Piece p = pieces[index];
+        Object[] items = items(p);
+        int half = p.size / 2;
+        Object[] tail = Arrays.copyOfRange(items, half, MAX_PIECE_SIZE);
+        Arrays.fill(items, half, p.size, null);
+        Piece q = new Piece(tail, p.size - half);
+        p.size = half;
+        insertPiece(index + 1, q);
+    }
+
+    private void insertPiece(int index, Piece p) {
+        if (nbPieces == pieces.length) {
+            pieces = Arrays.copyOf(pieces, nbPieces * 2);
+        }
+        System.arraycopy(pieces, index, pieces, index + 1, nbPieces - index);
+        pieces[index] = p;
+        nbPieces++;
+        rebuild();
+    }
+
+    private void appendPiece(Piece p) {
+        if (nbPieces == pieces.length) {
+            insertPiece(nbPieces, p);
+            return;
+        }
+        pieces[nbPieces++] = p;
+        // The new node covers the pieces of the nodes below it
+        int i = nbPieces;
+        tree[i] = p.size;
+        for (int k = 1; k < (i & -i); k <<= 1) {
+            tree[i] += tree[i - k];
+        }
+    }
+
+    private void update(int index, int delta) {
+        for (int i = index + 1; i <= nbPieces; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private void rebuild() {
+        if (tree.length != pieces.length + 1) {
+            tree = new int[pieces.length + 1];
+        }
+        for (int i = 1; i <= nbPieces; i++) {
+            tree[i] = pieces[i - 1].size;
+        }
+        Arrays.fill(tree, nbPieces + 1, tree.length, 0);
+        for (int i = 1; i <= nbPieces; i++) {
+            int parent = i + (i & -i);
+            if (parent <= nbPieces) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
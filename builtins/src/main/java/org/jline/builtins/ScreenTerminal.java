@@ -38,6 +38,7 @@ package org.jline.builtins;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -88,7 +89,7 @@ public class ScreenTerminal {
     private int vt100_parse_len;
     private int vt100_lastchar;
     private int vt100_parse_func;
-    private String vt100_parse_param;
+    private final StringBuilder vt100_parse_param = new StringBuilder();
     private boolean vt100_mode_autowrap;
     private boolean vt100_mode_insert;
     private boolean vt100_charset_is_single_shift;
@@ -127,9 +128,15 @@ public class ScreenTerminal {
 
     private List<Integer> tab_stops;
 
-    private final List<long[]> history = new ArrayList<>();
+    /**
+     * Default maximum number of lines kept in the history.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 2000;
+
+    private final ScrollbackBuffer history = new ScrollbackBuffer(DEFAULT_HISTORY_SIZE);
 
     private AtomicBoolean dirty = new AtomicBoolean(true);
+    private final BitSet damage = new BitSet(); // rows changed since the last dump
 
     public ScreenTerminal() {
         this(80, 24);
@@ -160,7 +167,7 @@ public class ScreenTerminal {
         vt100_parse_len = 0;
         vt100_parse_state = State.None;
         vt100_parse_func = 0;
-        vt100_parse_param = "";
+        vt100_parse_param.setLength(0);
         // Buffers
         vt100_out = "";
         // Invoke other resets
@@ -212,6 +219,7 @@ public class ScreenTerminal {
             Arrays.fill(screen[i], attr | 0x00000020);
             Arrays.fill(screen2[i], attr | 0x00000020);
         }
+        damage.set(0, height);
         // Scroll parameters
         scroll_area_y0 = 0;
         scroll_area_y1 = height;
@@ -255,6 +263,7 @@ public class ScreenTerminal {
     }
 
     private void poke(int y, int x, long[] s) {
+        int y0 = y;
         int cur = 0;
         int max = s.length;
         while (cur < max) {
@@ -263,6 +272,7 @@ public class ScreenTerminal {
             x = 0;
             cur += nb;
         }
+        damage.set(y0, y);
         setDirty();
     }
 
@@ -270,6 +280,7 @@ public class ScreenTerminal {
         if (y0 == y1 - 1) {
             if (x0 < x1 - 1) {
                 Arrays.fill(screen[y0], x0, x1, c);
+                damage.set(y0);
                 setDirty();
             }
         } else if (y0 < y1 - 1) {
@@ -278,6 +289,7 @@ public class ScreenTerminal {
                 Arrays.fill(screen[i], c);
             }
             Arrays.fill(screen[y1 - 1], 0, x1, c);
+            damage.set(y0, y1);
             setDirty();
         }
     }
@@ -305,6 +317,7 @@ public class ScreenTerminal {
                 screen[y1 - i] = new long[width];
                 Arrays.fill(screen[y1 - 1], attr | 0x0020);
             }
+            damage.set(0, height);
         } else {
             poke(y0, 0, peek(y0 + n, 0, y1, width));
             clear(y1 - n, 0, y1, width);
@@ -488,7 +501,25 @@ public class ScreenTerminal {
         return false;
     }
 
+    private static boolean isPrintable(char c) {
+        return c >= 32 && (c & 0xffe0) != 0x0080 && !Character.isSurrogate(c);
+    }
+
     private void dumb_echo(int c) {
+        echo(c);
+        setDirty();
+    }
+
+    private int dumb_echo(char[] buf, int i, int end) {
+        while (i < end && isPrintable(buf[i])) {
+            vt100_lastchar = buf[i];
+            echo(buf[i++]);
+        }
+        setDirty();
+        return i;
+    }
+
+    private void echo(int c) {
         if (eol) {
             if (vt100_mode_autowrap) {
                 ctrl_CR();
@@ -505,8 +536,11 @@ public class ScreenTerminal {
         } else if (vt100_charset_is_graphical && ((c & 0xffe0) == 0x0060)) {
             c = vt100_charset_graph[c - 0x60];
         }
-        poke(cy, cx, new long[] {attr | c});
-        cursor_right();
+        cx = Math.min(width - 1, cx);
+        screen[cy][cx] = attr | c;
+        damage.set(cy);
+        eol = cx + 1 >= width;
+        cx = Math.min(width - 1, cx + 1);
     }
 
     //
@@ -613,6 +647,7 @@ public class ScreenTerminal {
                         long[][] s = screen;
                         screen = screen2;
                         screen2 = s;
+                        damage.set(0, height);
                         Map<String, Object> map = vt100_saved;
                         vt100_saved = vt100_saved2;
                         vt100_saved2 = map;
@@ -1125,37 +1160,69 @@ public class ScreenTerminal {
     }
 
     private int[] vt100_parse_params(String p, int[] defaults) {
-        String prefix = "";
         p = p == null ? "" : p;
-        if (!p.isEmpty()) {
-            if (p.charAt(0) >= '<' && p.charAt(0) <= '?') {
-                prefix = p.substring(0, 1);
-                p = p.substring(1);
+        int start = 0;
+        boolean prefixed = false;
+        if (!p.isEmpty() && p.charAt(0) >= '<' && p.charAt(0) <= '?') {
+            // Prefixed values are not numbers
+            prefixed = true;
+            start = 1;
+        }
+        int length = p.length();
+        // Ignore trailing empty parameters, as String.split() would
+        int count = 1;
+        if (p.indexOf(';', start) >= 0) {
+            while (length > start && p.charAt(length - 1) == ';') {
+                length--;
+            }
+            count = length > start ? 1 : 0;
+            for (int i = start; i < length; i++) {
+                if (p.charAt(i) == ';') {
+                    count++;
+                }
             }
         }
-        String[] ps = p.split(";");
-        int n = Math.max(ps.length, defaults.length);
+        int n = Math.max(count, defaults.length);
         int[] values = new int[n];
+        int pos = start;
         for (int i = 0; i < n; i++) {
-            Integer value = null;
-            if (i < ps.length) {
-                String v = prefix + ps[i];
-                try {
-                    value = Integer.parseInt(v);
-                } catch (NumberFormatException e) {
+            int value = -1;
+            if (i < count) {
+                int next = p.indexOf(';', pos);
+                if (next < 0 || next > length) {
+                    next = length;
                 }
+                if (!prefixed) {
+                    value = parseParam(p, pos, next);
+                }
+                pos = next + 1;
             }
-            if (value == null && i < defaults.length) {
-                value = defaults[i];
-            }
-            if (value == null) {
-                value = 0;
+            if (value < 0) {
+                value = i < defaults.length ? defaults[i] : 0;
             }
             values[i] = value;
         }
         return values;
     }
 
+    private static int parseParam(String p, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = p.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
     private void vt100_parse_reset() {
         vt100_parse_reset(State.None);
     }
@@ -1164,7 +1231,7 @@ public class ScreenTerminal {
         vt100_parse_state = state;
         vt100_parse_len = 0;
         vt100_parse_func = 0;
-        vt100_parse_param = "";
+        vt100_parse_param.setLength(0);
     }
 
     private void vt100_parse_process() {
@@ -1309,6 +1376,7 @@ public class ScreenTerminal {
                 vt100_parse_reset();
             }
         } else {
+            String vt100_parse_param = this.vt100_parse_param.toString();
             switch (vt100_parse_func) {
                 case 0x0040:
                     csi_ICH(vt100_parse_param);
@@ -1588,7 +1656,7 @@ public class ScreenTerminal {
                             vt100_parse_func <<= 8;
                             vt100_parse_func += (char) c;
                         } else if (msb == 0x30 && vt100_parse_state == State.Csi) {
-                            vt100_parse_param += String.valueOf((char) c);
+                            vt100_parse_param.append((char) c);
                         } else {
                             vt100_parse_func <<= 8;
                             vt100_parse_func += (char) c;
@@ -1681,18 +1749,9 @@ public class ScreenTerminal {
             }
             long[][] sc = new long[h][];
             if (avail > 0) {
-                for (int i = 0; i < avail; i++) {
-                    long[] historyLine = history.remove(history.size() - avail + i);
-                    // Check if the history line needs to be resized to match the new width
-                    if (historyLine.length < w) {
-                        int oldLength = historyLine.length;
-                        historyLine = Arrays.copyOf(historyLine, w);
-                        // Fill the rest with spaces
-                        for (int j = oldLength; j < w; j++) {
-                            historyLine[j] = attr | 0x00000020;
-                        }
-                    }
-                    sc[i] = historyLine;
+                // The most recent line goes just above the screen, padded to the new width
+                for (int i = avail - 1; i >= 0; i--) {
+                    sc[i] = history.removeLast(w, attr | 0x00000020);
                 }
                 cy += avail;
             }
@@ -1719,10 +1778,30 @@ public class ScreenTerminal {
         width = w;
         height = h;
 
+        damage.set(0, height);
         setDirty();
         return true;
     }
 
+    /**
+     * Returns the maximum number of lines kept in the history.
+     *
+     * @return the maximum number of lines
+     */
+    public synchronized int getHistorySize() {
+        return history.getCapacity();
+    }
+
+    /**
+     * Sets the maximum number of lines kept in the history,
+     * the oldest lines being discarded.
+     *
+     * @param size the maximum number of lines
+     */
+    public synchronized void setHistorySize(int size) {
+        history.setCapacity(size);
+    }
+
     public synchronized String read() {
         String d = vt100_out;
         vt100_out = "";
@@ -1730,152 +1809,152 @@ public class ScreenTerminal {
     }
 
     public synchronized String pipe(String d) {
-        String o = "";
+        StringBuilder o = new StringBuilder();
         for (char c : d.toCharArray()) {
             if (vt100_keyfilter_escape) {
                 vt100_keyfilter_escape = false;
                 if (vt100_mode_cursorkey) {
                     switch (c) {
                         case '~':
-                            o += "~";
+                            o.append("~");
                             break;
                         case 'A':
-                            o += "\u001bOA";
+                            o.append("\u001bOA");
                             break;
                         case 'B':
-                            o += "\u001bOB";
+                            o.append("\u001bOB");
                             break;
                         case 'C':
-                            o += "\u001bOC";
+                            o.append("\u001bOC");
                             break;
                         case 'D':
-                            o += "\u001bOD";
+                            o.append("\u001bOD");
                             break;
                         case 'F':
-                            o += "\u001bOF";
+                            o.append("\u001bOF");
                             break;
                         case 'H':
-                            o += "\u001bOH";
+                            o.append("\u001bOH");
                             break;
                         case '1':
-                            o += "\u001b[5~";
+                            o.append("\u001b[5~");
                             break;
                         case '2':
-                            o += "\u001b[6~";
+                            o.append("\u001b[6~");
                             break;
                         case '3':
-                            o += "\u001b[2~";
+                            o.append("\u001b[2~");
                             break;
                         case '4':
-                            o += "\u001b[3~";
+                            o.append("\u001b[3~");
                             break;
                         case 'a':
-                            o += "\u001bOP";
+                            o.append("\u001bOP");
                             break;
                         case 'b':
-                            o += "\u001bOQ";
+                            o.append("\u001bOQ");
                             break;
                         case 'c':
-                            o += "\u001bOR";
+                            o.append("\u001bOR");
                             break;
                         case 'd':
-                            o += "\u001bOS";
+                            o.append("\u001bOS");
                             break;
                         case 'e':
-                            o += "\u001b[15~";
+                            o.append("\u001b[15~");
                             break;
                         case 'f':
-                            o += "\u001b[17~";
+                            o.append("\u001b[17~");
                             break;
                         case 'g':
-                            o += "\u001b[18~";
+                            o.append("\u001b[18~");
                             break;
                         case 'h':
-                            o += "\u001b[19~";
+                            o.append("\u001b[19~");
                             break;
                         case 'i':
-                            o += "\u001b[20~";
+                            o.append("\u001b[20~");
                             break;
                         case 'j':
-                            o += "\u001b[21~";
+                            o.append("\u001b[21~");
                             break;
                         case 'k':
-                            o += "\u001b[23~";
+                            o.append("\u001b[23~");
                             break;
                         case 'l':
-                            o += "\u001b[24~";
+                            o.append("\u001b[24~");
                             break;
                     }
                 } else {
                     switch (c) {
                         case '~':
-                            o += "~";
+                            o.append("~");
                             break;
                         case 'A':
-                            o += "\u001b[A";
+                            o.append("\u001b[A");
                             break;
                         case 'B':
-                            o += "\u001b[B";
+                            o.append("\u001b[B");
                             break;
                         case 'C':
-                            o += "\u001b[C";
+                            o.append("\u001b[C");
                             break;
                         case 'D':
-                            o += "\u001b[D";
+                            o.append("\u001b[D");
                             break;
                         case 'F':
-                            o += "\u001b[F";
+                            o.append("\u001b[F");
                             break;
                         case 'H':
-                            o += "\u001b[H";
+                            o.append("\u001b[H");
                             break;
                         case '1':
-                            o += "\u001b[5~";
+                            o.append("\u001b[5~");
                             break;
                         case '2':
-                            o += "\u001b[6~";
+                            o.append("\u001b[6~");
                             break;
                         case '3':
-                            o += "\u001b[2~";
+                            o.append("\u001b[2~");
                             break;
                         case '4':
-                            o += "\u001b[3~";
+                            o.append("\u001b[3~");
                             break;
                         case 'a':
-                            o += "\u001bOP";
+                            o.append("\u001bOP");
                             break;
                         case 'b':
-                            o += "\u001bOQ";
+                            o.append("\u001bOQ");
                             break;
                         case 'c':
-                            o += "\u001bOR";
+                            o.append("\u001bOR");
                             break;
                         case 'd':
-                            o += "\u001bOS";
+                            o.append("\u001bOS");
                             break;
                         case 'e':
-                            o += "\u001b[15~";
+                            o.append("\u001b[15~");
                             break;
                         case 'f':
-                            o += "\u001b[17~";
+                            o.append("\u001b[17~");
                             break;
                         case 'g':
-                            o += "\u001b[18~";
+                            o.append("\u001b[18~");
                             break;
                         case 'h':
-                            o += "\u001b[19~";
+                            o.append("\u001b[19~");
                             break;
                         case 'i':
-                            o += "\u001b[20~";
+                            o.append("\u001b[20~");
                             break;
                         case 'j':
-                            o += "\u001b[21~";
+                            o.append("\u001b[21~");
                             break;
                         case 'k':
-                            o += "\u001b[23~";
+                            o.append("\u001b[23~");
                             break;
                         case 'l':
-                            o += "\u001b[24~";
+                            o.append("\u001b[24~");
                             break;
                     }
                 }
@@ -1883,26 +1962,52 @@ public class ScreenTerminal {
                 vt100_keyfilter_escape = true;
             } else if (c == 127) {
                 if (vt100_mode_backspace) {
-                    o += (char) 8;
+                    o.append((char) 8);
                 } else {
-                    o += (char) 127;
+                    o.append((char) 127);
                 }
             } else {
-                o += c;
+                o.append(c);
                 if (vt100_mode_lfnewline && c == 13) {
-                    o += (char) 10;
+                    o.append((char) 10);
                 }
             }
         }
-        return o;
+        return o.toString();
     }
 
     public synchronized boolean write(CharSequence d) {
-        d.codePoints().forEachOrdered(c -> {
+        char[] chars = d.toString().toCharArray();
+        return write(chars, 0, chars.length);
+    }
+
+    /**
+     * Processes a chunk of terminal output.
+     *
+     * @param buf the characters to process
+     * @param off the offset of the first character
+     * @param len the number of characters
+     * @return <code>true</code>
+     */
+    public synchronized boolean write(char[] buf, int off, int len) {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            char ch = buf[i];
+            if (vt100_parse_state == State.None && isPrintable(ch)) {
+                // Print the whole run of printable characters at once
+                i = dumb_echo(buf, i, end);
+                continue;
+            }
+            int c = ch;
+            if (Character.isHighSurrogate(ch) && i + 1 < end && Character.isLowSurrogate(buf[i + 1])) {
+                c = Character.toCodePoint(ch, buf[++i]);
+            }
+            i++;
             if (!vt100_write(c) && !dumb_write(c) && c <= 0xffff) {
                 dumb_echo(c);
             }
-        });
+        }
         return true;
     }
 
@@ -1912,6 +2017,36 @@ public class ScreenTerminal {
         for (int y = 0; y < Math.min(height, fheight - ftop); y++) {
             System.arraycopy(screen[y], 0, fullscreen, (y + ftop) * fwidth + fleft, width);
         }
+        damage.clear();
+        if (cursor != null) {
+            cursor[0] = cx + fleft;
+            cursor[1] = cy + ftop;
+        }
+    }
+
+    /**
+     * Dumps the rows which changed since the last dump into the given screen.
+     * The rows of the screen which have been updated are added to the
+     * <code>rows</code> bit set.
+     *
+     * @param fullscreen the screen to update
+     * @param ftop the row of this terminal in the screen
+     * @param fleft the column of this terminal in the screen
+     * @param fheight the height of the screen
+     * @param fwidth the width of the screen
+     * @param cursor if not null, receives the cursor position in the screen
+     * @param rows receives the updated rows of the screen
+     */
+    public synchronized void dumpDamage(
+            long[] fullscreen, int ftop, int fleft, int fheight, int fwidth, int[] cursor, BitSet rows) {
+        int cx = Math.min(this.cx, width - 1);
+        int cy = this.cy;
+        int max = Math.min(height, fheight - ftop);
+        for (int y = damage.nextSetBit(0); y >= 0 && y < max; y = damage.nextSetBit(y + 1)) {
+            System.arraycopy(screen[y], 0, fullscreen, (y + ftop) * fwidth + fleft, width);
+            rows.set(y + ftop);
+        }
+        damage.clear();
         if (cursor != null) {
             cursor[0] = cx + fleft;
             cursor[1] = cy + ftop;
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Bounded store for the lines scrolled out of a {@link ScreenTerminal}.
+ * <p>
+ * Lines are kept in a ring buffer holding at most {@link #getCapacity()} lines,
+ * the oldest lines being discarded first.  Each line is stored compactly:
+ * <ul>
+ *   <li>the characters are stored as a <code>char[]</code>,</li>
+ *   <li>the attributes are run-length encoded,</li>
+ *   <li>the trailing cells repeating the last cell are not stored.</li>
+ * </ul>
+ * Lines do not depend on the width of the screen: they are padded to the
+ * requested width when they are pulled back, so that resizing the screen
+ * does not need to touch the stored lines.
+ */
+class ScrollbackBuffer {
+
+    private final ArrayDeque<Line> lines = new ArrayDeque<>();
+    private int capacity;
+
+    ScrollbackBuffer(int capacity) {
+        setCapacity(capacity);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of lines, discarding the oldest lines if needed.
+     *
+     * @param capacity the maximum number of lines
+     */
+    void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        while (lines.size() > capacity) {
+            lines.pollFirst();
+        }
+    }
+
+    int size() {
+        return lines.size();
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    /**
+     * Adds a line, discarding the oldest line if the buffer is full.
+     *
+     * @param cells the cells of the line
+     */
+    void add(long[] cells) {
+        if (capacity == 0) {
+            return;
+        }
+        if (lines.size() == capacity) {
+            lines.pollFirst();
+        }
+        lines.addLast(new Line(cells));
+    }
+
+    /**
+     * Removes the most recent line.
+     *
+     * @param width the minimum number of cells of the returned line
+     * @param fill the value of the cells added to reach the given width
+     * @return the cells of the line, or <code>null</code> if the buffer is empty
+     */
+    long[] removeLast(int width, long fill) {
+        Line line = lines.pollLast();
+        return line != null ? line.cells(width, fill) : null;
+    }
+
+    private static final class Line {
+        // Number of cells of the line
+        final int length;
+        // Characters of the cells, up to the trailing cells
+        final char[] text;
+        // Run-length encoded attributes of the cells: run lengths and attributes
+        final int[] runs;
+        final int[] attributes;
+        // Value of the trailing cells
+        final long trailing;
+        // Raw cells, for lines holding characters which do not fit in a char
+        final long[] raw;
+
+        Line(long[] cells) {
+            length = cells.length;
+            trailing = length > 0 ? cells[length - 1] : 0;
+            int end = length;
+            while (end > 0 && cells[end - 1] == trailing) {
+                end--;
+            }
+            char[] text = new char[end];
+            int nbRuns = 0;
+            for (int i = 0; i < end; i++) {
+                int c = (int) cells[i];
+                if (c < 0 || c > Character.MAX_VALUE) {
+                    this.text = null;
+                    this.runs = null;
+                    this.attributes = null;
+                    this.raw = cells.clone();
+                    return;
+                }
+                text[i] = (char) c;
+                if (i == 0 || (cells[i] >>> 32) != (cells[i - 1] >>> 32)) {
+                    nbRuns++;
+                }
+            }
+            int[] runs = new int[nbRuns];
+            int[] attributes = new int[nbRuns];
+            int run = -1;
+            for (int i = 0; i < end; i++) {
+                int a = (int) (cells[i] >>> 32);
+                if (run < 0 || a != attributes[run]) {
+                    attributes[++run] = a;
+                }
+                runs[run]++;
+            }
+            this.text = text;
+            this.runs = runs;
+            this.attributes = attributes;
+            this.raw = null;
+        }
+
+        long[] cells(int width, long fill) {
+            long[] cells = new long[Math.max(width, length)];
+            if (raw != null) {
+                System.arraycopy(raw, 0, cells, 0, length);
+            } else {
+                int i = 0;
+                for (int r = 0; r < runs.length; r++) {
+                    long a = (long) attributes[r] << 32;
+                    for (int end = i + runs[r]; i < end; i++) {
+                        cells[i] = a | text[i];
+                    }
+                }
+                Arrays.fill(cells, i, length, trailing);
+            }
+            Arrays.fill(cells, length, cells.length, fill);
+            return cells;
+        }
+    }
+}
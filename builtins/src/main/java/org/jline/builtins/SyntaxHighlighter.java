@@ -50,7 +50,7 @@ public class SyntaxHighlighter {
     protected static final String DEFAULT_LESSRC_FILE = "jlessrc";
     protected static final String COMMAND_INCLUDE = "include";
     protected static final String COMMAND_THEME = "theme";
-    private static final String TOKEN_NANORC = "NANORC";
+    static final String TOKEN_NANORC = "NANORC";
     private final Path nanorc;
     private final String syntaxName;
     private final String nanorcUrl;
@@ -60,6 +60,8 @@ public class SyntaxHighlighter {
     private int ruleStartId = 0;
 
     private Parser parser;
+    // Rules compiled on first use, by token name
+    private final Map<String, CompiledRules> compiledRules = new HashMap<>();
 
     private SyntaxHighlighter() {
         this(null, null, null);
@@ -89,32 +91,22 @@ public class SyntaxHighlighter {
     protected static SyntaxHighlighter build(
             List<Path> syntaxFiles, String file, String syntaxName, boolean ignoreErrors) {
         SyntaxHighlighter out = new SyntaxHighlighter();
-        Map<String, String> colorTheme = new HashMap<>();
+        Map<String, String> colorTheme = Collections.emptyMap();
         try {
             if (syntaxName == null || !syntaxName.equals("none")) {
                 for (Path p : syntaxFiles) {
                     try {
                         if (colorTheme.isEmpty() && p.getFileName().toString().endsWith(TYPE_NANORCTHEME)) {
                             out.setCurrentTheme(p);
-                            try (BufferedReader reader = Files.newBufferedReader(p)) {
-                                String line;
-                                while ((line = reader.readLine()) != null) {
-                                    line = line.trim();
-                                    if (!line.isEmpty() && !line.startsWith("#")) {
-                                        List<String> parts = Arrays.asList(line.split("\\s+", 2));
-                                        colorTheme.put(parts.get(0), parts.get(1));
-                                    }
-                                }
-                            }
+                            colorTheme = NanorcCache.theme(p);
                         } else {
-                            NanorcParser nanorcParser = new NanorcParser(p, syntaxName, file, colorTheme);
-                            nanorcParser.parse();
-                            if (nanorcParser.matches()) {
-                                out.addRules(nanorcParser.getHighlightRules());
-                                out.setParser(nanorcParser.getParser());
+                            NanorcCache.Grammar grammar = NanorcCache.grammar(p, colorTheme);
+                            if (grammar.matches(syntaxName, file)) {
+                                out.addRules(grammar.getRules());
+                                out.setParser(grammar.newParser());
                                 return out;
-                            } else if (nanorcParser.isDefault()) {
-                                out.addRules(nanorcParser.getHighlightRules());
+                            } else if (grammar.isDefault() && syntaxName == null) {
+                                out.addRules(grammar.getRules());
                             }
                         }
                     } catch (IOException e) {
@@ -184,10 +176,7 @@ public class SyntaxHighlighter {
                 consumer.accept(Stream.of(searchRoot));
             } else {
                 // Has wildcards - use glob matching
-                PathMatcher pathMatcher = searchRoot.getFileSystem().getPathMatcher("glob:" + parts.globPattern);
-                try (Stream<Path> pathStream = Files.walk(searchRoot)) {
-                    consumer.accept(pathStream.filter(p -> pathMatcher.matches(searchRoot.relativize(p))));
-                }
+                consumer.accept(NanorcCache.glob(searchRoot, parts.globPattern).stream());
             }
         }
     }
@@ -287,6 +276,7 @@ public class SyntaxHighlighter {
 
     private void addRules(Map<String, List<HighlightRule>> rules) {
         this.rules.putAll(rules);
+        this.compiledRules.clear();
     }
 
     public void setCurrentTheme(Path currentTheme) {
@@ -310,6 +300,47 @@ public class SyntaxHighlighter {
         return this;
     }
 
+    /**
+     * Returns the state reached by the lines highlighted so far, which is the
+     * state in which the next line will be highlighted.
+     *
+     * @return the current state
+     */
+    public State getState() {
+        boolean blockComment = parser != null && parser.blockComment;
+        boolean balancedQuoted = parser != null && parser.balancedQuoted;
+        if (!startEndHighlight && !blockComment && !balancedQuoted) {
+            return State.INITIAL;
+        }
+        return new State(
+                startEndHighlight ? ruleStartId : 0,
+                startEndHighlight,
+                blockComment,
+                balancedQuoted,
+                balancedQuoted ? parser.balancedDelimiter : null,
+                blockComment || balancedQuoted ? parser.startWith.toString() : null);
+    }
+
+    /**
+     * Restores a state returned by {@link #getState()}, so that a line can be highlighted
+     * without highlighting again the lines before it.
+     *
+     * @param state the state in which the next line will be highlighted
+     * @return this highlighter
+     */
+    public SyntaxHighlighter setState(State state) {
+        reset();
+        ruleStartId = state.ruleStartId;
+        startEndHighlight = state.startEndHighlight;
+        if (parser != null) {
+            parser.blockComment = state.blockComment;
+            parser.balancedQuoted = state.balancedQuoted;
+            parser.balancedDelimiter = state.balancedDelimiter;
+            parser.startWith = state.startWith;
+        }
+        return this;
+    }
+
     public void refresh() {
         SyntaxHighlighter sh;
         if (nanorc != null && syntaxName != null) {
@@ -338,114 +369,283 @@ public class SyntaxHighlighter {
     }
 
     private AttributedString splitAndHighlight(AttributedString attributedString) {
+        List<AttributedString> lines = attributedString.columnSplitLength(Integer.MAX_VALUE);
+        if (lines.size() == 1) {
+            return highlightLine(lines.get(0));
+        }
         AttributedStringBuilder asb = new AttributedStringBuilder();
         boolean first = true;
-        for (AttributedString line : attributedString.columnSplitLength(Integer.MAX_VALUE)) {
+        for (AttributedString line : lines) {
             if (!first) {
                 asb.append("\n");
             }
-            List<ParsedToken> tokens = new ArrayList<>();
-            if (parser != null) {
-                parser.parse(line);
-                tokens = parser.getTokens();
-            }
-            if (tokens.isEmpty()) {
-                asb.append(_highlight(line, rules.get(TOKEN_NANORC)));
-            } else {
-                int pos = 0;
-                for (ParsedToken t : tokens) {
-                    if (t.getStart() > pos) {
-                        AttributedStringBuilder head =
-                                _highlight(line.columnSubSequence(pos, t.getStart() + 1), rules.get(TOKEN_NANORC));
-                        asb.append(head.columnSubSequence(0, head.length() - 1));
-                    }
-                    asb.append(_highlight(
-                            line.columnSubSequence(t.getStart(), t.getEnd()),
-                            rules.get(t.getName()),
-                            t.getStartWith(),
-                            line.columnSubSequence(t.getEnd(), line.length())));
-                    pos = t.getEnd();
-                }
-                if (pos < line.length()) {
-                    asb.append(_highlight(line.columnSubSequence(pos, line.length()), rules.get(TOKEN_NANORC)));
+            asb.append(highlightLine(line));
+            first = false;
+        }
+        return asb.toAttributedString();
+    }
+
+    private AttributedString highlightLine(AttributedString line) {
+        int length = line.length();
+        String text = line.toString();
+        long[] styles = new long[length];
+        for (int i = 0; i < length; i++) {
+            styles[i] = line.styleAt(i).getStyle();
+        }
+        List<ParsedToken> tokens = null;
+        if (parser != null) {
+            parser.parse(text);
+            tokens = parser.getTokens();
+        }
+        CompiledRules nanorc = compiledRules(TOKEN_NANORC);
+        if (tokens == null || tokens.isEmpty()) {
+            highlight(nanorc, text, styles, 0, null, null);
+        } else {
+            int pos = 0;
+            for (ParsedToken t : tokens) {
+                if (t.getStart() > pos) {
+                    // The character following the text before the token is used for matching,
+                    // but is highlighted with the token
+                    long next = styles[t.getStart()];
+                    highlight(nanorc, text.substring(pos, t.getStart() + 1), styles, pos, null, null);
+                    styles[t.getStart()] = next;
                 }
+                highlight(
+                        compiledRules(t.getName()),
+                        text.substring(t.getStart(), t.getEnd()),
+                        styles,
+                        t.getStart(),
+                        t.getStartWith().toString(),
+                        text.substring(t.getEnd()));
+                pos = t.getEnd();
             }
-            first = false;
+            if (pos < length) {
+                highlight(nanorc, text.substring(pos), styles, pos, null, null);
+            }
+        }
+        AttributedStringBuilder asb = new AttributedStringBuilder(length);
+        for (int i = 0; i < length; ) {
+            int j = i + 1;
+            while (j < length && styles[j] == styles[i]) {
+                j++;
+            }
+            asb.append(text.substring(i, j), new AttributedStyle(styles[i], styles[i]));
+            i = j;
         }
         return asb.toAttributedString();
     }
 
-    private AttributedStringBuilder _highlight(AttributedString line, List<HighlightRule> rules) {
-        return _highlight(line, rules, null, null);
+    private CompiledRules compiledRules(String tokenName) {
+        return compiledRules.computeIfAbsent(tokenName, n -> new CompiledRules(rules.get(n)));
     }
 
-    private AttributedStringBuilder _highlight(
-            AttributedString line, List<HighlightRule> rules, CharSequence startWith, CharSequence continueAs) {
-        AttributedStringBuilder asb = new AttributedStringBuilder();
-        asb.append(line);
-        if (rules.isEmpty()) {
-            return asb;
-        }
-        int startId = ruleStartId;
-        boolean endHighlight = startEndHighlight;
-        for (int i = startId; i < (endHighlight ? startId + 1 : rules.size()); i++) {
-            HighlightRule rule = rules.get(i);
-            switch (rule.getType()) {
+    /**
+     * Applies the rules to a part of a line.
+     *
+     * @param rules the rules
+     * @param text the text of the part of the line
+     * @param styles the styles of the characters of the line
+     * @param offset the position of the part in the line
+     * @param startWith the beginning of the parsed token, or <code>null</code> outside of tokens
+     * @param continueAs the text following the parsed token, or <code>null</code> outside of tokens
+     */
+    private void highlight(
+            CompiledRules rules, String text, long[] styles, int offset, String startWith, String continueAs) {
+        int nb = rules.types.length;
+        long[] chars = new long[2];
+        FirstChars.collect(text, chars);
+        int first = 0;
+        int last = nb;
+        if (startEndHighlight && ruleStartId < nb) {
+            // Only the rule started on a previous line applies until it ends
+            first = ruleStartId;
+            last = ruleStartId + 1;
+        }
+        for (int i = first; i < last; i++) {
+            switch (rules.types[i]) {
                 case PATTERN:
-                    asb.styleMatches(rule.getPattern(), rule.getStyle());
+                    if (!rules.canStart(i, chars)) {
+                        break;
+                    }
+                    Matcher matcher = rules.matchers[i].reset(text);
+                    while (matcher.find()) {
+                        rules.style(i, styles, offset + matcher.start(), offset + matcher.end());
+                    }
                     break;
                 case START_END:
-                    boolean done = false;
-                    Matcher start = rule.getStart().matcher(asb.toAttributedString());
-                    Matcher end = rule.getEnd().matcher(asb.toAttributedString());
-                    while (!done) {
-                        AttributedStringBuilder a = new AttributedStringBuilder();
-                        if (startEndHighlight && ruleStartId == i) {
-                            if (end.find()) {
-                                ruleStartId = 0;
-                                startEndHighlight = false;
-                                a.append(asb.columnSubSequence(0, end.end()), rule.getStyle());
-                                a.append(_highlight(
-                                        asb.columnSubSequence(end.end(), asb.length())
-                                                .toAttributedString(),
-                                        rules));
-                            } else {
-                                a.append(asb, rule.getStyle());
-                                done = true;
-                            }
-                            asb = a;
+                    Matcher end = rules.endMatchers[i].reset(text);
+                    if (startEndHighlight && ruleStartId == i) {
+                        if (end.find()) {
+                            ruleStartId = 0;
+                            startEndHighlight = false;
+                            rules.style(i, styles, offset, offset + end.end());
+                            highlight(rules, text.substring(end.end()), styles, offset + end.end(), null, null);
                         } else {
-                            if (start.find()) {
-                                a.append(asb.columnSubSequence(0, start.start()));
-                                if (end.find()) {
-                                    a.append(asb.columnSubSequence(start.start(), end.end()), rule.getStyle());
-                                    a.append(asb.columnSubSequence(end.end(), asb.length()));
-                                } else {
-                                    ruleStartId = i;
-                                    startEndHighlight = true;
-                                    a.append(asb.columnSubSequence(start.start(), asb.length()), rule.getStyle());
-                                    done = true;
-                                }
-                                asb = a;
-                            } else {
-                                done = true;
-                            }
+                            rules.style(i, styles, offset, offset + text.length());
+                        }
+                        return;
+                    }
+                    if (!rules.canStart(i, chars)) {
+                        break;
+                    }
+                    Matcher start = rules.matchers[i].reset(text);
+                    int pos = 0;
+                    while (pos <= text.length() && start.find(pos)) {
+                        if (end.find(start.end())) {
+                            rules.style(i, styles, offset + start.start(), offset + end.end());
+                            pos = Math.max(end.end(), start.start() + 1);
+                        } else {
+                            ruleStartId = i;
+                            startEndHighlight = true;
+                            rules.style(i, styles, offset + start.start(), offset + text.length());
+                            break;
                         }
                     }
                     break;
                 case PARSER_START_WITH:
-                    if (startWith != null && startWith.toString().startsWith(rule.getStartWith())) {
-                        asb.styleMatches(rule.getPattern(), rule.getStyle());
+                    if (startWith != null && startWith.startsWith(rules.startWith[i])) {
+                        rules.style(i, styles, offset, offset + text.length());
                     }
                     break;
                 case PARSER_CONTINUE_AS:
-                    if (continueAs != null && continueAs.toString().matches(rule.getContinueAs() + ".*")) {
-                        asb.styleMatches(rule.getPattern(), rule.getStyle());
+                    if (continueAs != null && rules.matchers[i].reset(continueAs).matches()) {
+                        rules.style(i, styles, offset, offset + text.length());
                     }
                     break;
             }
         }
-        return asb;
+    }
+
+    /**
+     * Rules of a token, compiled for highlighting lines.
+     * <p>
+     * The rules are applied in order, each rule overriding the styles of the previous ones,
+     * so they are not merged into a single pattern.  Instead, the characters a match of each
+     * rule can start with are computed, so that the rules which can not match a line are
+     * skipped after a single scan of the line.  The matchers of the rules are reused for
+     * all the lines, and the styles are applied to an array of style codes, which is only
+     * turned into an attributed string once all the rules have been applied.
+     */
+    static final class CompiledRules {
+        final HighlightRule.RuleType[] types;
+        // Matchers of the patterns, of the start patterns, or of the continueAs patterns
+        final Matcher[] matchers;
+        final Matcher[] endMatchers;
+        final String[] startWith;
+        // Characters the matches of the patterns or start patterns can start with, if known
+        final long[][] firstChars;
+        final long[] styles;
+        final long[] masks;
+
+        CompiledRules(List<HighlightRule> rules) {
+            int nb = rules != null ? rules.size() : 0;
+            types = new HighlightRule.RuleType[nb];
+            matchers = new Matcher[nb];
+            endMatchers = new Matcher[nb];
+            startWith = new String[nb];
+            firstChars = new long[nb][];
+            styles = new long[nb];
+            masks = new long[nb];
+            for (int i = 0; i < nb; i++) {
+                HighlightRule rule = rules.get(i);
+                types[i] = rule.getType();
+                styles[i] = rule.getStyle().getStyle();
+                masks[i] = rule.getStyle().getMask();
+                switch (rule.getType()) {
+                    case PATTERN:
+                        matchers[i] = rule.getPattern().matcher("");
+                        firstChars[i] = FirstChars.of(rule.getPattern());
+                        break;
+                    case START_END:
+                        matchers[i] = rule.getStart().matcher("");
+                        firstChars[i] = FirstChars.of(rule.getStart());
+                        endMatchers[i] = rule.getEnd().matcher("");
+                        break;
+                    case PARSER_START_WITH:
+                        startWith[i] = rule.getStartWith();
+                        break;
+                    case PARSER_CONTINUE_AS:
+                        matchers[i] = rule.getContinueAsPattern().matcher("");
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Checks whether a match of the pattern, or of the start pattern, of a rule
+         * can start with one of the given characters.
+         */
+        boolean canStart(int rule, long[] chars) {
+            return firstChars[rule] == null || FirstChars.intersects(firstChars[rule], chars);
+        }
+
+        void style(int rule, long[] codes, int from, int to) {
+            long style = styles[rule];
+            long mask = ~masks[rule];
+            for (int i = from; i < to; i++) {
+                codes[i] = (codes[i] & mask) | style;
+            }
+        }
+    }
+
+    /**
+     * State of the highlighter between two lines: the multi-line rule or the
+     * parsed token, such as a block comment, which is not terminated yet.
+     * <p>
+     * States are immutable and can be compared, so that a line highlighted in a
+     * given state does not need to be highlighted again as long as the lines before
+     * it lead to the same state.
+     */
+    public static final class State {
+        /**
+         * State at the beginning of the text, or after {@link #reset()}.
+         */
+        public static final State INITIAL = new State(0, false, false, false, null, null);
+
+        private final int ruleStartId;
+        private final boolean startEndHighlight;
+        private final boolean blockComment;
+        private final boolean balancedQuoted;
+        private final String balancedDelimiter;
+        private final String startWith;
+
+        private State(
+                int ruleStartId,
+                boolean startEndHighlight,
+                boolean blockComment,
+                boolean balancedQuoted,
+                String balancedDelimiter,
+                String startWith) {
+            this.ruleStartId = ruleStartId;
+            this.startEndHighlight = startEndHighlight;
+            this.blockComment = blockComment;
+            this.balancedQuoted = balancedQuoted;
+            this.balancedDelimiter = balancedDelimiter;
+            this.startWith = startWith;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State state = (State) o;
+            return ruleStartId == state.ruleStartId
+                    && startEndHighlight == state.startEndHighlight
+                    && blockComment == state.blockComment
+                    && balancedQuoted == state.balancedQuoted
+                    && Objects.equals(balancedDelimiter, state.balancedDelimiter)
+                    && Objects.equals(startWith, state.startWith);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    ruleStartId, startEndHighlight, blockComment, balancedQuoted, balancedDelimiter, startWith);
+        }
     }
 
     static class HighlightRule {
@@ -463,6 +663,7 @@ public class SyntaxHighlighter {
         private Pattern end;
         private String startWith;
         private String continueAs;
+        private Pattern continueAsPattern;
 
         public HighlightRule(AttributedStyle style, Pattern pattern) {
             this.type = RuleType.PATTERN;
@@ -485,6 +686,7 @@ public class SyntaxHighlighter {
                 this.startWith = value;
             } else if (parserRuleType == RuleType.PARSER_CONTINUE_AS) {
                 this.continueAs = value;
+                this.continueAsPattern = Pattern.compile(value + ".*");
             } else {
                 throw new IllegalArgumentException("Bad RuleType: " + parserRuleType);
             }
@@ -527,6 +729,13 @@ public class SyntaxHighlighter {
             return continueAs;
         }
 
+        /**
+         * Returns the pattern matching the text following a token which continues as expected.
+         */
+        Pattern getContinueAsPattern() {
+            return continueAsPattern;
+        }
+
         public static RuleType evalRuleType(List<String> colorCfg) {
             RuleType out = null;
             if (colorCfg.get(0).equals("color") || colorCfg.get(0).equals("icolor")) {
@@ -566,6 +775,8 @@ public class SyntaxHighlighter {
         private Map<String, String> colorTheme = new HashMap<>();
         private boolean matches = false;
         private String syntaxName = "unknown";
+        // File name patterns of the syntax, null if the file has no syntax line
+        private List<String> fileRegexes;
 
         private Parser parser;
 
@@ -592,6 +803,7 @@ public class SyntaxHighlighter {
                         List<String> parts = RuleSplitter.split(line);
                         if (parts.get(0).equals("syntax")) {
                             syntaxName = parts.get(1);
+                            fileRegexes = new ArrayList<>(parts.subList(2, parts.size()));
                             List<Pattern> filePatterns = new ArrayList<>();
                             if (name != null) {
                                 if (name.equals(syntaxName)) {
@@ -725,6 +937,14 @@ public class SyntaxHighlighter {
             return syntaxName.equals(DEFAULT_SYNTAX);
         }
 
+        String getSyntaxName() {
+            return syntaxName;
+        }
+
+        List<String> getFileRegexes() {
+            return fileRegexes;
+        }
+
         private void addHighlightRule(String reference, List<String> parts, boolean caseInsensitive, String tokenName) {
             Map<String, String> spec = new HashMap<>();
             spec.put(reference, parts.get(1));
@@ -898,6 +1118,18 @@ public class SyntaxHighlighter {
 
         public Parser() {}
 
+        /**
+         * Creates a parser with the delimiters of the given parser, in the initial state.
+         */
+        Parser(Parser parser) {
+            this.blockCommentTokenName = parser.blockCommentTokenName;
+            this.blockCommentDelimiters = parser.blockCommentDelimiters;
+            this.lineCommentTokenName = parser.lineCommentTokenName;
+            this.lineCommentDelimiters = parser.lineCommentDelimiters;
+            this.balancedDelimiterTokenName = parser.balancedDelimiterTokenName;
+            this.balancedDelimiters = parser.balancedDelimiters;
+        }
+
         public void setBlockCommentDelimiters(String tokenName, String[] args) {
             try {
                 blockCommentTokenName = tokenName;
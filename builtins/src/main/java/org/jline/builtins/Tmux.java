@@ -24,6 +24,7 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -84,6 +85,7 @@ import static org.jline.keymap.KeyMap.*;
 public class Tmux {
 
     public static final String OPT_PREFIX = "prefix";
+    public static final String OPT_HISTORY_LIMIT = "history-limit";
 
     public static final String CMD_COMMANDS = "commands";
     public static final String CMD_SEND_PREFIX = "send-prefix";
@@ -267,7 +269,8 @@ public class Tmux {
                     size.getRows() - 1,
                     tmux::setDirty,
                     tmux::close,
-                    layout);
+                    layout,
+                    tmux.historyLimit());
             active.active = lastActive++;
             active.getConsole().setAttributes(terminal.getAttributes());
             panes.add(active);
@@ -365,7 +368,8 @@ public class Tmux {
                     newCell.sy,
                     tmux::setDirty,
                     tmux::close,
-                    newCell);
+                    newCell,
+                    tmux.historyLimit());
             panes.add(newConsole);
             newConsole.getConsole().setAttributes(terminal.getAttributes());
             if (!opt.isSet("d")) {
@@ -456,6 +460,7 @@ public class Tmux {
         term = (colors != null && colors >= 256) ? "screen-256color" : "screen";
         // Setup defaults bindings
         serverOptions.put(OPT_PREFIX, "`");
+        serverOptions.put(OPT_HISTORY_LIMIT, Integer.toString(ScreenTerminal.DEFAULT_HISTORY_SIZE));
         keyMap = createKeyMap(serverOptions.get(OPT_PREFIX));
     }
 
@@ -561,6 +566,10 @@ public class Tmux {
         }
     }
 
+    private int historyLimit() {
+        return Integer.parseInt(serverOptions.get(OPT_HISTORY_LIMIT));
+    }
+
     private void setDirty() {
         synchronized (dirty) {
             dirty.set(true);
@@ -861,6 +870,20 @@ public class Tmux {
                     }
                     keyMap = newKeys;
                     break;
+                case OPT_HISTORY_LIMIT:
+                    // Applies to the panes created afterwards
+                    if (value == null) {
+                        throw new IllegalArgumentException("Missing argument");
+                    }
+                    try {
+                        if (Integer.parseInt(value) < 0) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid history limit: " + value);
+                    }
+                    serverOptions.put(OPT_HISTORY_LIMIT, value);
+                    break;
             }
         }
     }
@@ -1082,41 +1105,106 @@ public class Tmux {
     int INACTIVE_COLOR = 0x44F;
     int CLOCK_COLOR = 0x44F;
 
+    // Composited frame, reused across redraws
+    private long[] frame;
+    private AttributedString[] frameLines;
+    private List<Object> frameLayout;
+    private final Map<VirtualConsole, String> frameClocks = new HashMap<>();
+    private final int[] frameCursor = new int[2];
+    // Rounded 256 colors for the 12 bits colors of the screen terminals
+    private final int[] roundedColors = new int[4096];
+
     protected synchronized void redraw() {
-        long[] screen = new long[size.getRows() * size.getColumns()];
-        // Fill
-        Arrays.fill(screen, 0x00000020L);
-        int[] cursor = new int[2];
+        int rows = size.getRows();
+        int columns = size.getColumns();
+        BitSet damaged = new BitSet(rows);
+        // The whole frame is composited again when the layout changes,
+        // else only the rows that changed in the panes are updated
+        List<Object> layout = frameLayout();
+        boolean full = frame == null || identify || !layout.equals(frameLayout);
+        if (full) {
+            if (frame == null || frame.length != rows * columns) {
+                frame = new long[rows * columns];
+                frameLines = new AttributedString[rows];
+            }
+            frameLayout = layout;
+            frameClocks.clear();
+            Arrays.fill(frameCursor, 0);
+            // Fill
+            Arrays.fill(frame, 0x00000020L);
+            damaged.set(0, rows);
+        }
+        long[] screen = frame;
+        int[] cursor = frameCursor;
         for (VirtualConsole terminal : panes()) {
             if (terminal.clock) {
                 String str = DateFormat.getTimeInstance(DateFormat.SHORT).format(new Date());
-                print(screen, terminal, str, CLOCK_COLOR);
-            } else {
+                if (!str.equals(frameClocks.put(terminal, str))) {
+                    for (int y = terminal.top(); y < Math.min(terminal.bottom(), rows); y++) {
+                        Arrays.fill(screen, y * columns + terminal.left(), y * columns + terminal.right(), 0x00000020L);
+                    }
+                    print(screen, terminal, str, CLOCK_COLOR);
+                    damaged.set(terminal.top(), Math.min(terminal.bottom(), rows));
+                }
+            } else if (full) {
                 // Dump terminal
-                terminal.dump(
+                terminal.dump(screen, terminal.top(), terminal.left(), rows, columns, terminal == active() ? cursor : null);
+            } else {
+                // Dump changed rows
+                terminal.dumpDamage(
                         screen,
                         terminal.top(),
                         terminal.left(),
-                        size.getRows(),
-                        size.getColumns(),
-                        terminal == active() ? cursor : null);
+                        rows,
+                        columns,
+                        terminal == active() ? cursor : null,
+                        damaged);
             }
 
-            if (identify) {
-                String id = Integer.toString(terminal.id);
-                print(screen, terminal, id, terminal == active() ? ACTIVE_COLOR : INACTIVE_COLOR);
+            if (full) {
+                if (identify) {
+                    String id = Integer.toString(terminal.id);
+                    print(screen, terminal, id, terminal == active() ? ACTIVE_COLOR : INACTIVE_COLOR);
+                }
+                // Draw border
+                drawBorder(screen, size, terminal, 0x0L);
             }
-            // Draw border
-            drawBorder(screen, size, terminal, 0x0L);
         }
-        drawBorder(screen, size, active(), 0x010080000L << 32);
-        // Draw status
-        Arrays.fill(
-                screen,
-                (size.getRows() - 1) * size.getColumns(),
-                size.getRows() * size.getColumns(),
-                0x20000080L << 32 | 0x0020L);
+        if (full) {
+            drawBorder(screen, size, active(), 0x010080000L << 32);
+            // Draw status
+            Arrays.fill(screen, (rows - 1) * columns, rows * columns, 0x20000080L << 32 | 0x0020L);
+        }
+
+        for (int y = damaged.nextSetBit(0); y >= 0 && y < rows; y = damaged.nextSetBit(y + 1)) {
+            frameLines[y] = toAttributedString(screen, y * columns, columns);
+        }
+        display.resize(rows, columns);
+        // The display keeps the lines to compute the next update, so pass a copy
+        display.update(Arrays.asList(frameLines.clone()), size.cursorPos(cursor[1], cursor[0]));
+    }
+
+    /**
+     * Returns what the composited frame depends on, besides the content of the panes.
+     */
+    private List<Object> frameLayout() {
+        List<Object> layout = new ArrayList<>();
+        layout.add(size.getRows());
+        layout.add(size.getColumns());
+        layout.add(identify);
+        layout.add(active());
+        for (VirtualConsole terminal : panes()) {
+            layout.add(terminal);
+            layout.add(terminal.clock);
+            layout.add(terminal.left());
+            layout.add(terminal.top());
+            layout.add(terminal.width());
+            layout.add(terminal.height());
+        }
+        return layout;
+    }
 
+    private AttributedString toAttributedString(long[] screen, int offset, int columns) {
         // Attribute mask: 0xYXFFFBBB00000000L
         //  X:  Bit 0 - Underlined
         //      Bit 1 - Negative
@@ -1127,7 +1215,6 @@ public class Tmux {
         //  F:  Foreground r-g-b
         //  B:  Background r-g-b
 
-        List<AttributedString> lines = new ArrayList<>();
         int prevBg = 0;
         int prevFg = 0;
         boolean prevInv = false;
@@ -1136,65 +1223,66 @@ public class Tmux {
         boolean prevConceal = false;
         boolean prevHasFg = false;
         boolean prevHasBg = false;
-        for (int y = 0; y < size.getRows(); y++) {
-            AttributedStringBuilder sb = new AttributedStringBuilder(size.getColumns());
-            for (int x = 0; x < size.getColumns(); x++) {
-                long d = screen[y * size.getColumns() + x];
-                int c = (int) (d & 0xffffffffL);
-                int a = (int) (d >> 32);
-                int bg = a & 0x000fff;
-                int fg = (a & 0xfff000) >> 12;
-                boolean ul = ((a & 0x01000000) != 0);
-                boolean inv = ((a & 0x02000000) != 0);
-                boolean conceal = ((a & 0x04000000) != 0);
-                boolean bold = ((a & 0x08000000) != 0);
-                boolean hasFg = ((a & 0x10000000) != 0);
-                boolean hasBg = ((a & 0x20000000) != 0);
-
-                if ((hasBg && prevHasBg && bg != prevBg) || prevHasBg != hasBg) {
-                    if (!hasBg) {
-                        sb.style(sb.style().backgroundDefault());
-                    } else {
-                        int col = bg;
-                        col = Colors.roundRgbColor((col & 0xF00) >> 4, (col & 0x0F0), (col & 0x00F) << 4, 256);
-                        sb.style(sb.style().background(col));
-                    }
-                    prevBg = bg;
-                    prevHasBg = hasBg;
-                }
-                if ((hasFg && prevHasFg && fg != prevFg) || prevHasFg != hasFg) {
-                    if (!hasFg) {
-                        sb.style(sb.style().foregroundDefault());
-                    } else {
-                        int col = fg;
-                        col = Colors.roundRgbColor((col & 0xF00) >> 4, (col & 0x0F0), (col & 0x00F) << 4, 256);
-                        sb.style(sb.style().foreground(col));
-                    }
-                    prevFg = fg;
-                    prevHasFg = hasFg;
-                }
-                if (conceal != prevConceal) {
-                    sb.style(conceal ? sb.style().conceal() : sb.style().concealOff());
-                    prevConceal = conceal;
-                }
-                if (inv != prevInv) {
-                    sb.style(inv ? sb.style().inverse() : sb.style().inverseOff());
-                    prevInv = inv;
-                }
-                if (ul != prevUl) {
-                    sb.style(ul ? sb.style().underline() : sb.style().underlineOff());
-                    prevUl = ul;
+        AttributedStringBuilder sb = new AttributedStringBuilder(columns);
+        for (int x = 0; x < columns; x++) {
+            long d = screen[offset + x];
+            int c = (int) (d & 0xffffffffL);
+            int a = (int) (d >> 32);
+            int bg = a & 0x000fff;
+            int fg = (a & 0xfff000) >> 12;
+            boolean ul = ((a & 0x01000000) != 0);
+            boolean inv = ((a & 0x02000000) != 0);
+            boolean conceal = ((a & 0x04000000) != 0);
+            boolean bold = ((a & 0x08000000) != 0);
+            boolean hasFg = ((a & 0x10000000) != 0);
+            boolean hasBg = ((a & 0x20000000) != 0);
+
+            if ((hasBg && prevHasBg && bg != prevBg) || prevHasBg != hasBg) {
+                if (!hasBg) {
+                    sb.style(sb.style().backgroundDefault());
+                } else {
+                    sb.style(sb.style().background(roundColor(bg)));
                 }
-                if (bold != prevBold) {
-                    sb.style(bold ? sb.style().bold() : sb.style().boldOff());
-                    prevBold = bold;
+                prevBg = bg;
+                prevHasBg = hasBg;
+            }
+            if ((hasFg && prevHasFg && fg != prevFg) || prevHasFg != hasFg) {
+                if (!hasFg) {
+                    sb.style(sb.style().foregroundDefault());
+                } else {
+                    sb.style(sb.style().foreground(roundColor(fg)));
                 }
-                sb.append((char) c);
+                prevFg = fg;
+                prevHasFg = hasFg;
+            }
+            if (conceal != prevConceal) {
+                sb.style(conceal ? sb.style().conceal() : sb.style().concealOff());
+                prevConceal = conceal;
+            }
+            if (inv != prevInv) {
+                sb.style(inv ? sb.style().inverse() : sb.style().inverseOff());
+                prevInv = inv;
+            }
+            if (ul != prevUl) {
+                sb.style(ul ? sb.style().underline() : sb.style().underlineOff());
+                prevUl = ul;
+            }
+            if (bold != prevBold) {
+                sb.style(bold ? sb.style().bold() : sb.style().boldOff());
+                prevBold = bold;
             }
-            lines.add(sb.toAttributedString());
+            sb.append((char) c);
         }
-        display.resize(size.getRows(), size.getColumns());
-        display.update(lines, size.cursorPos(cursor[1], cursor[0]));
+        return sb.toAttributedString();
+    }
+
+    private int roundColor(int col) {
+        int rounded = roundedColors[col] - 1;
+        if (rounded < 0) {
+            rounded = Colors.roundRgbColor((col & 0xF00) >> 4, (col & 0x0F0), (col & 0x00F) << 4, 256);
+            roundedColors[col] = rounded + 1;
+        }
+        return rounded;
     }
 
     private void print(long[] screen, VirtualConsole terminal, String id, int color) {
@@ -1974,7 +2062,8 @@ public class Tmux {
                 int rows,
                 Runnable dirty,
                 Consumer<VirtualConsole> closer,
-                Layout layout)
+                Layout layout,
+                int historyLimit)
                 throws IOException {
             String name = String.format("tmux%02d", id);
             this.id = id;
@@ -1988,6 +2077,7 @@ public class Tmux {
                     dirty.run();
                 }
             };
+            this.terminal.setHistorySize(historyLimit);
             this.masterOutput = new MasterOutputStream();
             this.masterInputOutput = new OutputStream() {
                 @Override
@@ -2054,6 +2144,11 @@ public class Tmux {
             terminal.dump(fullscreen, ftop, fleft, fheight, fwidth, cursor);
         }
 
+        public void dumpDamage(
+                long[] fullscreen, int ftop, int fleft, int fheight, int fwidth, int[] cursor, BitSet rows) {
+            terminal.dumpDamage(fullscreen, ftop, fleft, fheight, fwidth, cursor, rows);
+        }
+
         @Override
         public void close() throws IOException {
             console.close();
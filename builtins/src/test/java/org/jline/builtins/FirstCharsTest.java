@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FirstCharsTest {
+
+    private static String chars(long[] set) {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < 128; c++) {
+            if ((set[c >> 6] & (1L << c)) != 0) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String of(String regex) {
+        return of(Pattern.compile(regex));
+    }
+
+    private static String of(Pattern pattern) {
+        long[] set = FirstChars.of(pattern);
+        return set != null ? chars(set) : null;
+    }
+
+    @Test
+    public void testKnownSets() {
+        assertEquals("c", of("\\bclass\\b"));
+        assertEquals("0123456789", of("\\b[0-9]+\\b"));
+        assertEquals("/", of("//.*"));
+        assertEquals("\"'", of("\"[^\"]*\"|'.'"));
+        assertEquals("@", of("@[A-Za-z]+"));
+        assertEquals("fi", of("\\b(for|if)\\b"));
+        assertEquals("-]a", of("[]a-]"));
+        assertEquals("<", of("<(?:[a-z]+)>"));
+        assertEquals("Aa", of(Pattern.compile("a", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    public void testUnknownSets() {
+        assertNull(of("^import"));
+        assertNull(of("(a|)b"));
+        assertNull(of("a?b"));
+        assertNull(of("a*b"));
+        assertNull(of("a{0,2}b"));
+        assertNull(of(".+"));
+        assertNull(of("(?i)abc"));
+        assertNull(of("(?<=a)b"));
+        assertNull(of("[^a]"));
+        assertNull(of("\\p{L}"));
+        assertNull(of("é"));
+        assertNull(of(Pattern.compile("a", Pattern.MULTILINE)));
+    }
+
+    @Test
+    public void testRandomTexts() {
+        String[] regexes = {
+            "\\b(public|private|static)\\b",
+            "\\b[0-9]+(\\.[0-9]+)?\\b",
+            "\"(\\\\.|[^\"])*\"",
+            "[{}\\[\\],:]",
+            "\\b(true|false|null)\\b",
+            "</?[a-z]+",
+            "&[#a-z0-9]+;",
+            "\\p{Upper}\\w*",
+            "(\\s|-)+x"
+        };
+        String alphabet = "abcdefghijklmnopqrstuvwxyzPX0123456789 \t\"\\-.,:;{}[]<>/&#;é";
+        Random random = new Random(0);
+        for (String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            long[] set = FirstChars.of(pattern);
+            assertNotNull(set, regex);
+            long[] textChars = new long[2];
+            for (int i = 0; i < 1000; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = random.nextInt(40); j > 0; j--) {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String text = sb.toString();
+                Matcher matcher = pattern.matcher(text);
+                boolean found = false;
+                while (matcher.find()) {
+                    found = true;
+                    char c = text.charAt(matcher.start());
+                    assertTrue(c < 128 && (set[c >> 6] & (1L << c)) != 0, regex + " in " + text);
+                }
+                FirstChars.collect(text, textChars);
+                if (found) {
+                    assertTrue(FirstChars.intersects(set, textChars), regex + " in " + text);
+                }
+            }
+        }
+    }
+}
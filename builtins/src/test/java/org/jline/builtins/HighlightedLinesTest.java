@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jline.utils.AttributedString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class HighlightedLinesTest {
+
+    @TempDir
+    Path dir;
+
+    private SyntaxHighlighter highlighter;
+    private final List<String> lines = new ArrayList<>();
+    private int read;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Files.write(
+                dir.resolve("test.nanorc"),
+                ("syntax \"test\" \"\\.test$\"\n"
+                                + "color red \"\\<int\\>\"\n"
+                                + "color blue start=\"/\\*\" end=\"\\*/\"\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        Path nanorc = dir.resolve("jnanorc");
+        Files.write(nanorc, "include \"./test.nanorc\"\n".getBytes(StandardCharsets.UTF_8));
+        highlighter = SyntaxHighlighter.build(nanorc, "test");
+        for (int i = 0; i < 100; i++) {
+            lines.add(i % 10 == 3 ? "int a; /* start" : i % 10 == 6 ? "end */ int b;" : "int c" + i);
+        }
+    }
+
+    private HighlightedLines highlightedLines() {
+        return new HighlightedLines(highlighter, l -> {
+            read++;
+            return l < lines.size() ? new AttributedString(lines.get(l)) : null;
+        });
+    }
+
+    private List<AttributedString> expected() {
+        List<AttributedString> expected = new ArrayList<>();
+        highlighter.reset();
+        for (String line : lines) {
+            expected.add(highlighter.highlight(line));
+        }
+        return expected;
+    }
+
+    @Test
+    public void testState() {
+        highlighter.reset();
+        assertEquals(SyntaxHighlighter.State.INITIAL, highlighter.getState());
+        highlighter.highlight("int a; /* start");
+        SyntaxHighlighter.State state = highlighter.getState();
+        assertNotEquals(SyntaxHighlighter.State.INITIAL, state);
+        AttributedString inComment = highlighter.highlight("int c");
+        highlighter.highlight("end */ int b;");
+        assertEquals(SyntaxHighlighter.State.INITIAL, highlighter.getState());
+        assertEquals(inComment, highlighter.setState(state).highlight("int c"));
+        assertEquals(state, highlighter.getState());
+    }
+
+    @Test
+    public void testScrolling() throws Exception {
+        List<AttributedString> expected = expected();
+        HighlightedLines highlighted = highlightedLines();
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(expected.get(i), highlighted.get(i, 20), "Line " + i);
+        }
+        assertNull(highlighted.get(lines.size(), 20));
+        read = 0;
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            assertEquals(expected.get(i), highlighted.get(i, 20), "Line " + i);
+        }
+        assertEquals(0, read);
+    }
+
+    @Test
+    public void testFarLines() throws Exception {
+        List<AttributedString> expected = expected();
+        HighlightedLines highlighted = highlightedLines();
+        assertEquals(expected.get(85), highlighted.get(85, 20));
+        // only the lines up to 20 lines before are highlighted
+        assertEquals(21, read);
+        // once the beginning has been reached, the states are exact
+        for (int i = 84; i >= 0; i--) {
+            highlighted.get(i, 20);
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(expected.get(i), highlighted.get(i, 20), "Line " + i);
+        }
+    }
+
+    @Test
+    public void testFarPreviousLines() throws Exception {
+        List<AttributedString> expected = expected();
+        HighlightedLines highlighted = highlightedLines();
+        assertEquals(expected.get(85), highlighted.get(85, 20));
+        read = 0;
+        // the lines between are not highlighted
+        assertEquals(expected.get(0), highlighted.get(0, 20));
+        assertEquals(1, read);
+        read = 0;
+        assertEquals(expected.get(95), highlighted.get(95, 20));
+        assertEquals(21, read);
+        read = 0;
+        // a line close to the run is highlighted from 20 lines before up to the run
+        assertEquals(expected.get(60), highlighted.get(60, 20));
+        assertEquals(35, read);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        HighlightedLines highlighted = highlightedLines();
+        for (int i = 0; i < lines.size(); i++) {
+            highlighted.get(i, 20);
+        }
+        lines.set(36, "int d;");
+        lines.add(50, "int e;");
+        highlighted.invalidate(36);
+        List<AttributedString> expected = expected();
+        read = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(expected.get(i), highlighted.get(i, 20), "Line " + i);
+        }
+        assertEquals(lines.size() - 36, read);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class IndexedFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSameLinesAsReadLine() throws Exception {
+        Random random = new Random(42);
+        String[] terminators = {"\n", "\r", "\r\n", "\n\n", "\r\r\n"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            for (int j = random.nextInt(40); j > 0; j--) {
+                sb.append(random.nextInt(10) == 0 ? 'é' : (char) ('a' + random.nextInt(26)));
+            }
+            sb.append(terminators[random.nextInt(terminators.length)]);
+        }
+        sb.append("last line");
+        String content = sb.toString();
+        Path file = dir.resolve("test.txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+
+        List<String> expected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(line);
+            }
+        }
+
+        try (IndexedFile indexed = new IndexedFile(file, StandardCharsets.UTF_8)) {
+            // random accesses, before and after the index is complete
+            for (int i = 0; i < 1000; i++) {
+                int n = random.nextInt(expected.size());
+                assertEquals(expected.get(n), indexed.line(n), "Line " + n);
+            }
+            assertEquals(expected.size(), indexed.size());
+            for (int n = expected.size() - 1; n >= 0; n--) {
+                assertEquals(expected.get(n), indexed.line(n), "Line " + n);
+            }
+            assertNull(indexed.line(expected.size()));
+            assertNull(indexed.line(-1));
+        }
+    }
+
+    @Test
+    public void testTrailingTerminator() throws Exception {
+        Path file = dir.resolve("test.txt");
+        Files.write(file, "a\r\n\r\nb\r\n".getBytes(StandardCharsets.UTF_8));
+        try (IndexedFile indexed = new IndexedFile(file, StandardCharsets.UTF_8)) {
+            assertEquals(3, indexed.size());
+            assertEquals("a", indexed.line(0));
+            assertEquals("", indexed.line(1));
+            assertEquals("b", indexed.line(2));
+            assertNull(indexed.line(3));
+        }
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        Path file = dir.resolve("test.txt");
+        Files.write(file, "a\nb\r".getBytes(StandardCharsets.UTF_8));
+        try (IndexedFile indexed = new IndexedFile(file, StandardCharsets.UTF_8)) {
+            assertEquals(2, indexed.size());
+            assertEquals("b", indexed.line(1));
+            // the line feed completes the previous terminator
+            Files.write(file, "\nc".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertEquals(3, indexed.update());
+            assertEquals("c", indexed.line(2));
+            Files.write(file, "d\ne\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertEquals(4, indexed.update());
+            assertEquals("b", indexed.line(1));
+            assertEquals("cd", indexed.line(2));
+            assertEquals("e", indexed.line(3));
+            assertEquals(4, indexed.update());
+            // truncation
+            Files.write(file, "f\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals(-1, indexed.update());
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        Path file = dir.resolve("empty.txt");
+        Files.write(file, new byte[0]);
+        try (IndexedFile indexed = new IndexedFile(file, StandardCharsets.UTF_8)) {
+            assertEquals(0, indexed.size());
+            assertNull(indexed.line(0));
+        }
+    }
+}
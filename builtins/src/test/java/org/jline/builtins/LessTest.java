@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.jline.terminal.Size;
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LessTest {
+
+    @Test
+    @Timeout(10)
+    public void lessZipFileSystem(@TempDir Path dir) throws Exception {
+        Path zip = dir.resolve("test.zip");
+        try (FileSystem fs = FileSystems.newFileSystem(
+                URI.create("jar:" + zip.toUri()), Collections.singletonMap("create", "true"))) {
+            Path file = fs.getPath("/text.txt");
+            Files.write(file, "first line\nsecond line\n".getBytes(StandardCharsets.UTF_8));
+            // The file can not be indexed, as it is not on the default file system
+            assertTrue(Files.isRegularFile(file));
+            assertFalse(IndexedFile.isSupported(file, StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            LineDisciplineTerminal terminal =
+                    new LineDisciplineTerminal("less", "xterm", output, StandardCharsets.UTF_8);
+            terminal.setSize(new Size(80, 25));
+            terminal.processInputByte('q');
+            Less less = new Less(terminal, dir);
+            less.run(new Source.PathSource(file, "text.txt"));
+            terminal.flush();
+            String screen = output.toString("UTF-8");
+            assertTrue(screen.contains("first line"), screen);
+            assertTrue(screen.contains("second line"), screen);
+        }
+    }
+}
@@ -9,14 +9,24 @@
 package org.jline.builtins;
 
 import java.io.ByteArrayOutputStream;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 
 import org.jline.keymap.KeyMap;
+import org.jline.terminal.Attributes;
 import org.jline.terminal.Size;
 import org.jline.terminal.impl.LineDisciplineTerminal;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class NanoTest {
 
@@ -38,4 +48,67 @@ public class NanoTest {
                 Options.compile(Nano.usage()).parse(argv));
         nano.run();
     }
+
+    @Test
+    @Timeout(10)
+    public void nanoEditMappedFile(@TempDir Path dir) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 2 * 1024 * 1024; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        Path file = dir.resolve("large.txt");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LineDisciplineTerminal terminal = new LineDisciplineTerminal("nano", "xterm", output, StandardCharsets.UTF_8);
+        terminal.setSize(new Size(80, 25));
+        // keep the carriage return accepting the file name
+        Attributes attributes = terminal.getAttributes();
+        attributes.setInputFlag(Attributes.InputFlag.ICRNL, false);
+        terminal.setAttributes(attributes);
+        for (byte b : ("edited " + KeyMap.ctrl('O') + "\r" + KeyMap.ctrl('X')).getBytes(StandardCharsets.UTF_8)) {
+            terminal.processInputByte(b);
+        }
+        String[] argv = {"--ignorercfiles"};
+        Nano nano = new Nano(terminal, dir, Options.compile(Nano.usage()).parse(argv));
+        nano.open(file.getFileName().toString());
+        nano.run();
+        assertEquals(
+                "edited " + sb, new String(Files.readAllBytes(file), StandardCharsets.UTF_8), "Content of the saved file");
+    }
+
+    @Test
+    @Timeout(10)
+    public void nanoEditLargeFileInZip(@TempDir Path dir) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 2 * 1024 * 1024; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        Path zip = dir.resolve("test.zip");
+        try (FileSystem fs =
+                FileSystems.newFileSystem(URI.create("jar:" + zip.toUri()), Collections.singletonMap("create", "true"))) {
+            // Files of other file systems can not be mapped, and are read in memory
+            Path file = fs.getPath("/large.txt");
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            LineDisciplineTerminal terminal =
+                    new LineDisciplineTerminal("nano", "xterm", output, StandardCharsets.UTF_8);
+            terminal.setSize(new Size(80, 25));
+            Attributes attributes = terminal.getAttributes();
+            attributes.setInputFlag(Attributes.InputFlag.ICRNL, false);
+            terminal.setAttributes(attributes);
+            for (byte b : ("edited " + KeyMap.ctrl('O') + "\r" + KeyMap.ctrl('X')).getBytes(StandardCharsets.UTF_8)) {
+                terminal.processInputByte(b);
+            }
+            String[] argv = {"--ignorercfiles"};
+            Nano nano = new Nano(terminal, fs.getPath("/"), Options.compile(Nano.usage()).parse(argv));
+            nano.open("large.txt");
+            nano.run();
+            assertEquals(
+                    "edited " + sb,
+                    new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+                    "Content of the saved file");
+        }
+    }
 }
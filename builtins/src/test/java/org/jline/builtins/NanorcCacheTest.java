@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStyle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class NanorcCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private Path jnanorc;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        NanorcCache.clear();
+        write("theme.nanorctheme", "KEYWORD red\nCOMMENT blue\n$BLOCK_COMMENT COMMENT\n");
+        write("test.nanorc", "syntax \"test\" \"\\.test$\"\nKEYWORD: \"\\<int\\>\"\n");
+        write("other.nanorc", "syntax \"other\" \"\\.other$\"\ncolor blue \"\\<int\\>\"\n");
+        jnanorc = write("jnanorc", "theme theme.nanorctheme\ninclude *.nanorc\n");
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path path = dir.resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static AttributedStyle styleOf(SyntaxHighlighter highlighter) {
+        AttributedString highlighted = highlighter.highlight("int a;");
+        return highlighted.styleAt(0);
+    }
+
+    @Test
+    public void testGrammarIsCached() throws IOException {
+        Map<String, String> theme = NanorcCache.theme(dir.resolve("theme.nanorctheme"));
+        assertSame(theme, NanorcCache.theme(dir.resolve("theme.nanorctheme")));
+        NanorcCache.Grammar grammar = NanorcCache.grammar(dir.resolve("test.nanorc"), theme);
+        assertSame(grammar, NanorcCache.grammar(dir.resolve("test.nanorc"), theme));
+        // parsed again with another theme
+        assertNotSame(grammar, NanorcCache.grammar(dir.resolve("test.nanorc"), Collections.emptyMap()));
+    }
+
+    @Test
+    public void testModifiedFiles() throws IOException {
+        assertEquals(
+                AttributedStyle.DEFAULT.foreground(AttributedStyle.RED),
+                styleOf(SyntaxHighlighter.build(jnanorc, "test")));
+        FileTime time = Files.getLastModifiedTime(dir.resolve("theme.nanorctheme"));
+        write("theme.nanorctheme", "KEYWORD green\nCOMMENT blue\n$BLOCK_COMMENT COMMENT\n");
+        Files.setLastModifiedTime(dir.resolve("theme.nanorctheme"), FileTime.fromMillis(time.toMillis() + 2000));
+        assertEquals(
+                AttributedStyle.DEFAULT.foreground(AttributedStyle.GREEN),
+                styleOf(SyntaxHighlighter.build(jnanorc, "test")));
+
+        time = Files.getLastModifiedTime(dir.resolve("other.nanorc"));
+        write("other.nanorc", "syntax \"other\" \"\\.other$\"\ncolor yellow \"\\<int\\>\"\n");
+        Files.setLastModifiedTime(dir.resolve("other.nanorc"), FileTime.fromMillis(time.toMillis() + 2000));
+        assertEquals(
+                AttributedStyle.DEFAULT.foreground(AttributedStyle.YELLOW),
+                styleOf(SyntaxHighlighter.build(jnanorc, "other")));
+    }
+
+    @Test
+    public void testGlob() throws IOException {
+        assertEquals(
+                Arrays.asList(dir.resolve("other.nanorc"), dir.resolve("test.nanorc")),
+                sorted(NanorcCache.glob(dir, "*.nanorc")));
+        write("added.nanorc", "syntax \"added\" \"\\.added$\"\ncolor cyan \"\\<int\\>\"\n");
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(Files.getLastModifiedTime(dir).toMillis() + 2000));
+        assertEquals(
+                Arrays.asList(dir.resolve("added.nanorc"), dir.resolve("other.nanorc"), dir.resolve("test.nanorc")),
+                sorted(NanorcCache.glob(dir, "*.nanorc")));
+        assertEquals(
+                AttributedStyle.DEFAULT.foreground(AttributedStyle.CYAN),
+                styleOf(SyntaxHighlighter.build(jnanorc, "added")));
+    }
+
+    @Test
+    public void testIndependentParsers() throws IOException {
+        write("comment.nanorc", "syntax \"comment\" \"\\.comment$\"\n$BLOCK_COMMENT: \"/*, */\"\n");
+        Path jnanorc = write("jnanorc2", "theme theme.nanorctheme\ninclude comment.nanorc\n");
+        SyntaxHighlighter first = SyntaxHighlighter.build(jnanorc, "comment");
+        SyntaxHighlighter second = SyntaxHighlighter.build(jnanorc, "comment");
+        first.highlight("/* start");
+        assertEquals(AttributedStyle.DEFAULT.foreground(AttributedStyle.BLUE), styleOf(first));
+        assertEquals(SyntaxHighlighter.State.INITIAL, second.getState());
+        assertEquals(AttributedStyle.DEFAULT, styleOf(second));
+    }
+
+    private static List<Path> sorted(List<Path> paths) {
+        List<Path> sorted = new ArrayList<>(paths);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
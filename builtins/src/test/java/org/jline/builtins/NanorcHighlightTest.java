@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.jline.builtins.SyntaxHighlighter.HighlightRule;
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks the highlighting of the bundled grammars against the rules applied one after
+ * the other on the whole line, as the highlighter did before the rules were compiled.
+ */
+public class NanorcHighlightTest {
+
+    private static final String JAVA = "package org.example;\n"
+            + "\n"
+            + "/**\n"
+            + " * Documentation of the class.\n"
+            + " * @author someone\n"
+            + " */\n"
+            + "public class Example extends Object {   \n"
+            + "    /* a comment */ private static final int MAX = 0x1f;\n"
+            + "    /*/ still a comment\n"
+            + "       */ protected double value = 3.14;\n"
+            + "    /**/ boolean flag;\n"
+            + "    // TODO: remove this */\n"
+            + "    public String toString() {\n"
+            + "        if (flag) { return \"value: \" + value; } else { return null; }\n"
+            + "    }\n"
+            + "  /* one */ int a; /* two */ int b; /* three\n"
+            + "     still three */ char c = 'c'; /**\n"
+            + "   * @param name the name @return nothing FIXME */\n"
+            + "}\n";
+
+    private static final String PYTHON = "#!/usr/bin/env python3\n"
+            + "import os\n"
+            + "\n"
+            + "@decorator.name\n"
+            + "class Example(object):\n"
+            + "    \"\"\"Documentation\n"
+            + "    of the class.\n"
+            + "    \"\"\"\n"
+            + "    def __init__(self, value=0x1F):\n"
+            + "        self.value = value  # a comment\n"
+            + "        s = '''single line''' + r'raw\\'' + b\"bytes\"\n"
+            + "        t = u'''\n"
+            + "text \"\"\" ''' + f'{value}'\n"
+            + "        return None if value is not True else 3.5e10\n"
+            + "\n"
+            + "    def __repr__(cls):   \n"
+            + "        raise ValueError(\"\"\"one\"\"\" \"\"\"two\n"
+            + "three\"\"\")\n";
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE note SYSTEM \"note.dtd\">\n"
+            + "<!-- a comment\n"
+            + "     on two lines -->\n"
+            + "<note date=\"2025\" lang='en'>\n"
+            + "  <to>Someone &amp; others</to> <!-- TODO --> <br/>\n"
+            + "  <body attr=\"a > b\"\n"
+            + "        other=\"c\">text</body>   \n"
+            + "</note>\n";
+
+    private static final String SHELL = "#!/bin/sh\n"
+            + "# a comment\n"
+            + "for f in *.txt; do\n"
+            + "    if [ -f \"$f\" ]; then\n"
+            + "        echo \"${f%.txt}\" 'quoted' $(basename $f) `date`\n"
+            + "    fi\n"
+            + "done\n"
+            + "cat <<EOF\n"
+            + "here document $HOME\n"
+            + "EOF\n"
+            + "export PATH=$PATH:/usr/local/bin   \n";
+
+    private static final String TEST = "BEGIN a region END int /* comment */ BEGIN another\n"
+            + "region /* still */ END 0x12 \"string\" 'c'\n"
+            + "/* comment BEGIN\n"
+            + "END */ BEGINEND /**/ /*/ */\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testJava() throws Exception {
+        check("java.nanorc", "Java", JAVA);
+    }
+
+    @Test
+    public void testPython() throws Exception {
+        check("python.nanorc", "Python", PYTHON);
+    }
+
+    @Test
+    public void testXml() throws Exception {
+        check("xml.nanorc", "XML", XML);
+    }
+
+    @Test
+    public void testShell() throws Exception {
+        check("shell.nanorc", "Shell", SHELL);
+    }
+
+    @Test
+    public void testTestGrammar() throws Exception {
+        check("test.nanorc", "Test", TEST);
+    }
+
+    @Test
+    public void testRegionNotClosedByItsStart() throws Exception {
+        SyntaxHighlighter highlighter = highlighter("python.nanorc", "Python");
+        AttributedStyle green = AttributedStyle.DEFAULT.foreground(AttributedStyle.GREEN);
+        highlighter.highlight("x = \"\"\"Documentation");
+        assertEquals(green, highlighter.highlight("of the function").styleAt(0));
+        assertEquals(green, highlighter.highlight("\"\"\"").styleAt(2));
+        assertEquals(AttributedStyle.DEFAULT, highlighter.highlight("y").styleAt(0));
+
+        highlighter = highlighter("java.nanorc", "Java");
+        AttributedStyle blue = AttributedStyle.DEFAULT.foreground(AttributedStyle.BLUE);
+        highlighter.highlight("/*/ comment");
+        assertEquals(blue, highlighter.highlight("comment */ x").styleAt(0));
+        assertEquals(AttributedStyle.DEFAULT, highlighter.highlight("x").styleAt(0));
+    }
+
+    private void check(String grammar, String syntaxName, String text) throws Exception {
+        SyntaxHighlighter highlighter = highlighter(grammar, syntaxName);
+        SyntaxHighlighter.NanorcParser parser =
+                new SyntaxHighlighter.NanorcParser(dir.resolve(grammar), syntaxName, null, Collections.emptyMap());
+        parser.parse();
+        assertNotNull(parser.getHighlightRules().get(SyntaxHighlighter.TOKEN_NANORC));
+        Reference reference = new Reference(parser.getHighlightRules().get(SyntaxHighlighter.TOKEN_NANORC));
+        for (String line : text.split("\n")) {
+            assertEquals(reference.highlight(line).toAnsi(), highlighter.highlight(line).toAnsi(), line);
+        }
+    }
+
+    private SyntaxHighlighter highlighter(String grammar, String syntaxName) throws Exception {
+        Path resources = Paths.get(getClass().getClassLoader().getResource("nano").toURI());
+        Files.copy(resources.resolve(grammar), dir.resolve(grammar), StandardCopyOption.REPLACE_EXISTING);
+        Path nanorc = dir.resolve("jnanorc");
+        Files.write(nanorc, ("include \"./" + grammar + "\"\n").getBytes(StandardCharsets.UTF_8));
+        return SyntaxHighlighter.build(nanorc, syntaxName);
+    }
+
+    /**
+     * Applies the rules one after the other on the whole line, the end of a multi-line
+     * region being searched after its start, as nano does.
+     */
+    private static class Reference {
+        private final List<HighlightRule> rules;
+        private int ruleStartId;
+        private boolean startEndHighlight;
+
+        Reference(List<HighlightRule> rules) {
+            this.rules = rules;
+        }
+
+        AttributedString highlight(String line) {
+            return highlight(new AttributedStringBuilder().append(line)).toAttributedString();
+        }
+
+        private AttributedStringBuilder highlight(AttributedStringBuilder asb) {
+            int first = startEndHighlight ? ruleStartId : 0;
+            int last = startEndHighlight ? ruleStartId + 1 : rules.size();
+            for (int i = first; i < last; i++) {
+                HighlightRule rule = rules.get(i);
+                if (rule.getType() == HighlightRule.RuleType.PATTERN) {
+                    asb.styleMatches(rule.getPattern(), rule.getStyle());
+                } else if (rule.getType() == HighlightRule.RuleType.START_END) {
+                    String text = asb.toString();
+                    Matcher start = rule.getStart().matcher(text);
+                    Matcher end = rule.getEnd().matcher(text);
+                    AttributedStringBuilder a = new AttributedStringBuilder();
+                    if (startEndHighlight && ruleStartId == i) {
+                        if (end.find()) {
+                            startEndHighlight = false;
+                            ruleStartId = 0;
+                            append(a, asb.subSequence(0, end.end()), rule.getStyle());
+                            a.append(highlight(
+                                    new AttributedStringBuilder().append(asb.subSequence(end.end(), text.length()))));
+                        } else {
+                            append(a, asb.subSequence(0, text.length()), rule.getStyle());
+                        }
+                        return a;
+                    }
+                    int copied = 0;
+                    int pos = 0;
+                    while (pos <= text.length() && start.find(pos)) {
+                        a.append(asb.subSequence(copied, start.start()));
+                        if (end.find(start.end())) {
+                            append(a, asb.subSequence(start.start(), end.end()), rule.getStyle());
+                            copied = end.end();
+                            pos = Math.max(end.end(), start.start() + 1);
+                        } else {
+                            ruleStartId = i;
+                            startEndHighlight = true;
+                            append(a, asb.subSequence(start.start(), text.length()), rule.getStyle());
+                            copied = text.length();
+                            break;
+                        }
+                    }
+                    a.append(asb.subSequence(copied, text.length()));
+                    asb = a;
+                }
+            }
+            return asb;
+        }
+
+        private static void append(AttributedStringBuilder asb, AttributedString str, AttributedStyle style) {
+            asb.style(style).append(str).style(AttributedStyle.DEFAULT);
+        }
+    }
+}
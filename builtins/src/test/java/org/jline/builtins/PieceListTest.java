@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PieceListTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSameAsArrayList() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        PieceList<Integer> list = new PieceList<>();
+        for (int i = 0; i < 50000; i++) {
+            int op = random.nextInt(10);
+            if (op < 5 || expected.isEmpty()) {
+                int index = random.nextInt(4) == 0 ? expected.size() : random.nextInt(expected.size() + 1);
+                expected.add(index, i);
+                list.add(index, i);
+            } else if (op < 8) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), list.remove(index));
+            } else {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.set(index, i), list.set(index, i));
+            }
+            assertEquals(expected.size(), list.size());
+            if (i % 1000 == 0) {
+                assertEquals(expected, list);
+            }
+        }
+        assertEquals(expected, list);
+        list.clear();
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void testMappedText() throws Exception {
+        Random random = new Random(42);
+        String[] terminators = {"\n", "\n", "\n", "\r", "\r\n"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            for (int j = random.nextInt(20); j > 0; j--) {
+                sb.append(random.nextInt(10) == 0 ? 'é' : (char) ('a' + random.nextInt(26)));
+            }
+            sb.append(i < 4000 ? "\n" : terminators[random.nextInt(terminators.length)]);
+        }
+        sb.append("last");
+        String content = sb.toString();
+        Path file = dir.resolve("test.txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+
+        List<String> expected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(line);
+            }
+        }
+        MappedText text = MappedText.map(file, StandardCharsets.UTF_8);
+        assertEquals(expected.size(), text.size());
+        assertEquals(expected.get(3000), text.get(3000));
+        // edit a piece, the others being copied when written
+        text.set(10, "modified");
+        expected.set(10, "modified");
+        text.add(2000, "inserted");
+        expected.add(2000, "inserted");
+        assertEquals(expected, text);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        text.write(writer, out, StandardCharsets.UTF_8, "\n");
+        assertEquals(String.join("\n", expected) + "\n", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testMappedTextTerminators() throws Exception {
+        Path file = dir.resolve("test.txt");
+        Files.write(file, "a\r\n\r\nb\r".getBytes(StandardCharsets.UTF_8));
+        MappedText text = MappedText.map(file, StandardCharsets.UTF_8);
+        assertEquals(List.of("a", "", "b"), text);
+        Files.write(file, new byte[0]);
+        assertEquals(0, MappedText.map(file, StandardCharsets.UTF_8).size());
+    }
+}
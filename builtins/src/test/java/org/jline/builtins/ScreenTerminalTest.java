@@ -8,6 +8,9 @@
  */
 package org.jline.builtins;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -95,4 +98,147 @@ public class ScreenTerminalTest {
             assertNotEquals('\0', content.charAt(i), "Found null character at position " + i);
         }
     }
+
+    @Test
+    public void testDumpDamage() {
+        ScreenTerminal terminal = new ScreenTerminal(10, 5);
+        long[] screen = new long[20 * 10];
+        BitSet rows = new BitSet();
+        // everything is damaged initially
+        terminal.dumpDamage(screen, 2, 3, 10, 20, null, rows);
+        assertEquals(5, rows.cardinality());
+        assertEquals(2, rows.nextSetBit(0));
+
+        rows.clear();
+        terminal.dumpDamage(screen, 2, 3, 10, 20, null, rows);
+        assertTrue(rows.isEmpty());
+
+        // writing a character damages the cursor row only
+        terminal.write("\033[3;1Hx");
+        int[] cursor = new int[2];
+        terminal.dumpDamage(screen, 2, 3, 10, 20, cursor, rows);
+        assertEquals(1, rows.cardinality());
+        assertTrue(rows.get(4));
+        assertEquals('x', (int) (screen[4 * 20 + 3] & 0xffffffffL));
+        assertEquals(4, cursor[0]);
+        assertEquals(4, cursor[1]);
+
+        // moving the cursor does not damage anything
+        rows.clear();
+        terminal.write("\033[1;1H");
+        terminal.dumpDamage(screen, 2, 3, 10, 20, cursor, rows);
+        assertTrue(rows.isEmpty());
+        assertEquals(2, cursor[1]);
+
+        // scrolling damages the whole screen
+        terminal.write("\033[5;1H\n");
+        terminal.dumpDamage(screen, 2, 3, 10, 20, null, rows);
+        assertEquals(5, rows.cardinality());
+        assertEquals('x', (int) (screen[3 * 20 + 3] & 0xffffffffL));
+    }
+
+    @Test
+    public void testHistorySize() {
+        ScreenTerminal terminal = new ScreenTerminal(10, 3);
+        terminal.setHistorySize(2);
+        assertEquals(2, terminal.getHistorySize());
+        for (int i = 0; i < 10; i++) {
+            terminal.write("line" + i + "\r\n");
+        }
+        // only the two most recent lines scrolled out of the screen can be pulled back
+        terminal.setSize(10, 8);
+        String[] lines = terminal.toString().split("\n");
+        assertEquals("line6", lines[0].trim());
+        assertEquals("line7", lines[1].trim());
+        assertEquals("line8", lines[2].trim());
+        assertEquals("line9", lines[3].trim());
+        assertEquals("", lines[4].trim());
+    }
+
+    @Test
+    public void testCsiParams() {
+        assertCursor(4, 2, "\033[3;5H");
+        // empty, omitted and trailing parameters take their default values
+        assertCursor(0, 0, "\033[3;5H\033[H");
+        assertCursor(4, 0, "\033[;5H");
+        assertCursor(0, 2, "\033[3;H");
+        assertCursor(0, 2, "\033[3;;H");
+        assertCursor(0, 0, "\033[3;5H\033[;;H");
+        assertCursor(0, 0, "\033[3;5H\033[0;0H");
+        assertCursor(3, 4, "\033[5;5H\033[;D");
+        // oversized, prefixed and invalid values take their default values
+        assertCursor(4, 0, "\033[99999999999;5H");
+        assertCursor(4, 0, "\033[2147483648;5H");
+        assertCursor(4, 4, "\033[2147483647;5H");
+        assertCursor(4, 4, "\033[0000000000000009;5H");
+        assertCursor(0, 0, "\033[3;5H\033[?3;5H");
+        assertCursor(4, 0, "\033[1:2;5H");
+        // the attributes are reset by an omitted parameter
+        assertSameScreen("\033[4mX", "\033[1;;4mX");
+        assertSameScreen("\033[1;4mX", "\033[1;4;mX");
+        assertSameScreen("X", "\033[1m\033[mX");
+        assertSameScreen("\033[38;5;196mX", "\033[38;5;196;mX");
+    }
+
+    @Test
+    public void testSequencesSplitAcrossWrites() {
+        String[] sequences = {
+            "ab\033[3;5Hcd",
+            "\033[1;4;38;5;196;48;5;21mcolored\033[0m text",
+            "\033]0;title\007after title",
+            "\033P1$qm\033\\after dcs",
+            "\033(0lqk\033(B line drawing",
+            "\033[?25l\033[?7lno wrap beyond the end\033[?7h",
+            "\u009b2;3Hc1 csi",
+            "\033[2J\033[10;1Hscrolled\r\n\033[4Pdeleted\033[2@",
+            "\uD83D\uDE00 surrogates \u4e2d\u6587",
+            "\033[99999999999;;3Hoversized\033[;;;m"
+        };
+        for (String sequence : sequences) {
+            String expected = screen(sequence);
+            // the previous implementation processed the output one code point at a time
+            String[] codePoints = sequence.codePoints()
+                    .mapToObj(c -> new String(Character.toChars(c)))
+                    .toArray(String[]::new);
+            assertEquals(expected, screen(codePoints), sequence);
+            for (int i = 1; i < sequence.length(); i++) {
+                if (Character.isLowSurrogate(sequence.charAt(i))) {
+                    // the output is written by code points
+                    continue;
+                }
+                ScreenTerminal terminal = new ScreenTerminal(10, 5);
+                char[] chars = ("--" + sequence + "--").toCharArray();
+                terminal.write(chars, 2, i);
+                terminal.write(chars, 2 + i, sequence.length() - i);
+                assertEquals(expected, screen(terminal), sequence + " split at " + i);
+            }
+        }
+    }
+
+    private static void assertCursor(int x, int y, String output) {
+        ScreenTerminal terminal = new ScreenTerminal(10, 5);
+        terminal.write(output);
+        int[] cursor = new int[2];
+        terminal.dump(new long[10 * 5], 0, 0, 5, 10, cursor);
+        assertEquals(x + "," + y, cursor[0] + "," + cursor[1], output);
+    }
+
+    private static void assertSameScreen(String expected, String output) {
+        assertEquals(screen(expected), screen(output), output);
+    }
+
+    private static String screen(String... outputs) {
+        ScreenTerminal terminal = new ScreenTerminal(10, 5);
+        for (String output : outputs) {
+            terminal.write(output);
+        }
+        return screen(terminal);
+    }
+
+    private static String screen(ScreenTerminal terminal) {
+        long[] screen = new long[10 * 5];
+        int[] cursor = new int[2];
+        terminal.dump(screen, 0, 0, 5, 10, cursor);
+        return Arrays.toString(screen) + " cursor " + cursor[0] + "," + cursor[1] + " " + terminal.read();
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ScrollbackBufferTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(0);
+        ScrollbackBuffer buffer = new ScrollbackBuffer(100);
+        long[][] lines = new long[50][];
+        for (int i = 0; i < lines.length; i++) {
+            long[] line = new long[1 + random.nextInt(80)];
+            for (int j = 0; j < line.length; j++) {
+                long attr = random.nextInt(4) == 0 ? (long) random.nextInt() << 32 : 0x10f00000L << 32;
+                int c = random.nextInt(3) == 0 ? ' ' : random.nextInt(10) == 0 ? 0x1F600 : 'a' + random.nextInt(26);
+                line[j] = attr | c;
+            }
+            lines[i] = line;
+            buffer.add(line);
+        }
+        assertEquals(50, buffer.size());
+        for (int i = lines.length - 1; i >= 0; i--) {
+            assertArrayEquals(lines[i], buffer.removeLast(0, 0));
+        }
+        assertNull(buffer.removeLast(0, 0));
+    }
+
+    @Test
+    public void testPadding() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(10);
+        long blank = 0x20000080L << 32 | ' ';
+        buffer.add(new long[] {'a', 'b', blank, blank});
+        long[] line = buffer.removeLast(6, ' ');
+        assertArrayEquals(new long[] {'a', 'b', blank, blank, ' ', ' '}, line);
+    }
+
+    @Test
+    public void testCapacity() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(new long[] {'0' + i});
+        }
+        assertEquals(3, buffer.size());
+        buffer.setCapacity(2);
+        assertEquals(2, buffer.size());
+        assertArrayEquals(new long[] {'4'}, buffer.removeLast(0, 0));
+        assertArrayEquals(new long[] {'3'}, buffer.removeLast(0, 0));
+        assertNull(buffer.removeLast(0, 0));
+
+        buffer.setCapacity(0);
+        buffer.add(new long[] {'x'});
+        assertEquals(0, buffer.size());
+    }
+}
@@ -311,6 +311,16 @@ public class BindingReader {
         }
     }
 
+    /**
+     * Checks whether characters can be read without blocking, either because they
+     * have been pushed back or because the underlying reader has them buffered.
+     *
+     * @return <code>true</code> if input is pending
+     */
+    public boolean hasPendingInput() {
+        return !pushBackChar.isEmpty() || reader.available() > 0;
+    }
+
     /**
      * Runs a macro by pushing its characters into the input buffer.
      * <p>
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader;
+
+import java.util.List;
+
+/**
+ * A completer which may take a long time to compute its candidates.
+ * <p>
+ * When the completer of a {@link LineReader} is an asynchronous completer, candidates
+ * are computed on a background thread while the reader keeps watching the input:
+ * <ul>
+ *   <li>candidates are displayed below the line as soon as they are provided,</li>
+ *   <li>the request is cancelled if the user types a key before it is completed,
+ *   the key being then processed as usual,</li>
+ *   <li>the candidates provided so far are used if the request does not complete before
+ *   the delay given by the {@link LineReader#COMPLETION_TIMEOUT} variable.</li>
+ * </ul>
+ * Implementations should check {@link CandidateSink#isCancelled()} regularly and return
+ * as soon as the request is cancelled, the computing thread being also interrupted.
+ * <p>
+ * When used synchronously, for example when aggregated with other completers, the
+ * candidates are computed on the calling thread.
+ *
+ * @see LineReader#COMPLETION_TIMEOUT
+ */
+public interface AsyncCompleter extends Completer {
+
+    /**
+     * Computes the completion candidates for the given line, passing them to the sink
+     * as they are found.
+     * <p>
+     * This method is usually called on a background thread, and returns once
+     * all candidates have been provided or the request has been cancelled.
+     *
+     * @param reader        The line reader instance that is requesting completion
+     * @param line          The parsed command line containing the current input state
+     * @param candidates    The sink receiving the candidates
+     */
+    void complete(LineReader reader, ParsedLine line, CandidateSink candidates);
+
+    @Override
+    default void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+        complete(reader, line, new CandidateSink() {
+            @Override
+            public void accept(Candidate candidate) {
+                candidates.add(candidate);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Receives the candidates computed by an {@link AsyncCompleter}.
+     * Implementations are thread safe.
+     */
+    interface CandidateSink {
+
+        /**
+         * Adds a completion candidate.
+         *
+         * @param candidate the candidate
+         */
+        void accept(Candidate candidate);
+
+        /**
+         * Adds completion candidates.
+         *
+         * @param candidates the candidates
+         */
+        default void acceptAll(Iterable<Candidate> candidates) {
+            for (Candidate candidate : candidates) {
+                accept(candidate);
+            }
+        }
+
+        /**
+         * Checks whether the request has been cancelled, in which case
+         * further candidates are ignored.
+         *
+         * @return <code>true</code> if the request has been cancelled
+         */
+        boolean isCancelled();
+    }
+}
@@ -159,6 +159,22 @@ public interface History extends Iterable<History.Entry> {
         return true;
     }
 
+    /**
+     * Returns the indexes of the entries which may contain the given term, ignoring case.
+     * <p>
+     * Histories maintaining a search index can use it to let searches skip entries
+     * which cannot match: any entry containing the term, whatever its case, is guaranteed
+     * to be part of the returned indexes, while entries not returned can be ignored.
+     * Callers must still check each returned entry.
+     *
+     * @param term the searched term
+     * @return the indexes of the candidate entries in ascending order, or <code>null</code>
+     *         if no index is available for this term and all entries have to be searched
+     */
+    default int[] searchCandidates(String term) {
+        return null;
+    }
+
     //
     // Entries
     //
@@ -302,6 +302,18 @@ public interface LineReader {
      * they are displayed in a list below the field to be completed
      */
     String MENU_LIST_MAX = "menu-list-max";
+    /**
+     * tab completion: delay in milliseconds after which an {@link AsyncCompleter} request is
+     * cancelled and the candidates found so far are used, 0 to wait until it completes
+     */
+    String COMPLETION_TIMEOUT = "completion-timeout";
+
+    /**
+     * Maximum delay in milliseconds between two redisplays while input is pending: the line is
+     * only redisplayed once all pending input has been processed or this delay has elapsed,
+     * a negative value redisplays the line after each key binding
+     */
+    String REDISPLAY_MAX_DELAY = "redisplay-max-delay";
 
     String DISABLE_HISTORY = "disable-history";
     String DISABLE_COMPLETION = "disable-completion";
@@ -433,6 +445,12 @@ public interface LineReader {
         COMPLETE_MATCHER_CAMELCASE,
         /** use type completion matcher */
         COMPLETE_MATCHER_TYPO(true),
+        /**
+         * reuse the candidates of the previous completion, narrowed down, when the word being
+         * completed has only been extended since; the completer must then return candidates
+         * which do not depend on the characters added to the word
+         */
+        COMPLETE_NARROWING,
         /** disable special handling of magic history expansion commands like "!" and "!!" and "!n" and "!-n" and "!string" and "^string1^string2", as well as [interpret escape characters](https://github.com/jline/jline3/issues/1238) **/
         DISABLE_EVENT_EXPANSION,
         HISTORY_VERIFY,
@@ -443,6 +461,15 @@ public interface LineReader {
         /** automatically save history when the line reader reads a new line (enabled by default) */
         HISTORY_INCREMENTAL(true),
         HISTORY_TIMESTAMPED(true),
+        /** trim the history file on a background thread instead of during {@link History#save()} */
+        HISTORY_BACKGROUND_TRIM,
+        /** maintain a trigram index of the history to speed up history searches on large histories */
+        HISTORY_SEARCH_INDEX,
+        /**
+         * share the history file between concurrent processes: the file is locked while being
+         * updated, and entries appended by other processes are imported before each line is read
+         */
+        HISTORY_SHARED,
         /** when displaying candidates, group them by {@link Candidate#group()} */
         AUTO_GROUP(true),
         AUTO_MENU(true),
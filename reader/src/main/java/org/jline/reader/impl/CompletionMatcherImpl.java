@@ -36,6 +36,14 @@ import org.jline.utils.AttributedString;
  * matches are found. This allows for a graceful fallback from exact matches to more
  * approximate matches.
  * <p>
+ * Matchers created with {@link #simpleMatcher(Predicate)} and {@link #typoMatcher(String, int, boolean, String)}
+ * test candidate values one at a time: consecutive inexpensive ones are evaluated together in a
+ * single pass over the candidates, each candidate stopping at the first strategy it satisfies.
+ * Candidate values are normalized (ANSI sequences removed, lower-cased if needed) once per
+ * candidate list, and reused as long as the same list is matched again. When the same list is
+ * matched again, typos are looked up in a {@link TypoIndex} built for that list instead of
+ * computing the distance to every candidate.
+ * <p>
  * The behavior of the matcher can be controlled through LineReader options such as
  * {@link LineReader.Option#COMPLETE_MATCHER_TYPO} and
  * {@link LineReader.Option#COMPLETE_MATCHER_CAMELCASE}.
@@ -49,6 +57,14 @@ public class CompletionMatcherImpl implements CompletionMatcher {
     protected List<Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>>> matchers;
     private Map<String, List<Candidate>> matching;
     private boolean caseInsensitive;
+    // Normalized candidates, kept across calls for the same candidates
+    private Candidate[] sortedFrom;
+    private Map<String, List<Candidate>> sortedCandidates;
+    private String[] keys;
+    private String[] lowerKeys;
+    private boolean sortedReused;
+    private TypoIndex typoIndex;
+    private TypoIndex lowerTypoIndex;
 
     public CompletionMatcherImpl() {}
 
@@ -75,8 +91,25 @@ public class CompletionMatcherImpl implements CompletionMatcher {
     public List<Candidate> matches(List<Candidate> candidates) {
         matching = Collections.emptyMap();
         Map<String, List<Candidate>> sortedCandidates = sort(candidates);
-        for (Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>> matcher : matchers) {
-            matching = matcher.apply(sortedCandidates);
+        int i = 0;
+        while (i < matchers.size()) {
+            Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>> matcher = matchers.get(i);
+            if (matcher instanceof KeyMatcher) {
+                // Evaluate the following inexpensive key matchers in a single pass
+                int end = i + 1;
+                if (!((KeyMatcher) matcher).costly) {
+                    while (end < matchers.size()
+                            && matchers.get(end) instanceof KeyMatcher
+                            && !((KeyMatcher) matchers.get(end)).costly) {
+                        end++;
+                    }
+                }
+                matching = matchKeys(i, end);
+                i = end;
+            } else {
+                matching = matcher.apply(sortedCandidates);
+                i++;
+            }
             if (!matching.isEmpty()) {
                 break;
             }
@@ -89,6 +122,71 @@ public class CompletionMatcherImpl implements CompletionMatcher {
                 : new ArrayList<>();
     }
 
+    /**
+     * Evaluates the key matchers in the range {@code [from, to)} in a single pass over the
+     * candidates and returns the candidates accepted by the first matcher of the range
+     * accepting any.
+     */
+    private Map<String, List<Candidate>> matchKeys(int from, int to) {
+        Map<String, List<Candidate>> result = new HashMap<>();
+        if (sortedReused && to == from + 1 && matchers.get(from) instanceof TypoMatcher) {
+            TypoMatcher matcher = (TypoMatcher) matchers.get(from);
+            BitSet indexes = typoIndex(matcher.lowerCase).matches(matcher.word, matcher.errors);
+            int k = 0;
+            for (Map.Entry<String, List<Candidate>> entry : sortedCandidates.entrySet()) {
+                if (indexes.get(k++)) {
+                    result.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return result.isEmpty() ? result : matcher.complete(result);
+        }
+        int best = to;
+        int k = 0;
+        for (Map.Entry<String, List<Candidate>> entry : sortedCandidates.entrySet()) {
+            String key = keys[k];
+            // Matchers after the best one found so far can not contribute
+            for (int m = from; m < to && m <= best; m++) {
+                KeyMatcher matcher = (KeyMatcher) matchers.get(m);
+                if (matcher.predicate.test(matcher.lowerCase ? lowerKey(k) : key)) {
+                    if (m < best) {
+                        best = m;
+                        result.clear();
+                    }
+                    result.put(key, entry.getValue());
+                    break;
+                }
+            }
+            k++;
+        }
+        return best < to ? ((KeyMatcher) matchers.get(best)).complete(result) : result;
+    }
+
+    private TypoIndex typoIndex(boolean lowerCase) {
+        if (lowerCase) {
+            if (lowerTypoIndex == null) {
+                for (int k = 0; k < keys.length; k++) {
+                    lowerKey(k);
+                }
+                lowerTypoIndex = new TypoIndex(lowerKeys);
+            }
+            return lowerTypoIndex;
+        } else {
+            if (typoIndex == null) {
+                typoIndex = new TypoIndex(keys);
+            }
+            return typoIndex;
+        }
+    }
+
+    private String lowerKey(int k) {
+        String lower = lowerKeys[k];
+        if (lower == null) {
+            lower = keys[k].toLowerCase();
+            lowerKeys[k] = lower;
+        }
+        return lower;
+    }
+
     @Override
     public Candidate exactMatch() {
         if (matching == null) {
@@ -131,8 +229,7 @@ public class CompletionMatcherImpl implements CompletionMatcher {
         String wp = wdi.substring(0, line.wordCursor());
         if (prefix) {
             matchers = new ArrayList<>(Arrays.asList(
-                    simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).startsWith(wp)),
-                    simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).contains(wp))));
+                    normalizedMatcher(s -> s.startsWith(wp)), normalizedMatcher(s -> s.contains(wp))));
             if (LineReader.Option.COMPLETE_MATCHER_TYPO.isSet(options)) {
                 matchers.add(typoMatcher(wp, errors, caseInsensitive, originalGroupName));
             }
@@ -146,14 +243,11 @@ public class CompletionMatcherImpl implements CompletionMatcher {
                 Pattern p1 = Pattern.compile(Pattern.quote(wp) + ".*" + Pattern.quote(ws) + ".*");
                 Pattern p2 = Pattern.compile(".*" + Pattern.quote(wp) + ".*" + Pattern.quote(ws) + ".*");
                 matchers = new ArrayList<>(Arrays.asList(
-                        simpleMatcher(s -> p1.matcher(caseInsensitive ? s.toLowerCase() : s)
-                                .matches()),
-                        simpleMatcher(s -> p2.matcher(caseInsensitive ? s.toLowerCase() : s)
-                                .matches())));
+                        normalizedMatcher(s -> p1.matcher(s).matches()),
+                        normalizedMatcher(s -> p2.matcher(s).matches())));
             } else {
                 matchers = new ArrayList<>(Arrays.asList(
-                        simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).startsWith(wdi)),
-                        simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).contains(wdi))));
+                        normalizedMatcher(s -> s.startsWith(wdi)), normalizedMatcher(s -> s.contains(wdi))));
             }
             if (LineReader.Option.COMPLETE_MATCHER_CAMELCASE.isSet(options)) {
                 matchers.add(simpleMatcher(s -> camelMatch(wd, 0, s, 0)));
@@ -165,27 +259,38 @@ public class CompletionMatcherImpl implements CompletionMatcher {
         }
     }
 
+    /**
+     * Creates a matcher selecting the candidates whose value satisfies the given predicate.
+     *
+     * @param predicate the predicate to test candidate values against
+     * @return the matcher
+     */
     protected Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>> simpleMatcher(
             Predicate<String> predicate) {
-        return m -> m.entrySet().stream()
-                .filter(e -> predicate.test(e.getKey()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return new KeyMatcher(predicate, false, false);
     }
 
+    /**
+     * Creates a matcher testing the candidate values lower-cased if matching is case insensitive.
+     */
+    private Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>> normalizedMatcher(
+            Predicate<String> predicate) {
+        return new KeyMatcher(predicate, caseInsensitive, false);
+    }
+
+    /**
+     * Creates a matcher selecting the candidates whose value is within the given number of
+     * errors of the word being completed.
+     *
+     * @param word the word being completed
+     * @param errors the number of accepted errors
+     * @param caseInsensitive whether matching is case insensitive
+     * @param originalGroupName the group of the candidate added for the original word
+     * @return the matcher
+     */
     protected Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>> typoMatcher(
             String word, int errors, boolean caseInsensitive, String originalGroupName) {
-        return m -> {
-            Map<String, List<Candidate>> map = m.entrySet().stream()
-                    .filter(e -> ReaderUtils.distance(
-                                    word, caseInsensitive ? e.getKey().toLowerCase() : e.getKey())
-                            < errors)
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            if (map.size() > 1) {
-                map.computeIfAbsent(word, w -> new ArrayList<>())
-                        .add(new Candidate(word, word, originalGroupName, null, null, null, false));
-            }
-            return map;
-        };
+        return new TypoMatcher(word, errors, caseInsensitive, originalGroupName);
     }
 
     protected boolean camelMatch(String word, int i, String candidate, int j) {
@@ -213,15 +318,44 @@ public class CompletionMatcherImpl implements CompletionMatcher {
     }
 
     private Map<String, List<Candidate>> sort(List<Candidate> candidates) {
+        if (isSorted(candidates)) {
+            sortedReused = true;
+            return sortedCandidates;
+        }
         // Build a list of sorted candidates
-        Map<String, List<Candidate>> sortedCandidates = new HashMap<>();
+        Map<String, List<Candidate>> sorted = new LinkedHashMap<>();
         for (Candidate candidate : candidates) {
-            sortedCandidates
-                    .computeIfAbsent(
-                            AttributedString.fromAnsi(candidate.value()).toString(), s -> new ArrayList<>())
-                    .add(candidate);
+            String value = candidate.value();
+            String key = value.indexOf('\u001b') >= 0
+                    ? AttributedString.fromAnsi(value).toString()
+                    : value;
+            sorted.computeIfAbsent(key, s -> new ArrayList<>()).add(candidate);
         }
-        return sortedCandidates;
+        sortedFrom = candidates.toArray(new Candidate[0]);
+        sortedCandidates = sorted;
+        keys = sorted.keySet().toArray(new String[0]);
+        lowerKeys = new String[keys.length];
+        sortedReused = false;
+        typoIndex = null;
+        lowerTypoIndex = null;
+        return sorted;
+    }
+
+    /**
+     * Checks whether the given candidates are the ones normalized by the last call to
+     * {@link #sort(List)}, as lists may be modified or reused between calls.
+     */
+    private boolean isSorted(List<Candidate> candidates) {
+        if (sortedFrom == null || sortedFrom.length != candidates.size()) {
+            return false;
+        }
+        int i = 0;
+        for (Candidate candidate : candidates) {
+            if (candidate != sortedFrom[i++]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private String getCommonStart(String str1, String str2, boolean caseInsensitive) {
@@ -246,4 +380,63 @@ public class CompletionMatcherImpl implements CompletionMatcher {
         }
         return new String(s1, 0, len);
     }
+
+    /**
+     * A matcher selecting candidates by testing their value.
+     * <p>
+     * The values tested are either the candidate values as is, or lower-cased ones. Costly matchers are not evaluated
+     * together with other matchers, so that they only run when no previous matcher matched.
+     */
+    private static class KeyMatcher implements Function<Map<String, List<Candidate>>, Map<String, List<Candidate>>> {
+        final Predicate<String> predicate;
+        final boolean lowerCase;
+        final boolean costly;
+
+        KeyMatcher(Predicate<String> predicate, boolean lowerCase, boolean costly) {
+            this.predicate = predicate;
+            this.lowerCase = lowerCase;
+            this.costly = costly;
+        }
+
+        @Override
+        public Map<String, List<Candidate>> apply(Map<String, List<Candidate>> m) {
+            Map<String, List<Candidate>> map = new HashMap<>();
+            for (Map.Entry<String, List<Candidate>> e : m.entrySet()) {
+                String key = e.getKey();
+                if (predicate.test(lowerCase ? key.toLowerCase() : key)) {
+                    map.put(key, e.getValue());
+                }
+            }
+            return complete(map);
+        }
+
+        Map<String, List<Candidate>> complete(Map<String, List<Candidate>> map) {
+            return map;
+        }
+    }
+
+    /**
+     * Matches the candidates whose value is within a number of errors of a word.
+     */
+    private static class TypoMatcher extends KeyMatcher {
+        final String word;
+        final int errors;
+        final String originalGroupName;
+
+        TypoMatcher(String word, int errors, boolean lowerCase, String originalGroupName) {
+            super(s -> ReaderUtils.distance(word, s) < errors, lowerCase, true);
+            this.word = word;
+            this.errors = errors;
+            this.originalGroupName = originalGroupName;
+        }
+
+        @Override
+        Map<String, List<Candidate>> complete(Map<String, List<Candidate>> map) {
+            if (map.size() > 1) {
+                map.computeIfAbsent(word, w -> new ArrayList<>())
+                        .add(new Candidate(word, word, originalGroupName, null, null, null, false));
+            }
+            return map;
+        }
+    }
 }
@@ -49,6 +49,7 @@ import org.jline.utils.Curses;
 import org.jline.utils.Display;
 import org.jline.utils.InfoCmp.Capability;
 import org.jline.utils.Log;
+import org.jline.utils.NonBlockingReader;
 import org.jline.utils.Status;
 import org.jline.utils.StyleResolver;
 import org.jline.utils.WCWidth;
@@ -105,6 +106,8 @@ public class LineReaderImpl implements LineReader, Flushable {
     public static final int DEFAULT_ERRORS = 2;
     public static final long DEFAULT_BLINK_MATCHING_PAREN = 500L;
     public static final long DEFAULT_AMBIGUOUS_BINDING = 1000L;
+    public static final long DEFAULT_COMPLETION_TIMEOUT = 1000L;
+    public static final long DEFAULT_REDISPLAY_MAX_DELAY = 50L;
     public static final String DEFAULT_SECONDARY_PROMPT_PATTERN = "%M> ";
     public static final String DEFAULT_OTHERS_GROUP_NAME = "others";
     public static final String DEFAULT_ORIGINAL_GROUP_NAME = "original";
@@ -222,6 +225,20 @@ public class LineReaderImpl implements LineReader, Flushable {
     protected int searchIndex = -1;
     protected Deque<Integer> searchIndexStack = null; // Stack to track search depth
     protected boolean doAutosuggestion;
+    // Redisplay statistics, see REDISPLAY_MAX_DELAY
+    private long redisplayRequests;
+    private long redisplayFrames;
+    private long lastFrameTime;
+    // Last displayed buffer and its rows, by logical line, see splitRows
+    private AttributedString displayedBuffer;
+    private List<AttributedString> splitLines = Collections.emptyList();
+    private List<List<AttributedString>> splitLineRows = Collections.emptyList();
+    private int splitColumns;
+    private boolean splitDelayLineWrap;
+    // Interval at which the candidates of an asynchronous completer are displayed
+    private static final long ASYNC_COMPLETION_POLL = 50L;
+    // Candidates of the last completion, reused with COMPLETE_NARROWING
+    private CompletionCache completionCache;
 
     // Reading buffers
     protected final BindingReader bindingReader;
@@ -641,6 +658,7 @@ public class LineReaderImpl implements LineReader, Flushable {
             state = State.NORMAL;
 
             modifiedHistory.clear();
+            completionCache = null;
 
             setPrompt(prompt);
             setRightPrompt(rightPrompt);
@@ -770,7 +788,7 @@ public class LineReaderImpl implements LineReader, Flushable {
                     }
 
                     if (!dumb) {
-                        redisplay();
+                        coalescedRedisplay();
                     }
                 } finally {
                     lock.unlock();
@@ -2834,15 +2852,8 @@ public class LineReaderImpl implements LineReader, Flushable {
                                     .max(Comparator.comparing(Pair::getV))
                                     .orElse(null);
                             if (pair == null) {
-                                pair = StreamSupport.stream(
-                                                Spliterators.spliteratorUnknownSize(
-                                                        history.reverseIterator(
-                                                                searchIndex < 0 ? history.last() : searchIndex - 1),
-                                                        Spliterator.ORDERED),
-                                                false)
-                                        .flatMap(e -> matches(pat, e.line(), e.index()).stream())
-                                        .findFirst()
-                                        .orElse(null);
+                                pair = findHistoryMatch(
+                                        pat, searchIndex < 0 ? history.last() : searchIndex - 1, true);
                             }
                         } else {
                             boolean nextOnly = next;
@@ -2851,15 +2862,8 @@ public class LineReaderImpl implements LineReader, Flushable {
                                     .min(Comparator.comparing(Pair::getV))
                                     .orElse(null);
                             if (pair == null) {
-                                pair = StreamSupport.stream(
-                                                Spliterators.spliteratorUnknownSize(
-                                                        history.iterator(
-                                                                (searchIndex < 0 ? history.last() : searchIndex) + 1),
-                                                        Spliterator.ORDERED),
-                                                false)
-                                        .flatMap(e -> matches(pat, e.line(), e.index()).stream())
-                                        .findFirst()
-                                        .orElse(null);
+                                pair = findHistoryMatch(
+                                        pat, (searchIndex < 0 ? history.last() : searchIndex) + 1, false);
                                 if (pair == null && searchIndex >= 0) {
                                     pair = matches(pat, originalBuffer.toString(), -1).stream()
                                             .min(Comparator.comparing(Pair::getV))
@@ -2903,6 +2907,37 @@ public class LineReaderImpl implements LineReader, Flushable {
         }
     }
 
+    /**
+     * Finds the first match of the search pattern in the history, walking from the given
+     * index (inclusive) backward or forward. The history search index is used, when available,
+     * to only look at entries which may contain the search term.
+     */
+    private Pair<Integer, Integer> findHistoryMatch(Pattern pat, int from, boolean backward) {
+        int[] candidates = history.searchCandidates(searchTerm.toString());
+        if (candidates != null) {
+            int i = lowerBound(candidates, backward ? from + 1 : from);
+            if (backward) {
+                i--;
+            }
+            while (i >= 0 && i < candidates.length) {
+                List<Pair<Integer, Integer>> found = matches(pat, history.get(candidates[i]), candidates[i]);
+                if (!found.isEmpty()) {
+                    return found.get(0);
+                }
+                i += backward ? -1 : 1;
+            }
+            return null;
+        }
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(
+                                backward ? history.reverseIterator(from) : history.iterator(from),
+                                Spliterator.ORDERED),
+                        false)
+                .flatMap(e -> matches(pat, e.line(), e.index()).stream())
+                .findFirst()
+                .orElse(null);
+    }
+
     private List<Pair<Integer, Integer>> matches(Pattern p, String line, int index) {
         List<Pair<Integer, Integer>> starts = new ArrayList<>();
         Matcher m = p.matcher(line);
@@ -3049,15 +3084,19 @@ public class LineReaderImpl implements LineReader, Flushable {
         if (caseInsensitive) {
             searchTerm = searchTerm.toLowerCase();
         }
+        int[] candidates = history.searchCandidates(searchTerm);
+        if (candidates != null) {
+            for (int i = lowerBound(candidates, startIndex) - 1; i >= 0; i--) {
+                if (matchesSearch(history.get(candidates[i]), searchTerm, caseInsensitive, startsWith)) {
+                    return candidates[i];
+                }
+            }
+            return -1;
+        }
         ListIterator<History.Entry> it = history.iterator(startIndex);
         while (it.hasPrevious()) {
             History.Entry e = it.previous();
-            String line = e.line();
-            if (caseInsensitive) {
-                line = line.toLowerCase();
-            }
-            int idx = line.indexOf(searchTerm);
-            if ((startsWith && idx == 0) || (!startsWith && idx >= 0)) {
+            if (matchesSearch(e.line(), searchTerm, caseInsensitive, startsWith)) {
                 return e.index();
             }
         }
@@ -3072,24 +3111,55 @@ public class LineReaderImpl implements LineReader, Flushable {
         if (startIndex > history.last()) {
             startIndex = history.last();
         }
+        int[] candidates = history.searchCandidates(searchTerm);
+        if (candidates != null) {
+            int from = searchIndex != -1 && startIndex <= history.last() ? startIndex + 1 : startIndex;
+            for (int i = lowerBound(candidates, from); i < candidates.length; i++) {
+                if (matchesSearch(history.get(candidates[i]), searchTerm, caseInsensitive, startsWith)) {
+                    return candidates[i];
+                }
+            }
+            return -1;
+        }
         ListIterator<History.Entry> it = history.iterator(startIndex);
         if (searchIndex != -1 && it.hasNext()) {
             it.next();
         }
         while (it.hasNext()) {
             History.Entry e = it.next();
-            String line = e.line();
-            if (caseInsensitive) {
-                line = line.toLowerCase();
-            }
-            int idx = line.indexOf(searchTerm);
-            if ((startsWith && idx == 0) || (!startsWith && idx >= 0)) {
+            if (matchesSearch(e.line(), searchTerm, caseInsensitive, startsWith)) {
                 return e.index();
             }
         }
         return -1;
     }
 
+    private static boolean matchesSearch(String line, String searchTerm, boolean caseInsensitive, boolean startsWith) {
+        if (caseInsensitive) {
+            line = line.toLowerCase();
+        }
+        int idx = line.indexOf(searchTerm);
+        return (startsWith && idx == 0) || (!startsWith && idx >= 0);
+    }
+
+    /**
+     * Returns the position of the first element of the sorted array which is not
+     * smaller than the given value.
+     */
+    private static int lowerBound(int[] sorted, int value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     /**
      * Search forward in history from a given position.
      *
@@ -3999,9 +4069,47 @@ public class LineReaderImpl implements LineReader, Flushable {
         return true;
     }
 
+    /**
+     * Redisplays the line after a key binding has been processed, unless more input is
+     * pending and the last frame has been displayed less than {@link #REDISPLAY_MAX_DELAY}
+     * ago, in which case the frame is skipped: the next one will include its changes.
+     */
+    private void coalescedRedisplay() {
+        long maxDelay = getLong(REDISPLAY_MAX_DELAY, DEFAULT_REDISPLAY_MAX_DELAY);
+        if (maxDelay >= 0
+                && System.currentTimeMillis() - lastFrameTime < maxDelay
+                && bindingReader.hasPendingInput()) {
+            redisplayRequests++;
+            return;
+        }
+        redisplay();
+    }
+
+    /**
+     * Returns the number of times the line has been requested to be redisplayed,
+     * including the requests skipped because more input was pending.
+     *
+     * @return the number of redisplay requests
+     * @see #REDISPLAY_MAX_DELAY
+     */
+    public long getRedisplayRequestCount() {
+        return redisplayRequests;
+    }
+
+    /**
+     * Returns the number of frames actually sent to the display.
+     *
+     * @return the number of frames displayed
+     * @see #REDISPLAY_MAX_DELAY
+     */
+    public long getRedisplayFrameCount() {
+        return redisplayFrames;
+    }
+
     protected void redisplay(boolean flush) {
         try {
             lock.lock();
+            redisplayRequests++;
 
             if (skipRedisplay) {
                 skipRedisplay = false;
@@ -4055,6 +4163,8 @@ public class LineReaderImpl implements LineReader, Flushable {
                 }
 
                 display.update(Collections.singletonList(full), cursor - smallTerminalOffset, flush);
+                redisplayFrames++;
+                lastFrameTime = System.currentTimeMillis();
                 return;
             }
 
@@ -4066,7 +4176,47 @@ public class LineReaderImpl implements LineReader, Flushable {
                 newLines = new ArrayList<>();
                 newLines.add(full);
             } else {
-                newLines = full.columnSplitLength(size.getColumns(), true, display.delayLineWrap());
+                newLines = splitRows(full, size.getColumns(), display.delayLineWrap());
+            }
+
+            int cursorPos = -1;
+            int cursorNewLinesId = -1;
+            int cursorColPos = -1;
+            if (size.getColumns() > 0) {
+                int index = displayedCursorIndex(secondaryPrompts);
+                if (index >= 0) {
+                    // Locate the cursor in the rows, at the end of a row rather than
+                    // at the beginning of the next one when it is wrapped
+                    int rowStart = 0;
+                    for (int r = 0; r < newLines.size(); r++) {
+                        AttributedString row = newLines.get(r);
+                        int len = row.length();
+                        int end = rowStart + (len > 0 && row.charAt(len - 1) == '\n' ? len - 1 : len);
+                        if (index <= end) {
+                            cursorNewLinesId = r;
+                            cursorColPos = row.subSequence(0, index - rowStart).columnLength();
+                            break;
+                        }
+                        rowStart += len;
+                    }
+                } else {
+                    AttributedStringBuilder sb = new AttributedStringBuilder().tabs(getTabWidth());
+                    sb.append(prompt);
+                    String buffer = buf.upToCursor();
+                    if (maskingCallback != null) {
+                        buffer = maskingCallback.display(buffer);
+                    }
+                    sb.append(insertSecondaryPrompts(new AttributedString(buffer), secondaryPrompts, false));
+                    List<AttributedString> promptLines =
+                            sb.columnSplitLength(size.getColumns(), false, display.delayLineWrap());
+                    if (!promptLines.isEmpty()) {
+                        cursorNewLinesId = promptLines.size() - 1;
+                        cursorColPos = promptLines.get(promptLines.size() - 1).columnLength();
+                    }
+                }
+                if (cursorNewLinesId >= 0) {
+                    cursorPos = size.cursorPos(cursorNewLinesId, cursorColPos);
+                }
             }
 
             List<AttributedString> rightPromptLines;
@@ -4083,26 +4233,6 @@ public class LineReaderImpl implements LineReader, Flushable {
                 newLines.set(i, addRightPrompt(line, newLines.get(i)));
             }
 
-            int cursorPos = -1;
-            int cursorNewLinesId = -1;
-            int cursorColPos = -1;
-            if (size.getColumns() > 0) {
-                AttributedStringBuilder sb = new AttributedStringBuilder().tabs(getTabWidth());
-                sb.append(prompt);
-                String buffer = buf.upToCursor();
-                if (maskingCallback != null) {
-                    buffer = maskingCallback.display(buffer);
-                }
-                sb.append(insertSecondaryPrompts(new AttributedString(buffer), secondaryPrompts, false));
-                List<AttributedString> promptLines =
-                        sb.columnSplitLength(size.getColumns(), false, display.delayLineWrap());
-                if (!promptLines.isEmpty()) {
-                    cursorNewLinesId = promptLines.size() - 1;
-                    cursorColPos = promptLines.get(promptLines.size() - 1).columnLength();
-                    cursorPos = size.cursorPos(cursorNewLinesId, cursorColPos);
-                }
-            }
-
             List<AttributedString> newLinesToDisplay = new ArrayList<>();
             int displaySize = displayRows(status);
             if (newLines.size() > displaySize && !isTerminalDumb()) {
@@ -4137,11 +4267,86 @@ public class LineReaderImpl implements LineReader, Flushable {
                 newLinesToDisplay = newLines;
             }
             display.update(newLinesToDisplay, cursorPos, flush);
+            redisplayFrames++;
+            lastFrameTime = System.currentTimeMillis();
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Splits the displayed text into terminal rows, reusing the rows of the logical lines
+     * which have not changed since the previous call.
+     */
+    private List<AttributedString> splitRows(AttributedString full, int columns, boolean delayLineWrap) {
+        if (columns != splitColumns || delayLineWrap != splitDelayLineWrap) {
+            splitLines = Collections.emptyList();
+            splitLineRows = Collections.emptyList();
+            splitColumns = columns;
+            splitDelayLineWrap = delayLineWrap;
+        }
+        List<AttributedString> rows = new ArrayList<>();
+        List<AttributedString> lines = new ArrayList<>();
+        List<List<AttributedString>> lineRows = new ArrayList<>();
+        String str = full.toString();
+        int start = 0;
+        while (true) {
+            int nl = str.indexOf('\n', start);
+            AttributedString line = full.subSequence(start, nl >= 0 ? nl + 1 : str.length());
+            int l = lines.size();
+            List<AttributedString> split = l < splitLines.size() && splitLines.get(l).equals(line)
+                    ? splitLineRows.get(l)
+                    : line.columnSplitLength(columns, true, delayLineWrap);
+            lines.add(line);
+            lineRows.add(split);
+            if (nl < 0) {
+                rows.addAll(split);
+                break;
+            }
+            // the last row of a line ending with a newline is empty
+            rows.addAll(split.subList(0, split.size() - 1));
+            start = nl + 1;
+        }
+        splitLines = lines;
+        splitLineRows = lineRows;
+        return rows;
+    }
+
+    /**
+     * Returns the index of the cursor in the text displayed by {@link #redisplay(boolean)},
+     * or <code>-1</code> if it can not be derived from the buffer cursor because the
+     * displayed text is not the buffer text with prompts inserted.
+     */
+    private int displayedCursorIndex(List<AttributedString> secondaryPrompts) {
+        AttributedString displayed = displayedBuffer;
+        if (maskingCallback != null
+                || displayed == null
+                || displayed.length() != buf.length()
+                || prompt.contains('\t')) {
+            return -1;
+        }
+        int cursor = buf.cursor();
+        int line = 0;
+        for (int i = 0; i < displayed.length(); i++) {
+            char c = displayed.charAt(i);
+            if (c != buf.atChar(i) || c == '\t') {
+                return -1;
+            }
+            if (c == '\n' && i < cursor) {
+                line++;
+            }
+        }
+        int index = prompt.length() + cursor;
+        for (int i = 0; i < line && i < secondaryPrompts.size(); i++) {
+            AttributedString secondary = secondaryPrompts.get(i);
+            if (secondary.contains('\t')) {
+                return -1;
+            }
+            index += secondary.length();
+        }
+        return index;
+    }
+
     private void concat(List<AttributedString> lines, AttributedStringBuilder sb) {
         if (lines.size() > 1) {
             for (int i = 0; i < lines.size() - 1; i++) {
@@ -4168,6 +4373,18 @@ public class LineReaderImpl implements LineReader, Flushable {
             sb.append(c);
         }
         Pattern pattern = Pattern.compile(sb.toString() + ".*", Pattern.DOTALL);
+        int[] candidates = history.searchCandidates(buffer);
+        if (candidates != null) {
+            // Only look at the entries the linear scan below would reach
+            int first = history.last() - 201;
+            for (int i = candidates.length - 1; i >= 0 && candidates[i] >= first; i--) {
+                String line = history.get(candidates[i]);
+                if (pattern.matcher(line).matches()) {
+                    return line.substring(buffer.length());
+                }
+            }
+            return "";
+        }
         Iterator<History.Entry> iter = history.reverseIterator(history.last());
         String suggestion = "";
         int tot = 0;
@@ -4192,6 +4409,7 @@ public class LineReaderImpl implements LineReader, Flushable {
      */
     public AttributedString getDisplayedBufferWithPrompts(List<AttributedString> secondaryPrompts) {
         AttributedString attBuf = getHighlightedBuffer(buf.toString());
+        displayedBuffer = attBuf;
 
         AttributedString tNewBuf = insertSecondaryPrompts(attBuf, secondaryPrompts);
         AttributedStringBuilder full = new AttributedStringBuilder().tabs(getTabWidth());
@@ -4612,17 +4830,35 @@ public class LineReaderImpl implements LineReader, Flushable {
         }
 
         // Find completion candidates
-        List<Candidate> candidates = new ArrayList<>();
-        try {
-            if (completer != null) {
-                completer.complete(this, line, candidates);
+        List<Candidate> candidates = isSet(Option.COMPLETE_NARROWING) ? cachedCandidates(line, prefix) : null;
+        if (candidates == null) {
+            boolean complete = true;
+            try {
+                if (completer instanceof AsyncCompleter) {
+                    AsyncCandidates async = completeAsync((AsyncCompleter) completer, line, prefix);
+                    if (async == null) {
+                        // Cancelled by a key press, which will be processed next
+                        return true;
+                    }
+                    candidates = async.candidates();
+                    complete = async.isDone();
+                } else {
+                    candidates = new ArrayList<>();
+                    if (completer != null) {
+                        completer.complete(this, line, candidates);
+                    }
+                }
+            } catch (Exception e) {
+                Log.info("Error while finding completion candidates", e);
+                if (Log.isDebugEnabled()) {
+                    e.printStackTrace();
+                }
+                completionCache = null;
+                return false;
             }
-        } catch (Exception e) {
-            Log.info("Error while finding completion candidates", e);
-            if (Log.isDebugEnabled()) {
-                e.printStackTrace();
+            if (isSet(Option.COMPLETE_NARROWING)) {
+                completionCache = complete ? new CompletionCache(line, candidates) : null;
             }
-            return false;
         }
 
         if (lst == CompletionType.ExpandComplete || lst == CompletionType.Expand) {
@@ -4758,6 +4994,104 @@ public class LineReaderImpl implements LineReader, Flushable {
         }
     }
 
+    /**
+     * Runs an asynchronous completer on a background thread, displaying the matching
+     * candidates as they are found, until it completes, a key is pressed or the
+     * {@link #COMPLETION_TIMEOUT} delay expires.
+     *
+     * @return the candidates found, or <code>null</code> if a key has been pressed
+     */
+    private AsyncCandidates completeAsync(AsyncCompleter completer, CompletingParsedLine line, boolean prefix)
+            throws Exception {
+        AsyncCandidates async = new AsyncCandidates();
+        Thread thread = new Thread(
+                () -> {
+                    try {
+                        completer.complete(this, line, async);
+                        async.done(null);
+                    } catch (Throwable t) {
+                        async.done(t);
+                    }
+                },
+                "JLine Completer");
+        thread.setDaemon(true);
+        thread.start();
+
+        completionMatcher.compile(
+                options,
+                prefix,
+                line,
+                isSet(Option.CASE_INSENSITIVE),
+                getInt(ERRORS, DEFAULT_ERRORS),
+                getOriginalGroupName());
+        long timeout = getLong(COMPLETION_TIMEOUT, DEFAULT_COMPLETION_TIMEOUT);
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean watchInput = true;
+        int displayed = 0;
+        try {
+            while (true) {
+                long wait = timeout > 0 ? deadline - System.currentTimeMillis() : Long.MAX_VALUE;
+                if (wait <= 0 || async.await(Math.min(wait, ASYNC_COMPLETION_POLL))) {
+                    break;
+                }
+                if (watchInput) {
+                    int c = peekCharacter(1);
+                    if (c == NonBlockingReader.EOF) {
+                        watchInput = false;
+                    } else if (c != NonBlockingReader.READ_EXPIRED) {
+                        return null;
+                    }
+                }
+                List<Candidate> found = async.candidates();
+                if (found.size() > displayed) {
+                    displayed = found.size();
+                    List<Candidate> possible = completionMatcher.matches(found);
+                    PostResult pr = computePost(possible, null, null, line.word());
+                    post = pr.lines < size.getRows() - 1 ? () -> pr.post : null;
+                    redisplay();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (!async.isDone()) {
+                async.cancel();
+                thread.interrupt();
+            }
+            if (displayed > 0) {
+                post = null;
+                redisplay();
+            }
+        }
+        Throwable failure = async.failure();
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return async;
+    }
+
+    /**
+     * Returns the candidates of the previous completion if the given line only differs
+     * from the previously completed one by characters appended to the completed word,
+     * or <code>null</code> if the completer needs to be called.
+     */
+    private List<Candidate> cachedCandidates(CompletingParsedLine line, boolean prefix) {
+        CompletionCache cache = completionCache;
+        if (cache == null || !cache.extendedBy(line)) {
+            return null;
+        }
+        // All matchers of the default completion matcher, but the typo one, only accept
+        // values containing the word characters in order, ignoring case
+        if (completionMatcher.getClass() == CompletionMatcherImpl.class && !isSet(Option.COMPLETE_MATCHER_TYPO)) {
+            String word = prefix ? line.word().substring(0, line.wordCursor()) : line.word();
+            return cache.narrow(word);
+        }
+        return cache.candidates;
+    }
+
     protected static CompletingParsedLine wrap(ParsedLine line) {
         if (line instanceof CompletingParsedLine) {
             return (CompletingParsedLine) line;
@@ -5267,6 +5601,117 @@ public class LineReaderImpl implements LineReader, Flushable {
         }
     }
 
+    /**
+     * Collects the candidates provided by an {@link AsyncCompleter}.
+     */
+    private static class AsyncCandidates implements AsyncCompleter.CandidateSink {
+        private final List<Candidate> candidates = new ArrayList<>();
+        private volatile boolean cancelled;
+        private boolean done;
+        private Throwable failure;
+
+        @Override
+        public synchronized void accept(Candidate candidate) {
+            if (!cancelled) {
+                candidates.add(candidate);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        synchronized void done(Throwable failure) {
+            this.failure = failure;
+            this.done = true;
+            notifyAll();
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        synchronized Throwable failure() {
+            return failure;
+        }
+
+        synchronized List<Candidate> candidates() {
+            return new ArrayList<>(candidates);
+        }
+
+        synchronized boolean await(long timeout) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeout;
+            long wait = timeout;
+            while (!done && wait > 0) {
+                wait(wait);
+                wait = end - System.currentTimeMillis();
+            }
+            return done;
+        }
+    }
+
+    /**
+     * The candidates returned by the completer for a given line, along with the
+     * candidates narrowed down for the last word completed on that line.
+     */
+    private class CompletionCache {
+        final Completer completer;
+        final String before;
+        final String after;
+        final String word;
+        final List<Candidate> candidates;
+        String narrowedWord = "";
+        List<Candidate> narrowed;
+
+        CompletionCache(CompletingParsedLine line, List<Candidate> candidates) {
+            int start = buf.cursor() - line.rawWordCursor();
+            this.completer = LineReaderImpl.this.completer;
+            this.before = buf.substring(0, start);
+            this.after = buf.substring(start + line.rawWordLength());
+            this.word = line.word();
+            this.candidates = candidates;
+            this.narrowed = candidates;
+        }
+
+        boolean extendedBy(CompletingParsedLine line) {
+            int start = buf.cursor() - line.rawWordCursor();
+            return completer == LineReaderImpl.this.completer
+                    && line.word().startsWith(word)
+                    && start == before.length()
+                    && buf.length() - start - line.rawWordLength() == after.length()
+                    && before.equals(buf.substring(0, start))
+                    && after.equals(buf.substring(start + line.rawWordLength()));
+        }
+
+        List<Candidate> narrow(String word) {
+            List<Candidate> from = word.startsWith(narrowedWord) ? narrowed : candidates;
+            List<Candidate> result = new ArrayList<>();
+            for (Candidate candidate : from) {
+                if (containsInOrder(candidate.value(), word)) {
+                    result.add(candidate);
+                }
+            }
+            narrowedWord = word;
+            narrowed = result;
+            return result;
+        }
+
+        private boolean containsInOrder(String value, String word) {
+            int j = 0;
+            for (int i = 0; i < value.length() && j < word.length(); i++) {
+                if (Character.toLowerCase(value.charAt(i)) == Character.toLowerCase(word.charAt(j))) {
+                    j++;
+                }
+            }
+            return j == word.length();
+        }
+    }
+
     private static class CompletingWord implements CompletingParsedLine {
         private final String word;
 
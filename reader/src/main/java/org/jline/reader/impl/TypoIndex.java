@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jline.utils.Levenshtein;
+
+/**
+ * Index answering typo queries over a fixed set of keys.
+ * <p>
+ * The index returns the keys whose {@link ReaderUtils#distance(String, String)} to a word is
+ * lower than a given number of errors, without computing the distance to every key.
+ * That distance is the minimum of the Damerau-Levenshtein distance between the word and
+ * the key, and, for keys longer than the word, between the word and the key prefix of the
+ * same length as the word.
+ * <p>
+ * As the Damerau-Levenshtein distance is a metric, keys are stored in a BK-tree: each node
+ * holds a key and its children are indexed by their distance to that key, so that a query
+ * only visits the children whose distance is compatible with the triangle inequality.
+ * A second tree holding the key prefixes is built lazily for each word length queried.
+ */
+class TypoIndex {
+
+    private final String[] keys;
+    private final Node root;
+    private final Map<Integer, Node> prefixes = new HashMap<>();
+
+    TypoIndex(String[] keys) {
+        this.keys = keys;
+        Node root = null;
+        for (int i = 0; i < keys.length; i++) {
+            root = insert(root, keys[i], i);
+        }
+        this.root = root;
+    }
+
+    /**
+     * Returns the indexes of the keys whose distance to the given word is lower than
+     * the given number of errors.
+     *
+     * @param word the word to match
+     * @param errors the number of errors
+     * @return the indexes of the matching keys
+     */
+    BitSet matches(String word, int errors) {
+        BitSet result = new BitSet(keys.length);
+        search(root, word, errors - 1, result);
+        search(prefixes.computeIfAbsent(word.length(), this::prefixTree), word, errors - 1, result);
+        return result;
+    }
+
+    private Node prefixTree(int length) {
+        Node root = null;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].length() > length) {
+                root = insert(root, keys[i].substring(0, length), i);
+            }
+        }
+        return root;
+    }
+
+    private static Node insert(Node root, String key, int index) {
+        if (root == null) {
+            return new Node(key, index);
+        }
+        Node node = root;
+        while (true) {
+            int d = Levenshtein.distance(key, node.key);
+            if (d == 0) {
+                node.addIndex(index);
+                return root;
+            }
+            Node child = node.child(d);
+            if (child == null) {
+                node.addChild(d, new Node(key, index));
+                return root;
+            }
+            node = child;
+        }
+    }
+
+    private static void search(Node node, String word, int max, BitSet result) {
+        if (node == null || max < 0) {
+            return;
+        }
+        int d = Levenshtein.distance(word, node.key);
+        if (d <= max) {
+            for (int i = 0; i < node.nbIndexes; i++) {
+                result.set(node.indexes[i]);
+            }
+        }
+        for (int i = 0; i < node.nbChildren; i++) {
+            int cd = node.distances[i];
+            if (cd >= d - max && cd <= d + max) {
+                search(node.children[i], word, max, result);
+            }
+        }
+    }
+
+    private static class Node {
+        final String key;
+        int[] indexes = new int[1];
+        int nbIndexes;
+        int[] distances;
+        Node[] children;
+        int nbChildren;
+
+        Node(String key, int index) {
+            this.key = key;
+            this.indexes[nbIndexes++] = index;
+        }
+
+        void addIndex(int index) {
+            if (nbIndexes == indexes.length) {
+                indexes = Arrays.copyOf(indexes, nbIndexes * 2);
+            }
+            indexes[nbIndexes++] = index;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < nbChildren; i++) {
+                if (distances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (children == null) {
+                distances = new int[4];
+                children = new Node[4];
+            } else if (nbChildren == children.length) {
+                distances = Arrays.copyOf(distances, nbChildren * 2);
+                children = Arrays.copyOf(children, nbChildren * 2);
+            }
+            distances[nbChildren] = distance;
+            children[nbChildren++] = child;
+        }
+    }
+}
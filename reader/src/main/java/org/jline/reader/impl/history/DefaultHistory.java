@@ -9,10 +9,16 @@
 package org.jline.reader.impl.history;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.DateTimeException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jline.reader.History;
 import org.jline.reader.LineReader;
@@ -26,7 +32,8 @@ import static org.jline.reader.impl.ReaderUtils.*;
  * <p>
  * This class provides a complete implementation of the History interface with the following features:
  * <ul>
- *   <li>In-memory storage of history entries with configurable size limits</li>
+ *   <li>In-memory storage of history entries with configurable size limits, with constant time
+ *       indexed access and duplicate detection so that large histories stay cheap</li>
  *   <li>Persistent storage in a text file with configurable location and size limits</li>
  *   <li>Support for timestamped history entries</li>
  *   <li>Filtering of entries based on patterns defined in the {@link LineReader#HISTORY_IGNORE} variable</li>
@@ -39,6 +46,17 @@ import static org.jline.reader.impl.ReaderUtils.*;
  * {@link LineReader.Option#HISTORY_TIMESTAMPED} is set, each line starts with a timestamp
  * in milliseconds since epoch, followed by a colon and the command text.
  * <p>
+ * When loading, only the last {@link LineReader#HISTORY_SIZE} lines of the file are parsed: the file
+ * is scanned backwards from its end to locate them. When the file grows past
+ * {@link LineReader#HISTORY_FILE_SIZE}, it is trimmed, either synchronously during {@link #save()} or,
+ * if {@link LineReader.Option#HISTORY_BACKGROUND_TRIM} is set, on a background thread.
+ * <p>
+ * If {@link LineReader.Option#HISTORY_SHARED} is set, the history file can be used by several
+ * processes at the same time. The file is locked while it is read or updated, and the byte
+ * offset up to which its content is known is remembered, so that the entries appended by
+ * other processes are imported incrementally each time a line is read, without reparsing
+ * the whole file. In this mode, the file is trimmed in place while locked.
+ * <p>
  * Applications using this class should install a shutdown hook to call {@link DefaultHistory#save}
  * to ensure history is saved to disk when the application exits.
  * <p>
@@ -76,11 +94,13 @@ public class DefaultHistory implements History {
      */
     public static final int DEFAULT_HISTORY_FILE_SIZE = 10000;
 
-    private final LinkedList<Entry> items = new LinkedList<>();
+    private final HistoryBuffer items = new HistoryBuffer();
 
     private LineReader reader;
 
     private Map<String, HistoryFileData> historyFiles = new HashMap<>();
+    private final Object fileLock = new Object();
+    private final Set<String> trimming = ConcurrentHashMap.newKeySet();
     private int offset = 0;
     private int index = 0;
 
@@ -130,6 +150,15 @@ public class DefaultHistory implements History {
             } catch (IllegalArgumentException | IOException e) {
                 Log.warn("Failed to load history", e);
             }
+        } else if (isSet(reader, LineReader.Option.HISTORY_SHARED)) {
+            Path path = getPath();
+            if (path != null && Files.exists(path)) {
+                try {
+                    syncSharedFile(path, false);
+                } catch (IOException e) {
+                    Log.warn("Failed to read shared history", e);
+                }
+            }
         }
     }
 
@@ -150,11 +179,20 @@ public class DefaultHistory implements History {
                 if (Files.exists(path)) {
                     Log.trace("Loading history from: ", path);
                     internalClear();
+                    if (isSet(reader, LineReader.Option.HISTORY_SHARED)) {
+                        syncSharedFile(path, false);
+                        return;
+                    }
                     boolean hasErrors = false;
 
-                    try (BufferedReader reader = Files.newBufferedReader(path)) {
-                        List<String> lines = reader.lines().collect(java.util.stream.Collectors.toList());
-                        for (String line : lines) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        // Only parse the entries that will be kept in memory
+                        long start = tailOffset(channel, getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+                        offset = countLines(channel, start);
+                        channel.position(start);
+                        BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+                        String line;
+                        while ((line = reader.readLine()) != null) {
                             try {
                                 addHistoryLine(path, line);
                             } catch (IllegalArgumentException e) {
@@ -203,8 +241,8 @@ public class DefaultHistory implements History {
                     boolean hasErrors = false;
 
                     try (BufferedReader reader = Files.newBufferedReader(path)) {
-                        List<String> lines = reader.lines().collect(java.util.stream.Collectors.toList());
-                        for (String line : lines) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
                             try {
                                 addHistoryLine(path, line, checkDuplicates);
                             } catch (IllegalArgumentException e) {
@@ -237,14 +275,15 @@ public class DefaultHistory implements History {
 
     private HistoryFileData getHistoryFileData(Path path) {
         String key = doHistoryFileDataKey(path);
-        if (!historyFiles.containsKey(key)) {
-            historyFiles.put(key, new HistoryFileData());
+        synchronized (fileLock) {
+            return historyFiles.computeIfAbsent(key, k -> new HistoryFileData());
         }
-        return historyFiles.get(key);
     }
 
     private void setHistoryFileData(Path path, HistoryFileData historyFileData) {
-        historyFiles.put(doHistoryFileDataKey(path), historyFileData);
+        synchronized (fileLock) {
+            historyFiles.put(doHistoryFileDataKey(path), historyFileData);
+        }
     }
 
     private boolean isLineReaderHistory(Path path) throws IOException {
@@ -256,23 +295,33 @@ public class DefaultHistory implements History {
     }
 
     private void setLastLoaded(Path path, int lastloaded) {
-        getHistoryFileData(path).setLastLoaded(lastloaded);
+        synchronized (fileLock) {
+            getHistoryFileData(path).setLastLoaded(lastloaded);
+        }
     }
 
     private void setEntriesInFile(Path path, int entriesInFile) {
-        getHistoryFileData(path).setEntriesInFile(entriesInFile);
+        synchronized (fileLock) {
+            getHistoryFileData(path).setEntriesInFile(entriesInFile);
+        }
     }
 
     private void incEntriesInFile(Path path, int amount) {
-        getHistoryFileData(path).incEntriesInFile(amount);
+        synchronized (fileLock) {
+            getHistoryFileData(path).incEntriesInFile(amount);
+        }
     }
 
     private int getLastLoaded(Path path) {
-        return getHistoryFileData(path).getLastLoaded();
+        synchronized (fileLock) {
+            return getHistoryFileData(path).getLastLoaded();
+        }
     }
 
     private int getEntriesInFile(Path path) {
-        return getHistoryFileData(path).getEntriesInFile();
+        synchronized (fileLock) {
+            return getHistoryFileData(path).getEntriesInFile();
+        }
     }
 
     /**
@@ -335,8 +384,9 @@ public class DefaultHistory implements History {
     /**
      * Writes the history to the specified file, optionally replacing the existing file.
      * <p>
-     * If the file exists, it will be deleted and recreated. If incremental is true,
-     * only entries that haven't been saved before will be written.
+     * If the file exists, it will be deleted and recreated, except for a history file shared
+     * with {@link LineReader.Option#HISTORY_SHARED}, which is rewritten in place while locked.
+     * If incremental is true, only entries that haven't been saved before will be written.
      *
      * @param file the file to write history to, or null to use the default history file
      * @param incremental whether to write only new entries (true) or all entries (false)
@@ -345,10 +395,10 @@ public class DefaultHistory implements History {
     @Override
     public void write(Path file, boolean incremental) throws IOException {
         Path path = file != null ? file : getPath();
-        if (path != null && Files.exists(path)) {
+        if (path != null && Files.exists(path) && !isSharedFile(path)) {
             Files.deleteIfExists(path);
         }
-        internalWrite(path, incremental ? getLastLoaded(path) : 0);
+        internalWrite(path, incremental ? getLastLoaded(path) : 0, true);
     }
 
     /**
@@ -364,7 +414,8 @@ public class DefaultHistory implements History {
      */
     @Override
     public void append(Path file, boolean incremental) throws IOException {
-        internalWrite(file != null ? file : getPath(), incremental ? getLastLoaded(file) : 0);
+        Path path = file != null ? file : getPath();
+        internalWrite(path, incremental ? getLastLoaded(path) : 0, false);
     }
 
     /**
@@ -378,32 +429,56 @@ public class DefaultHistory implements History {
      */
     @Override
     public void save() throws IOException {
-        internalWrite(getPath(), getLastLoaded(getPath()));
+        internalWrite(getPath(), getLastLoaded(getPath()), false);
+    }
+
+    private boolean isSharedFile(Path path) {
+        return isSet(reader, LineReader.Option.HISTORY_SHARED)
+                && doHistoryFileDataKey(path).equals(doHistoryFileDataKey(getPath()));
     }
 
-    private void internalWrite(Path path, int from) throws IOException {
+    private void internalWrite(Path path, int from, boolean replace) throws IOException {
         if (path != null) {
             Log.trace("Saving history to: ", path);
             Path parent = path.toAbsolutePath().getParent();
             if (!Files.exists(parent)) {
                 Files.createDirectories(parent);
             }
-            // Append new items to the history file
-            try (BufferedWriter writer = Files.newBufferedWriter(
-                    path.toAbsolutePath(),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.APPEND,
-                    StandardOpenOption.CREATE)) {
-                for (Entry entry : items.subList(from, items.size())) {
-                    if (isPersistable(entry)) {
-                        writer.append(format(entry));
+            int max = getInt(reader, LineReader.HISTORY_FILE_SIZE, DEFAULT_HISTORY_FILE_SIZE);
+            if (isSharedFile(path)) {
+                if (replace) {
+                    rewriteSharedFile(path, from);
+                } else {
+                    syncSharedFile(path, true, from);
+                }
+                if (getEntriesInFile(path) > max + max / 4) {
+                    trimSharedFile(path, max);
+                }
+                return;
+            }
+            boolean trim;
+            synchronized (fileLock) {
+                // Append new items to the history file
+                try (BufferedWriter writer = Files.newBufferedWriter(
+                        path.toAbsolutePath(),
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND,
+                        StandardOpenOption.CREATE)) {
+                    for (Entry entry : items.subList(from, items.size())) {
+                        if (isPersistable(entry)) {
+                            writer.append(format(entry));
+                        }
                     }
                 }
+                incEntriesInFile(path, items.size() - from);
+                trim = getEntriesInFile(path) > max + max / 4;
             }
-            incEntriesInFile(path, items.size() - from);
-            int max = getInt(reader, LineReader.HISTORY_FILE_SIZE, DEFAULT_HISTORY_FILE_SIZE);
-            if (getEntriesInFile(path) > max + max / 4) {
-                trimHistory(path, max);
+            if (trim) {
+                if (isSet(reader, LineReader.Option.HISTORY_BACKGROUND_TRIM)) {
+                    trimHistoryInBackground(path, max);
+                } else {
+                    trimHistory(path, max);
+                }
             }
         }
         setLastLoaded(path, items.size());
@@ -419,53 +494,372 @@ public class DefaultHistory implements History {
     protected void trimHistory(Path path, int max) throws IOException {
         Log.trace("Trimming history path: ", path);
         // Load all history entries
-        LinkedList<Entry> allItems = new LinkedList<>();
-        try (BufferedReader historyFileReader = Files.newBufferedReader(path)) {
-            List<String> lines = historyFileReader.lines().collect(java.util.stream.Collectors.toList());
-            for (String l : lines) {
+        List<Entry> allItems = readEntries(path, Long.MAX_VALUE);
+        // Remove duplicates
+        List<Entry> trimmedItems = doTrimHistory(allItems, max);
+        // Write history
+        Path temp = writeEntries(path, trimmedItems);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        // Keep items in memory
+        if (isLineReaderHistory(path)) {
+            internalClear();
+            offset = trimmedItems.isEmpty() ? 0 : trimmedItems.get(0).index();
+            items.addAll(trimmedItems);
+            setHistoryFileData(path, new HistoryFileData(items.size(), items.size()));
+        } else {
+            setEntriesInFile(path, trimmedItems.size());
+        }
+        maybeResize();
+    }
+
+    /**
+     * Trims the history file on a background thread.
+     * <p>
+     * The in-memory history is left untouched. Entries appended to the file while
+     * the trimmed copy is being built are carried over before it replaces the file.
+     */
+    private void trimHistoryInBackground(Path path, int max) {
+        String key = doHistoryFileDataKey(path);
+        if (!trimming.add(key)) {
+            return;
+        }
+        Thread thread = new Thread(
+                () -> {
+                    try {
+                        Log.trace("Trimming history path in background: ", path);
+                        long size = Files.size(path);
+                        List<Entry> trimmedItems = doTrimHistory(readEntries(path, size), max);
+                        Path temp = writeEntries(path, trimmedItems);
+                        synchronized (fileLock) {
+                            long newSize = Files.size(path);
+                            if (newSize < size) {
+                                // The file has been rewritten meanwhile, discard our copy
+                                Files.deleteIfExists(temp);
+                                return;
+                            }
+                            int appended = copyTail(path, size, temp);
+                            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                            setEntriesInFile(path, trimmedItems.size() + appended);
+                        }
+                    } catch (IOException e) {
+                        Log.warn("Failed to trim history", e);
+                    } finally {
+                        trimming.remove(key);
+                    }
+                },
+                "JLine History Trim");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Synchronizes the history with a history file shared with other processes.
+     * <p>
+     * While the file is locked, the entries appended since the last synchronization are
+     * read starting from the last known byte offset and inserted before the entries which
+     * have not been saved yet. If {@code write} is set, those unsaved entries are then
+     * appended to the file. If the file has been rewritten by another process (for example
+     * trimmed), the tail of the file is loaded again.
+     */
+    private void syncSharedFile(Path path, boolean write) throws IOException {
+        syncSharedFile(path, write, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Synchronizes the history with a shared history file, the saved entries starting at
+     * index {@code first} being appended again with the unsaved ones if {@code write} is set.
+     */
+    private void syncSharedFile(Path path, boolean write, int first) throws IOException {
+        synchronized (fileLock) {
+            HistoryFileData data = getHistoryFileData(path);
+            int from = Math.min(data.getLastLoaded(), items.size());
+            List<Entry> saved = new ArrayList<>(items.subList(Math.max(0, Math.min(first, from)), from));
+            List<Entry> unsaved = new ArrayList<>(items.subList(from, items.size()));
+            List<String> lines = new ArrayList<>();
+            boolean reload;
+            int skipped = 0;
+            int written = 0;
+            long size;
+            try (FileChannel channel = write
+                            ? FileChannel.open(
+                                    path.toAbsolutePath(),
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE)
+                            : FileChannel.open(path, StandardOpenOption.READ)) {
+                FileLock lock = channel.lock(0, Long.MAX_VALUE, !write);
                 try {
-                    if (reader.isSet(LineReader.Option.HISTORY_TIMESTAMPED)) {
-                        int idx = l.indexOf(':');
-                        if (idx < 0) {
-                            Log.debug("Skipping invalid history line: " + l);
-                            continue;
+                    size = channel.size();
+                    reload = !data.isUpToDate(channel, size);
+                    long start = data.getPosition();
+                    if (reload) {
+                        Log.trace("Reloading shared history from: ", path);
+                        start = tailOffset(channel, getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+                        skipped = countLines(channel, start);
+                    }
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(
+                            new BoundedInputStream(Channels.newInputStream(channel.position(start)), size - start),
+                            StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                    if (write) {
+                        StringBuilder sb = new StringBuilder();
+                        List<Entry> entries = new ArrayList<>(saved);
+                        entries.addAll(unsaved);
+                        for (Entry entry : entries) {
+                            if (isPersistable(entry)) {
+                                sb.append(format(entry));
+                                written++;
+                            }
                         }
-                        try {
-                            Instant time = Instant.ofEpochMilli(Long.parseLong(l.substring(0, idx)));
-                            String line = unescape(l.substring(idx + 1));
-                            allItems.add(createEntry(allItems.size(), time, line));
-                        } catch (DateTimeException | NumberFormatException e) {
-                            Log.debug("Skipping invalid history timestamp: " + l);
+                        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                        while (buf.hasRemaining()) {
+                            size += channel.write(buf, size);
                         }
-                    } else {
-                        allItems.add(createEntry(allItems.size(), Instant.now(), unescape(l)));
                     }
-                } catch (Exception e) {
-                    Log.debug("Skipping invalid history line: " + l, e);
+                    data.setPosition(channel, size);
+                } finally {
+                    lock.release();
+                }
+            }
+            // Insert the new entries before the unsaved ones
+            if (reload) {
+                items.clear();
+                offset = skipped;
+                data.setEntriesInFile(skipped);
+            } else {
+                while (items.size() > from) {
+                    items.remove(items.size() - 1);
+                }
+            }
+            int parsed = 0;
+            for (String line : lines) {
+                try {
+                    addHistoryLine(path, line);
+                    parsed++;
+                } catch (IllegalArgumentException e) {
+                    Log.debug("Skipping invalid history line: " + line, e);
                 }
             }
+            data.incEntriesInFile(parsed + written);
+            int loaded = items.size();
+            for (Entry entry : unsaved) {
+                items.add(new EntryImpl(offset + items.size(), entry.time(), entry.line()));
+            }
+            data.setLastLoaded(write ? items.size() : loaded);
+            maybeResize();
         }
-        // Remove duplicates
-        List<Entry> trimmedItems = doTrimHistory(allItems, max);
-        // Write history
+    }
+
+    /**
+     * Replaces the content of a history file shared with other processes by the entries
+     * starting at index {@code from}.
+     * <p>
+     * As when trimming, the file is rewritten in place while locked rather than replaced,
+     * and the entries in memory are kept.
+     */
+    private void rewriteSharedFile(Path path, int from) throws IOException {
+        synchronized (fileLock) {
+            Log.trace("Rewriting shared history path: ", path);
+            HistoryFileData data = getHistoryFileData(path);
+            try (FileChannel channel = FileChannel.open(
+                    path.toAbsolutePath(),
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE)) {
+                FileLock lock = channel.lock();
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    int written = 0;
+                    for (Entry entry : items.subList(Math.min(from, items.size()), items.size())) {
+                        if (isPersistable(entry)) {
+                            sb.append(format(entry));
+                            written++;
+                        }
+                    }
+                    ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    long size = buf.remaining();
+                    while (buf.hasRemaining()) {
+                        channel.write(buf, buf.position());
+                    }
+                    channel.truncate(size);
+                    data.setPosition(channel, size);
+                    data.setEntriesInFile(written);
+                } finally {
+                    lock.release();
+                }
+            }
+            data.setLastLoaded(items.size());
+        }
+    }
+
+    /**
+     * Trims a history file shared with other processes.
+     * <p>
+     * The file is rewritten in place while locked rather than replaced, so that other processes
+     * waiting for the lock do not end up appending to a deleted file.
+     */
+    private void trimSharedFile(Path path, int max) throws IOException {
+        synchronized (fileLock) {
+            Log.trace("Trimming shared history path: ", path);
+            HistoryFileData data = getHistoryFileData(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    List<Entry> allItems = readEntries(
+                            new BoundedInputStream(Channels.newInputStream(channel.position(0)), channel.size()));
+                    List<Entry> trimmedItems = doTrimHistory(allItems, max);
+                    StringBuilder sb = new StringBuilder();
+                    for (Entry entry : trimmedItems) {
+                        sb.append(format(entry));
+                    }
+                    ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    long size = buf.remaining();
+                    while (buf.hasRemaining()) {
+                        channel.write(buf, buf.position());
+                    }
+                    channel.truncate(size);
+                    data.setPosition(channel, size);
+                    data.setEntriesInFile(trimmedItems.size());
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads and parses the entries stored in the first {@code limit} bytes of the given file.
+     */
+    private List<Entry> readEntries(Path path, long limit) throws IOException {
+        try (InputStream in = new BoundedInputStream(Files.newInputStream(path), limit)) {
+            return readEntries(in);
+        }
+    }
+
+    private List<Entry> readEntries(InputStream in) throws IOException {
+        List<Entry> allItems = new ArrayList<>();
+        BufferedReader historyFileReader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String l;
+        while ((l = historyFileReader.readLine()) != null) {
+            try {
+                if (reader.isSet(LineReader.Option.HISTORY_TIMESTAMPED)) {
+                    int idx = l.indexOf(':');
+                    if (idx < 0) {
+                        Log.debug("Skipping invalid history line: " + l);
+                        continue;
+                    }
+                    try {
+                        Instant time = Instant.ofEpochMilli(Long.parseLong(l.substring(0, idx)));
+                        String line = unescape(l.substring(idx + 1));
+                        allItems.add(createEntry(allItems.size(), time, line));
+                    } catch (DateTimeException | NumberFormatException e) {
+                        Log.debug("Skipping invalid history timestamp: " + l);
+                    }
+                } else {
+                    allItems.add(createEntry(allItems.size(), Instant.now(), unescape(l)));
+                }
+            } catch (Exception e) {
+                Log.debug("Skipping invalid history line: " + l, e);
+            }
+        }
+        return allItems;
+    }
+
+    /**
+     * Writes the given entries to a temporary file next to the history file.
+     */
+    private Path writeEntries(Path path, List<Entry> entries) throws IOException {
         Path temp = Files.createTempFile(
                 path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
         try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardOpenOption.WRITE)) {
-            for (Entry entry : trimmedItems) {
+            for (Entry entry : entries) {
                 writer.append(format(entry));
             }
         }
-        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
-        // Keep items in memory
-        if (isLineReaderHistory(path)) {
-            internalClear();
-            offset = trimmedItems.get(0).index();
-            items.addAll(trimmedItems);
-            setHistoryFileData(path, new HistoryFileData(items.size(), items.size()));
-        } else {
-            setEntriesInFile(path, allItems.size());
+        return temp;
+    }
+
+    /**
+     * Appends the bytes of {@code path} located after {@code from} to {@code target}.
+     *
+     * @return the number of lines copied
+     */
+    private static int copyTail(Path path, long from, Path target) throws IOException {
+        int lines = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.allocate(8192);
+            long pos = from;
+            int n;
+            while ((n = in.read(buf, pos)) > 0) {
+                pos += n;
+                buf.flip();
+                for (int i = 0; i < n; i++) {
+                    if (buf.get(i) == '\n') {
+                        lines++;
+                    }
+                }
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                buf.clear();
+            }
         }
-        maybeResize();
+        return lines;
+    }
+
+    /**
+     * Returns the position of the first byte of the last {@code count} lines of the file.
+     * The file is scanned backwards from its end, so that the cost only depends on the
+     * size of the returned tail.
+     */
+    static long tailOffset(FileChannel channel, int count) throws IOException {
+        long size = channel.size();
+        if (count <= 0) {
+            return size;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        int found = 0;
+        long pos = size;
+        while (pos > 0) {
+            int len = (int) Math.min(buf.capacity(), pos);
+            pos -= len;
+            buf.clear().limit(len);
+            while (buf.hasRemaining() && channel.read(buf, pos + buf.position()) > 0) {}
+            for (int i = buf.position() - 1; i >= 0; i--) {
+                // the terminator of the last line does not start a new line
+                if (buf.get(i) == '\n' && pos + i < size - 1 && ++found == count) {
+                    return pos + i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Counts the lines located before the given position, which must be the start of a line.
+     */
+    static int countLines(FileChannel channel, long end) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        int lines = 0;
+        long pos = 0;
+        while (pos < end) {
+            buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            pos += n;
+        }
+        return lines;
     }
 
     /**
@@ -482,31 +876,29 @@ public class DefaultHistory implements History {
     private void internalClear() {
         offset = 0;
         index = 0;
-        historyFiles = new HashMap<>();
+        synchronized (fileLock) {
+            historyFiles = new HashMap<>();
+        }
         items.clear();
     }
 
     static List<Entry> doTrimHistory(List<Entry> allItems, int max) {
-        int idx = 0;
-        while (idx < allItems.size()) {
-            int ridx = allItems.size() - idx - 1;
-            String line = allItems.get(ridx).line().trim();
-            ListIterator<Entry> iterator = allItems.listIterator(ridx);
-            while (iterator.hasPrevious()) {
-                String l = iterator.previous().line();
-                if (line.equals(l.trim())) {
-                    iterator.remove();
-                }
+        // Keep the most recent occurrence of each line, starting from the end
+        Set<String> seen = new HashSet<>();
+        List<Entry> kept = new ArrayList<>();
+        for (int i = allItems.size() - 1; i >= 0 && kept.size() < max; i--) {
+            Entry e = allItems.get(i);
+            if (seen.add(e.line().trim())) {
+                kept.add(e);
             }
-            idx++;
-        }
-        while (allItems.size() > max) {
-            allItems.remove(0);
         }
-        int index = allItems.get(allItems.size() - 1).index() - allItems.size() + 1;
-        List<Entry> out = new ArrayList<>();
-        for (Entry e : allItems) {
-            out.add(new EntryImpl(index++, e.time(), e.line()));
+        Collections.reverse(kept);
+        List<Entry> out = new ArrayList<>(kept.size());
+        if (!kept.isEmpty()) {
+            int index = allItems.get(allItems.size() - 1).index() - kept.size() + 1;
+            for (Entry e : kept) {
+                out.add(new EntryImpl(index++, e.time(), e.line()));
+            }
         }
         return out;
     }
@@ -643,29 +1035,46 @@ public class DefaultHistory implements History {
      * @param checkDuplicates whether to check for duplicate entries
      */
     protected void internalAdd(Instant time, String line, boolean checkDuplicates) {
-        Entry entry = new EntryImpl(offset + items.size(), time, line);
-        if (checkDuplicates) {
-            for (Entry e : items) {
-                if (e.line().trim().equals(line.trim())) {
-                    return;
-                }
-            }
+        if (checkDuplicates && items.containsTrimmed(line)) {
+            return;
         }
-        items.add(entry);
+        items.add(new EntryImpl(offset + items.size(), time, line));
         maybeResize();
     }
 
     private void maybeResize() {
         while (size() > getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE)) {
             items.removeFirst();
-            for (HistoryFileData hfd : historyFiles.values()) {
-                hfd.decLastLoaded();
+            synchronized (fileLock) {
+                for (HistoryFileData hfd : historyFiles.values()) {
+                    hfd.decLastLoaded();
+                }
             }
             offset++;
         }
         index = size();
     }
 
+    /**
+     * Returns the indexes of the entries which may contain the given term, ignoring case.
+     * <p>
+     * If {@link LineReader.Option#HISTORY_SEARCH_INDEX} is set, a trigram index of the
+     * entries is built on first use and maintained as entries are added, so that
+     * terms of three characters or more can be looked up without scanning the history.
+     *
+     * @param term the searched term
+     * @return the candidate indexes in ascending order, or <code>null</code> if the
+     *         index is disabled or the term is too short
+     */
+    @Override
+    public int[] searchCandidates(String term) {
+        if (!isSet(reader, LineReader.Option.HISTORY_SEARCH_INDEX)) {
+            items.disableSearchIndex();
+            return null;
+        }
+        return items.searchCandidates(term);
+    }
+
     public ListIterator<Entry> iterator(int index) {
         return items.listIterator(index - offset);
     }
@@ -905,8 +1314,12 @@ public class DefaultHistory implements History {
      * This information is used for incremental saving and trimming of history files.
      */
     private static class HistoryFileData {
+        private static final int FINGERPRINT_SIZE = 64;
+
         private int lastLoaded = 0;
         private int entriesInFile = 0;
+        private long position = 0;
+        private byte[] fingerprint = new byte[0];
 
         public HistoryFileData() {}
 
@@ -941,5 +1354,68 @@ public class DefaultHistory implements History {
         public void incEntriesInFile(int amount) {
             entriesInFile = entriesInFile + amount;
         }
+
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Records the byte offset up to which the file content is known, along with the bytes
+         * preceding it, which are used to detect whether the file has been rewritten since.
+         */
+        public void setPosition(FileChannel channel, long position) throws IOException {
+            this.position = position;
+            this.fingerprint = readBefore(channel, position);
+        }
+
+        /**
+         * Checks whether the file still starts with the content known up to the recorded position.
+         */
+        public boolean isUpToDate(FileChannel channel, long size) throws IOException {
+            return position > 0 && position <= size && Arrays.equals(fingerprint, readBefore(channel, position));
+        }
+
+        private static byte[] readBefore(FileChannel channel, long position) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(FINGERPRINT_SIZE, position));
+            long start = position - buf.capacity();
+            while (buf.hasRemaining() && channel.read(buf, start + buf.position()) > 0) {}
+            return buf.array();
+        }
+    }
+
+    /**
+     * An input stream returning at most a given number of bytes.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int c = super.read();
+            if (c >= 0) {
+                remaining--;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
     }
 }
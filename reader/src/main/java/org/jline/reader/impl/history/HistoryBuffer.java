@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.history;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.jline.reader.History.Entry;
+
+/**
+ * Random access storage for history entries.
+ * <p>
+ * Entries are kept in a growable ring buffer, so that indexed access, appending
+ * a new entry and evicting the oldest entry are all constant time operations.
+ * The buffer also maintains a count of the trimmed lines it contains, which
+ * allows duplicate detection without scanning the whole history.
+ * <p>
+ * Removing an entry from the middle of the buffer (which only happens when
+ * a user explicitly removes an entry through an iterator) is linear.
+ * <p>
+ * A {@link SearchIndex} can optionally be maintained along with the entries.
+ */
+class HistoryBuffer extends AbstractList<Entry> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Entry[] elements;
+    private int head;
+    private int size;
+    private final Map<String, Integer> lines = new HashMap<>();
+    private SearchIndex searchIndex;
+    private int evicted;
+
+    HistoryBuffer() {
+        elements = new Entry[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Entry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return elements[slot(index)];
+    }
+
+    @Override
+    public boolean add(Entry entry) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[slot(size)] = entry;
+        size++;
+        modCount++;
+        addLine(entry);
+        if (searchIndex != null) {
+            searchIndex.add(entry);
+        }
+        return true;
+    }
+
+    @Override
+    public Entry remove(int index) {
+        Entry entry = get(index);
+        if (index == 0) {
+            elements[head] = null;
+            head = (head + 1) % elements.length;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        modCount++;
+        removeLine(entry);
+        if (searchIndex != null) {
+            // Evicted entries are filtered out at query time, but the index is rebuilt
+            // once they outnumber the live ones; other removals break index ordering
+            if (index != 0 || ++evicted > size) {
+                searchIndex = null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the oldest entry.
+     *
+     * @return the removed entry
+     * @throws NoSuchElementException if the buffer is empty
+     */
+    Entry removeFirst() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return remove(0);
+    }
+
+    /**
+     * Returns the newest entry.
+     *
+     * @return the last entry
+     * @throws NoSuchElementException if the buffer is empty
+     */
+    Entry getLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return elements[slot(size - 1)];
+    }
+
+    /**
+     * Checks whether an entry whose trimmed line is equal to the trimmed
+     * version of the given line is stored in this buffer.
+     *
+     * @param line the line to look for
+     * @return <code>true</code> if a matching entry exists
+     */
+    boolean containsTrimmed(String line) {
+        return lines.containsKey(line.trim());
+    }
+
+    /**
+     * Returns the indexes of the entries which may contain the given term, ignoring case,
+     * building the search index if needed.
+     *
+     * @param term the searched term
+     * @return the candidate indexes in ascending order, or <code>null</code> if the term
+     *         is too short to be looked up
+     * @see SearchIndex#candidates(String, int)
+     */
+    int[] searchCandidates(String term) {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex();
+            evicted = 0;
+            for (int i = 0; i < size; i++) {
+                searchIndex.add(get(i));
+            }
+        }
+        return searchIndex.candidates(term, size > 0 ? get(0).index() : 0);
+    }
+
+    /**
+     * Drops the search index.
+     */
+    void disableSearchIndex() {
+        searchIndex = null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+        lines.clear();
+        if (searchIndex != null) {
+            searchIndex.clear();
+            evicted = 0;
+        }
+    }
+
+    private int slot(int index) {
+        int s = head + index;
+        return s < elements.length ? s : s - elements.length;
+    }
+
+    private void grow() {
+        Entry[] newElements = new Entry[elements.length * 2];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[slot(i)];
+        }
+        elements = newElements;
+        head = 0;
+    }
+
+    private void addLine(Entry entry) {
+        lines.merge(entry.line().trim(), 1, Integer::sum);
+    }
+
+    private void removeLine(Entry entry) {
+        lines.computeIfPresent(entry.line().trim(), (k, v) -> v > 1 ? v - 1 : null);
+    }
+}
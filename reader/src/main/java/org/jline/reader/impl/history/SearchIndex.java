@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.history;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jline.reader.History.Entry;
+
+/**
+ * Inverted trigram index over history entries.
+ * <p>
+ * Each entry line is case folded and split into overlapping three character
+ * sequences; the index maps each of those trigrams to the ascending list of
+ * indexes of the entries containing it. A search term of at least three
+ * characters can then only be contained in entries listed under all of its
+ * trigrams, which are found by intersecting the corresponding lists.
+ * <p>
+ * Entries must be added in increasing index order. Entries evicted from the
+ * history are not removed from the lists, but filtered out at query time.
+ */
+class SearchIndex {
+
+    static final int GRAM = 3;
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    void add(Entry entry) {
+        String line = entry.line();
+        int index = entry.index();
+        for (int i = 0; i + GRAM <= line.length(); i++) {
+            postings.computeIfAbsent(trigram(line, i), k -> new Postings()).add(index);
+        }
+    }
+
+    void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Returns the indexes of the entries which may contain the given term, ignoring case.
+     *
+     * @param term the searched term
+     * @param minIndex the smallest index still present in the history
+     * @return the candidate indexes in ascending order, or <code>null</code>
+     *         if the term is too short to be looked up
+     */
+    int[] candidates(String term, int minIndex) {
+        if (term.length() < GRAM) {
+            return null;
+        }
+        int nb = term.length() - GRAM + 1;
+        Postings[] lists = new Postings[nb];
+        for (int i = 0; i < nb; i++) {
+            Postings p = postings.get(trigram(term, i));
+            if (p == null) {
+                return new int[0];
+            }
+            lists[i] = p;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        // Start from the smallest list and check other lists
+        Postings smallest = lists[0];
+        int[] result = new int[smallest.size];
+        int count = 0;
+        int[] cursors = new int[nb];
+        for (int i = smallest.lowerBound(minIndex); i < smallest.size; i++) {
+            int idx = smallest.data[i];
+            boolean all = true;
+            for (int l = 1; l < nb && all; l++) {
+                if (lists[l] != smallest) {
+                    cursors[l] = lists[l].lowerBound(cursors[l], idx);
+                    all = cursors[l] < lists[l].size && lists[l].data[cursors[l]] == idx;
+                }
+            }
+            if (all) {
+                result[count++] = idx;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static long trigram(CharSequence s, int i) {
+        return ((long) fold(s.charAt(i)) << 32) | ((long) fold(s.charAt(i + 1)) << 16) | fold(s.charAt(i + 2));
+    }
+
+    private static class Postings {
+        int[] data = new int[4];
+        int size;
+
+        void add(int index) {
+            // a trigram repeated in the same line is only recorded once
+            if (size > 0 && data[size - 1] == index) {
+                return;
+            }
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = index;
+        }
+
+        int lowerBound(int index) {
+            return lowerBound(0, index);
+        }
+
+        int lowerBound(int from, int index) {
+            int lo = from;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data[mid] < index) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
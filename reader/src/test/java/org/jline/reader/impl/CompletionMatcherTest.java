@@ -44,4 +44,41 @@ public class CompletionMatcherTest {
         assertEquals("foo", (candidate != null ? candidate.value() : null), "Exact match");
         assertEquals("foo", completionMatcher.getCommonPrefix(), "Common prefix");
     }
+
+    @Test
+    public void testMatchersPrecedence() {
+        List<Candidate> candidates = Arrays.asList(
+                new Candidate("xfoo"), new Candidate("\u001b[1mFoobar\u001b[0m"), new Candidate("bar"));
+        CompletionMatcher completionMatcher = new CompletionMatcherImpl();
+        Parser parser = new DefaultParser();
+        completionMatcher.compile(
+                new HashMap<>(), false, LineReaderImpl.wrap(parser.parse("foo", 3)), true, 0, "");
+        // prefix match takes precedence over substring match, ignoring ansi sequences
+        List<Candidate> matches = completionMatcher.matches(candidates);
+        assertEquals(1, matches.size(), "Number of matches");
+        assertEquals(candidates.get(1), matches.get(0));
+
+        // the same candidates can be matched against a new word
+        completionMatcher.compile(
+                new HashMap<>(), false, LineReaderImpl.wrap(parser.parse("oo", 2)), true, 0, "");
+        matches = completionMatcher.matches(candidates);
+        assertEquals(2, matches.size(), "Number of matches");
+        completionMatcher.compile(
+                new HashMap<>(), false, LineReaderImpl.wrap(parser.parse("ba", 2)), true, 0, "");
+        matches = completionMatcher.matches(candidates);
+        assertEquals(1, matches.size(), "Number of matches");
+        assertEquals("bar", matches.get(0).value());
+    }
+
+    @Test
+    public void testModifiedCandidates() {
+        List<Candidate> candidates = Arrays.asList(new Candidate("foo"), new Candidate("bar"));
+        CompletionMatcher completionMatcher = compileCompletionMatcher("ba");
+        assertEquals("bar", completionMatcher.matches(candidates).get(0).value());
+        // replacing a candidate keeps the size of the list
+        candidates.set(1, new Candidate("baz"));
+        List<Candidate> matches = completionMatcher.matches(candidates);
+        assertEquals(1, matches.size(), "Number of matches");
+        assertEquals("baz", matches.get(0).value());
+    }
 }
@@ -10,6 +10,9 @@ package org.jline.reader.impl;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jline.reader.*;
 import org.jline.reader.LineReader.Option;
@@ -20,6 +23,7 @@ import org.jline.reader.impl.completer.StringsCompleter;
 import org.jline.terminal.Size;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -211,4 +215,63 @@ public class CompletionTest extends ReaderTestSupport {
 
         assertLine("test ", new TestBuffer("test \\\t\n\n"));
     }
+
+    @Test
+    public void testCompleteNarrowing() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        StringsCompleter strings = new StringsCompleter("foobar", "foobaz", "fooqux");
+        reader.setCompleter((reader, line, candidates) -> {
+            calls.incrementAndGet();
+            strings.complete(reader, line, candidates);
+        });
+        reader.unsetOpt(Option.MENU_COMPLETE);
+        reader.unsetOpt(Option.AUTO_LIST);
+        reader.unsetOpt(Option.AUTO_MENU);
+
+        assertBuffer("foobar ", new TestBuffer("f\tb\tr\t"));
+        assertEquals(3, calls.get());
+
+        calls.set(0);
+        reader.setOpt(Option.COMPLETE_NARROWING);
+        assertBuffer("foobar ", new TestBuffer("f\tb\tr\t"));
+        assertEquals(1, calls.get());
+
+        calls.set(0);
+        reader.unsetOpt(Option.COMPLETE_MATCHER_TYPO);
+        assertBuffer("foobar fooqux ", new TestBuffer("f\tb\tr\tf\tq\t"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testAsyncCompleter() throws Exception {
+        reader.unsetOpt(Option.MENU_COMPLETE);
+        reader.unsetOpt(Option.AUTO_LIST);
+        reader.unsetOpt(Option.AUTO_MENU);
+
+        reader.setCompleter((AsyncCompleter) (reader, line, candidates) -> {
+            candidates.accept(new Candidate("foobar"));
+            candidates.accept(new Candidate("foobaz"));
+        });
+        assertBuffer("fooba", new TestBuffer("fo\t"));
+
+        // the request is cancelled when a key is pressed
+        CountDownLatch cancelled = new CountDownLatch(1);
+        reader.setCompleter((AsyncCompleter) (reader, line, candidates) -> {
+            candidates.accept(new Candidate("foobar"));
+            try {
+                while (!candidates.isCancelled()) {
+                    Thread.sleep(10);
+                }
+            } catch (InterruptedException e) {
+                // cancelled
+            }
+            cancelled.countDown();
+        });
+        assertBuffer("fox", new TestBuffer("fo\tx"));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+
+        // the candidates found so far are used when the delay expires
+        reader.setVariable(LineReader.COMPLETION_TIMEOUT, 100);
+        assertBuffer("foobar ", new TestBuffer("fo\t"));
+    }
 }
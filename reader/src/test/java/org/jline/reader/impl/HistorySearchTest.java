@@ -9,6 +9,7 @@
 package org.jline.reader.impl;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.LineReader;
@@ -208,4 +209,66 @@ public class HistorySearchTest extends ReaderTestSupport {
             // expected
         }
     }
+
+    @Test
+    public void testIndexedHistorySearch() throws Exception {
+        history.add("fiddlesticks");
+        history.add("FADdle again");
+        String[] inputs = {"^Rdle^R^R\n", "^Rfad^R^S\n", "^RFad\n", "^Rddl^R^R^R^S^S\n", "^Rxyz\n"};
+        String[] expected = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            in.setIn(new ByteArrayInputStream(translate(inputs[i]).getBytes()));
+            expected[i] = reader.readLine();
+        }
+        history.purge();
+        history.add("foo");
+        history.add("fiddle");
+        history.add("faddle");
+        history.add("fiddlesticks");
+        history.add("FADdle again");
+        reader.setOpt(LineReader.Option.HISTORY_SEARCH_INDEX);
+        try {
+            for (int i = 0; i < inputs.length; i++) {
+                in.setIn(new ByteArrayInputStream(translate(inputs[i]).getBytes()));
+                assertEquals(expected[i], reader.readLine());
+            }
+            assertEquals(history.last() - 6, reader.searchBackwards("fid", history.last() - 5, true));
+            assertEquals(-1, reader.searchBackwards("fiddlex", history.last(), false));
+        } finally {
+            reader.unsetOpt(LineReader.Option.HISTORY_SEARCH_INDEX);
+        }
+    }
+
+    @Test
+    public void testSuggestionScanLimit() throws Exception {
+        reader.setVariable(LineReader.HISTORY_SIZE, 1000);
+        reader.doAutosuggestion = true;
+        reader.autosuggestion = LineReader.SuggestionType.HISTORY;
+        history.attach(reader);
+        history.add("suggested command");
+        for (int i = 0; i < 300; i++) {
+            history.add("other " + i + ";");
+        }
+        try {
+            for (boolean indexed : new boolean[] {false, true}) {
+                if (indexed) {
+                    reader.setOpt(LineReader.Option.HISTORY_SEARCH_INDEX);
+                }
+                // only the most recent entries are looked at
+                assertEquals("", suggestion("sugg"));
+                assertEquals(" 299;", suggestion("other"));
+                assertEquals(";", suggestion("other 98"));
+                assertEquals("", suggestion("other 97"));
+            }
+        } finally {
+            reader.unsetOpt(LineReader.Option.HISTORY_SEARCH_INDEX);
+        }
+    }
+
+    private String suggestion(String buffer) {
+        reader.getBuffer().clear();
+        reader.getBuffer().write(buffer);
+        reader.getDisplayedBufferWithPrompts(new ArrayList<>());
+        return reader.getTailTip();
+    }
 }
@@ -225,4 +225,25 @@ public class LineReaderTest {
             assertEquals("123", written);
         }
     }
+
+    @Test
+    public void testRedisplayCoalescing() throws IOException {
+        for (long maxDelay : new long[] {-1, 60_000}) {
+            ByteArrayInputStream in = new ByteArrayInputStream("abcdefghij\n".getBytes());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (Terminal terminal = new DumbTerminal("terminal", "ansi", in, out, StandardCharsets.UTF_8)) {
+                terminal.setSize(new Size(160, 80));
+                LineReaderImpl r = new LineReaderImpl(terminal);
+                r.setVariable(LineReader.REDISPLAY_MAX_DELAY, maxDelay);
+                assertEquals("abcdefghij", r.readLine("> "));
+                if (maxDelay < 0) {
+                    assertEquals(r.getRedisplayRequestCount(), r.getRedisplayFrameCount());
+                } else {
+                    // characters following the first one are processed before the next frame
+                    assertTrue(r.getRedisplayFrameCount() < r.getRedisplayRequestCount() - 8);
+                }
+                assertTrue(out.toString().contains("> abcdefghij"));
+            }
+        }
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.jline.reader.LineReader;
+import org.jline.terminal.Size;
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedString;
+import org.jline.utils.Display;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the rows and the cursor position computed by {@link LineReaderImpl#redisplay(boolean)}.
+ */
+public class RedisplayTest extends ReaderTestSupport {
+
+    private static final int COLUMNS = 10;
+
+    private RecordingDisplay display;
+
+    @BeforeEach
+    public void setUpDisplay() {
+        reader.size.copy(new Size(COLUMNS, 20));
+        display = new RecordingDisplay(terminal);
+        display.resize(20, COLUMNS);
+        reader.display = display;
+    }
+
+    @Test
+    public void testWrappedLine() {
+        redisplay("> ", "abcdefghijklmnop", 16);
+        assertRows("> abcdefgh", "ijklmnop");
+        assertCursor(1, 8);
+
+        redisplay("> ", "abcdefghijklmnop", 3);
+        assertCursor(0, 5);
+
+        redisplay("> ", "abcdefghijklmnop", 9);
+        assertCursor(1, 1);
+
+        // the cursor stays at the end of a full row
+        redisplay("> ", "abcdefghijklmnop", 8);
+        assertCursor(0, 10);
+
+        redisplay("> ", "abcdefgh", 8);
+        assertRows("> abcdefgh");
+        assertCursor(0, 10);
+
+        display.setDelayLineWrap(true);
+        redisplay("> ", "abcdefghijklmnop", 8);
+        assertRows("> abcdefgh", "ijklmnop");
+        assertCursor(0, 10);
+    }
+
+    @Test
+    public void testSecondaryPrompts() {
+        reader.setVariable(LineReader.SECONDARY_PROMPT_PATTERN, "%N: ");
+        redisplay("> ", "first\nsecond line\nthird", 10);
+        assertRows("> first\n", "1: second ", "line\n", "2: third");
+        assertCursor(1, 7);
+
+        redisplay("> ", "first\nsecond line\nthird", 23);
+        assertCursor(3, 8);
+
+        // the rows of the unchanged lines are reused
+        redisplay("> ", "first\nsecond line\nthird and fourth", 23);
+        assertRows("> first\n", "1: second ", "line\n", "2: third a", "nd fourth");
+        assertCursor(3, 8);
+
+        redisplay("> ", "first line\nsecond line\nthird and fourth", 3);
+        assertRows("> first li", "ne\n", "1: second ", "line\n", "2: third a", "nd fourth");
+        assertCursor(0, 5);
+
+        redisplay("> ", "first line\nsecond line\nthird and fourth", 22);
+        assertCursor(3, 4);
+    }
+
+    @Test
+    public void testMaskedInput() {
+        reader.maskingCallback = new SimpleMaskingCallback('*');
+        redisplay("> ", "secret password", 6);
+        assertRows("> ********", "*******");
+        assertCursor(0, 8);
+
+        redisplay("> ", "secret password", 15);
+        assertCursor(1, 7);
+
+        reader.maskingCallback = new SimpleMaskingCallback((char) 0);
+        redisplay("> ", "secret password", 6);
+        assertRows("> ");
+        assertCursor(0, 2);
+    }
+
+    @Test
+    public void testTabs() {
+        redisplay("> ", "a\tb\tc", 3);
+        assertRows("> a b   c");
+        assertCursor(0, 5);
+
+        redisplay("> ", "a\tb\tc", 5);
+        assertCursor(0, 9);
+
+        redisplay("> ", "a\tb\tc\tde", 8);
+        assertRows("> a b   c ", "  de");
+        assertCursor(1, 4);
+
+        redisplay("\t> ", "ab", 1);
+        assertRows("    > ab");
+        assertCursor(0, 7);
+    }
+
+    @Test
+    public void testWideChars() {
+        redisplay("> ", "\u4e2d\u6587\u4e2d\u6587\u4e2d\u6587", 6);
+        assertRows("> \u4e2d\u6587\u4e2d\u6587", "\u4e2d\u6587");
+        assertCursor(1, 4);
+
+        redisplay("> ", "\u4e2d\u6587\u4e2d\u6587\u4e2d\u6587", 2);
+        assertCursor(0, 6);
+
+        // a wide character which does not fit at the end of a row is wrapped
+        redisplay("> ", "a\u4e2d\u6587\u4e2d\u6587", 4);
+        assertRows("> a\u4e2d\u6587\u4e2d", "\u6587");
+        assertCursor(0, 9);
+
+        redisplay("> ", "a\u4e2d\u6587\u4e2d\u6587", 5);
+        assertCursor(1, 2);
+    }
+
+    private void redisplay(String prompt, String buffer, int cursor) {
+        reader.prompt = new AttributedString(prompt);
+        reader.buf.clear();
+        reader.buf.write(buffer);
+        reader.buf.cursor(cursor);
+        reader.redisplay(false);
+    }
+
+    private void assertRows(String... rows) {
+        assertEquals(
+                Arrays.asList(rows),
+                display.lines.stream().map(AttributedString::toString).collect(Collectors.toList()));
+    }
+
+    private void assertCursor(int row, int column) {
+        assertEquals(reader.size.cursorPos(row, column), display.cursorPos, "row " + row + ", column " + column);
+    }
+
+    private static class RecordingDisplay extends Display {
+        List<AttributedString> lines;
+        int cursorPos;
+
+        RecordingDisplay(Terminal terminal) {
+            super(terminal, false);
+        }
+
+        @Override
+        public void update(List<AttributedString> newLines, int targetCursorPos, boolean flush) {
+            lines = new ArrayList<>(newLines);
+            cursorPos = targetCursorPos;
+        }
+    }
+}
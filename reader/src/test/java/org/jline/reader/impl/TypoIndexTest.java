@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.jline.reader.Candidate;
+import org.jline.reader.CompletionMatcher;
+import org.jline.reader.Parser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TypoIndexTest {
+
+    @Test
+    public void testSameResultsAsDistance() {
+        Random random = new Random(42);
+        String[] keys = new String[2000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = randomWord(random, 1 + random.nextInt(10));
+        }
+        TypoIndex index = new TypoIndex(keys);
+        for (int q = 0; q < 200; q++) {
+            String word = q % 2 == 0 ? randomWord(random, 1 + random.nextInt(8)) : keys[random.nextInt(keys.length)];
+            for (int errors = 1; errors <= 3; errors++) {
+                BitSet expected = new BitSet();
+                for (int i = 0; i < keys.length; i++) {
+                    if (ReaderUtils.distance(word, keys[i]) < errors) {
+                        expected.set(i);
+                    }
+                }
+                assertEquals(expected, index.matches(word, errors), "Matches for " + word + " with " + errors);
+            }
+        }
+    }
+
+    @Test
+    public void testMatcherUsesIndex() {
+        List<Candidate> candidates = Arrays.asList(
+                new Candidate("history"), new Candidate("histogram"), new Candidate("help"), new Candidate("Hostname"));
+        CompletionMatcher matcher = new CompletionMatcherImpl();
+        Parser parser = new DefaultParser();
+        for (int i = 0; i < 2; i++) {
+            // the second call looks typos up in the index
+            matcher.compile(
+                    new HashMap<>(), false, LineReaderImpl.wrap(parser.parse("hstory", 6)), true, 2, "original");
+            List<Candidate> matches = matcher.matches(candidates);
+            assertEquals(1, matches.size(), "Number of matches");
+            assertEquals("history", matches.get(0).value());
+            matcher.compile(
+                    new HashMap<>(), false, LineReaderImpl.wrap(parser.parse("hostnme", 7)), true, 2, "original");
+            matches = matcher.matches(candidates);
+            assertEquals(1, matches.size(), "Number of matches");
+            assertEquals("Hostname", matches.get(0).value());
+        }
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.history;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.ListIterator;
+
+import org.jline.reader.History;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link HistoryBuffer}.
+ */
+public class HistoryBufferTest {
+
+    private static History.Entry entry(int index, String line) {
+        return new DefaultHistory.EntryImpl(index, Instant.now(), line);
+    }
+
+    @Test
+    public void testWrapAround() {
+        HistoryBuffer buffer = new HistoryBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.add(entry(i, "line " + i));
+            if (buffer.size() > 10) {
+                buffer.removeFirst();
+            }
+        }
+        assertEquals(10, buffer.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("line " + (90 + i), buffer.get(i).line());
+        }
+        assertEquals("line 99", buffer.getLast().line());
+        Iterator<History.Entry> it = buffer.iterator();
+        for (int i = 90; i < 100; i++) {
+            assertEquals(i, it.next().index());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testContainsTrimmed() {
+        HistoryBuffer buffer = new HistoryBuffer();
+        buffer.add(entry(0, "  ls -l "));
+        buffer.add(entry(1, "ls -l"));
+        buffer.add(entry(2, "pwd"));
+        assertTrue(buffer.containsTrimmed("ls -l"));
+        assertTrue(buffer.containsTrimmed(" pwd  "));
+        assertFalse(buffer.containsTrimmed("cd"));
+
+        buffer.removeFirst();
+        assertTrue(buffer.containsTrimmed("ls -l"));
+        buffer.removeFirst();
+        assertFalse(buffer.containsTrimmed("ls -l"));
+
+        buffer.clear();
+        assertFalse(buffer.containsTrimmed("pwd"));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testRemoveThroughIterator() {
+        HistoryBuffer buffer = new HistoryBuffer();
+        for (int i = 0; i < 20; i++) {
+            buffer.add(entry(i, "line " + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            buffer.removeFirst();
+        }
+        ListIterator<History.Entry> it = buffer.listIterator(buffer.size());
+        while (it.hasPrevious()) {
+            if (it.previous().index() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(8, buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals(5 + 2 * i, buffer.get(i).index());
+        }
+        assertFalse(buffer.containsTrimmed("line 6"));
+        assertTrue(buffer.containsTrimmed("line 7"));
+    }
+}
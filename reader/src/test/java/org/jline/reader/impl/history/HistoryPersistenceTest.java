@@ -127,4 +127,170 @@ public class HistoryPersistenceTest extends ReaderTestSupport {
     public void testHistoryTrimTimestamped() {
         testHistoryTrim(true);
     }
+
+    @Test
+    public void testLoadTail() throws Exception {
+        reader.unsetOpt(LineReader.Option.HISTORY_TIMESTAMPED);
+        reader.setVariable(LineReader.HISTORY_SIZE, 10);
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+        Files.write(
+                Paths.get("test"),
+                IntStream.range(0, 100).mapToObj(i -> "cmd" + i).collect(toList()));
+
+        DefaultHistory history = new DefaultHistory(reader);
+        assertEquals(10, history.size());
+        assertEquals(90, history.first());
+        assertEquals("cmd90", history.get(90));
+        assertEquals("cmd99", history.get(99));
+
+        // file without a trailing line terminator
+        Files.write(Paths.get("test"), "a\nb\nc".getBytes());
+        reader.setVariable(LineReader.HISTORY_SIZE, 2);
+        history.load();
+        assertEquals(2, history.size());
+        assertEquals(1, history.first());
+        assertEquals("b", history.get(1));
+        assertEquals("c", history.get(2));
+    }
+
+    @Test
+    public void testHistoryBackgroundTrim() throws Exception {
+        reader.unsetOpt(LineReader.Option.HISTORY_INCREMENTAL);
+        reader.unsetOpt(LineReader.Option.HISTORY_TIMESTAMPED);
+        reader.setOpt(LineReader.Option.HISTORY_BACKGROUND_TRIM);
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, 5);
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+
+        DefaultHistory history = new DefaultHistory(reader);
+        for (int i = 0; i < 10; i++) {
+            history.add(Instant.now(), "Hello " + i);
+        }
+        history.save();
+        // the in-memory history is not affected by the trim
+        assertEquals(10, history.size());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        List<String> lines = Files.readAllLines(Paths.get("test"));
+        while (lines.size() > 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            lines = Files.readAllLines(Paths.get("test"));
+        }
+        assertEquals(IntStream.range(5, 10).mapToObj(i -> "Hello " + i).collect(toList()), lines);
+    }
+
+    @Test
+    public void testSharedHistory() throws Exception {
+        reader.setOpt(LineReader.Option.HISTORY_SHARED);
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+
+        DefaultHistory h1 = new DefaultHistory(reader);
+        DefaultHistory h2 = new DefaultHistory(reader);
+        h1.add("a");
+        h2.add("b");
+        h1.add("c");
+        // entries from the other session are imported when saving ...
+        assertEquals(List.of("a", "b"), lines(h2));
+        assertEquals(List.of("a", "b", "c"), lines(h1));
+        // ... or before reading a new line
+        h2.attach(reader);
+        assertEquals(List.of("a", "b", "c"), lines(h2));
+        assertEquals(2, h2.last());
+
+        // unsaved entries stay after the imported ones
+        reader.unsetOpt(LineReader.Option.HISTORY_INCREMENTAL);
+        h2.add("d");
+        h1.add("e");
+        h1.save();
+        h2.attach(reader);
+        assertEquals(List.of("a", "b", "c", "e", "d"), lines(h2));
+        h2.save();
+        assertEquals(List.of("a", "b", "c", "e", "d"), Files.readAllLines(Paths.get("test")).stream()
+                .map(l -> l.substring(l.indexOf(':') + 1))
+                .collect(toList()));
+    }
+
+    @Test
+    public void testSharedHistoryTrim() throws Exception {
+        reader.setOpt(LineReader.Option.HISTORY_SHARED);
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, 4);
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+
+        DefaultHistory h1 = new DefaultHistory(reader);
+        DefaultHistory h2 = new DefaultHistory(reader);
+        for (int i = 0; i < 10; i++) {
+            (i % 2 == 0 ? h1 : h2).add("cmd" + i);
+        }
+        assertEquals(
+                List.of("cmd6", "cmd7", "cmd8", "cmd9"),
+                Files.readAllLines(Paths.get("test")).stream()
+                        .map(l -> l.substring(l.indexOf(':') + 1))
+                        .collect(toList()));
+        // the rewritten file is detected and reloaded
+        h1.attach(reader);
+        assertEquals(List.of("cmd6", "cmd7", "cmd8", "cmd9"), lines(h1));
+    }
+
+    @Test
+    public void testSharedHistoryNotPersisted() throws Exception {
+        reader.setOpt(LineReader.Option.HISTORY_SHARED);
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, 4);
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+
+        DefaultHistory history = new DefaultHistory(reader) {
+            @Override
+            public boolean isPersistable(Entry entry) {
+                return !entry.line().startsWith("-");
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            history.add("cmd" + i);
+            history.add("-" + i);
+        }
+        // only the 5 persisted entries are counted, which does not require a trim yet
+        assertEquals(
+                List.of("cmd0", "cmd1", "cmd2", "cmd3", "cmd4"),
+                Files.readAllLines(Paths.get("test")).stream()
+                        .map(l -> l.substring(l.indexOf(':') + 1))
+                        .collect(toList()));
+    }
+
+    @Test
+    public void testSharedHistoryWrite() throws Exception {
+        reader.setOpt(LineReader.Option.HISTORY_SHARED);
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+
+        DefaultHistory h1 = new DefaultHistory(reader);
+        h1.add("a");
+        h1.add("b");
+        h1.add("c");
+        // the file is rewritten with all the entries, which are kept in memory
+        h1.write(Paths.get("test"), false);
+        assertEquals(List.of("a", "b", "c"), fileLines());
+        assertEquals(List.of("a", "b", "c"), lines(h1));
+
+        // all the entries are appended after the ones of the other session
+        DefaultHistory h2 = new DefaultHistory(reader);
+        h2.add("d");
+        h1.append(Paths.get("test"), false);
+        assertEquals(List.of("a", "b", "c", "d", "a", "b", "c"), fileLines());
+        assertEquals(List.of("a", "b", "c", "d"), lines(h1));
+
+        h1.add("e");
+        h1.write(Paths.get("test"), false);
+        assertEquals(List.of("a", "b", "c", "d", "e"), fileLines());
+        h2.attach(reader);
+        assertEquals(List.of("a", "b", "c", "d", "e"), lines(h2));
+    }
+
+    private static List<String> fileLines() throws IOException {
+        return Files.readAllLines(Paths.get("test")).stream()
+                .map(l -> l.substring(l.indexOf(':') + 1))
+                .collect(toList());
+    }
+
+    private static List<String> lines(DefaultHistory history) {
+        return java.util.stream.StreamSupport.stream(history.spliterator(), false)
+                .map(e -> e.line())
+                .collect(toList());
+    }
 }
@@ -23,8 +23,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -186,4 +188,26 @@ public class HistoryTest extends ReaderTestSupport {
         assertTrue(defaultHistory.matchPatterns("foo:bar", "bar"));
         assertFalse(defaultHistory.matchPatterns("foo*", "bar"));
     }
+
+    @Test
+    public void testSearchCandidates() {
+        assertNull(history.searchCandidates("foo"));
+
+        reader.setOpt(LineReader.Option.HISTORY_SEARCH_INDEX);
+        reader.setVariable(LineReader.HISTORY_SIZE, 4);
+        history.add("ls -l");
+        history.add("git status");
+        history.add("Git Log");
+        history.add("echo digit");
+
+        assertNull(history.searchCandidates("gi"));
+        assertArrayEquals(new int[] {1, 2, 3}, history.searchCandidates("git"));
+        assertArrayEquals(new int[] {1, 2}, history.searchCandidates("GIT "));
+        assertArrayEquals(new int[0], history.searchCandidates("svn"));
+
+        // evicted entries are no longer returned
+        history.add("gitk");
+        history.add("make");
+        assertArrayEquals(new int[] {2, 3, 4}, history.searchCandidates("git"));
+    }
 }
@@ -163,6 +163,11 @@ public abstract class AbstractPty implements Pty {
             }
         }
 
+        @Override
+        public int available() throws IOException {
+            return (c != 0 ? 1 : 0) + in.available();
+        }
+
         private void setNonBlocking() {
             if (current == null
                     || current.getControlChar(Attributes.ControlChar.VMIN) != 0
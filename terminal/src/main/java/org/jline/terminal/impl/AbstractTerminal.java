@@ -78,6 +78,8 @@ public abstract class AbstractTerminal implements TerminalExt {
     protected final Set<Capability> bools = new HashSet<>();
     protected final Map<Capability, Integer> ints = new HashMap<>();
     protected final Map<Capability, String> strings = new HashMap<>();
+    // Compiled string capabilities, recompiled when the capability is changed
+    private final Map<Capability, Curses.Program> programs = new ConcurrentHashMap<>();
     protected final ColorPalette palette;
     protected Status status;
     protected Runnable onClose;
@@ -244,7 +246,12 @@ public abstract class AbstractTerminal implements TerminalExt {
         if (str == null) {
             return false;
         }
-        Curses.tputs(writer(), str, params);
+        Curses.Program program = programs.get(capability);
+        if (program == null || !str.equals(program.getSource())) {
+            program = Curses.compile(str);
+            programs.put(capability, program);
+        }
+        program.execute(writer(), params);
         return true;
     }
 
@@ -156,6 +156,11 @@ public class DumbTerminal extends AbstractTerminal {
                     return c;
                 }
             }
+
+            @Override
+            public int available() throws IOException {
+                return nbis.available();
+            }
         };
         this.output = out;
         this.reader = NonBlocking.nonBlocking(getName(), input, inputEncoding());
@@ -85,6 +85,8 @@ public class LineDisciplineTerminal extends AbstractTerminal {
 
     private static final int PIPE_SIZE = 1024;
 
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
     /*
      * Master output stream
      */
@@ -102,6 +104,14 @@ public class LineDisciplineTerminal extends AbstractTerminal {
     protected final NonBlockingReader slaveReader;
     protected final PrintWriter slaveWriter;
     protected final OutputStream slaveOutput;
+    private final FilteringOutputStream filteringOutput;
+
+    /*
+     * Whether a subclass overrides the per-byte hooks, in which case
+     * every byte is handed to them instead of being copied in bulk
+     */
+    private final boolean perByteInput;
+    private final boolean perByteOutput;
 
     /**
      * Console data
@@ -139,14 +149,29 @@ public class LineDisciplineTerminal extends AbstractTerminal {
         this.slaveInputPipe = input.getOutputStream();
         this.slaveInput = input;
         this.slaveReader = NonBlocking.nonBlocking(getName(), slaveInput, inputEncoding());
-        this.slaveOutput = new FilteringOutputStream();
+        this.filteringOutput = new FilteringOutputStream();
+        this.slaveOutput = filteringOutput;
         this.slaveWriter = new PrintWriter(new OutputStreamWriter(slaveOutput, outputEncoding()));
         this.masterOutput = masterOutput;
         this.attributes = getDefaultTerminalAttributes();
         this.size = new Size(160, 50);
+        this.perByteInput = overrides(getClass(), "doProcessInputByte");
+        this.perByteOutput = overrides(getClass(), "processOutputByte");
         parseInfoCmp();
     }
 
+    private static boolean overrides(Class<?> cls, String name) {
+        for (Class<?> c = cls; c != LineDisciplineTerminal.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, int.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // check the superclass
+            }
+        }
+        return false;
+    }
+
     private static Attributes getDefaultTerminalAttributes() {
         // speed 9600 baud; 24 rows; 80 columns;
         // lflags: icanon isig iexten echo echoe -echok echoke -echonl echoctl
@@ -269,7 +294,7 @@ public class LineDisciplineTerminal extends AbstractTerminal {
         boolean flushOut = doProcessInputByte(c);
         slaveInputPipe.flush();
         if (flushOut) {
-            masterOutput.flush();
+            filteringOutput.flush();
         }
     }
 
@@ -279,15 +304,60 @@ public class LineDisciplineTerminal extends AbstractTerminal {
 
     public void processInputBytes(byte[] input, int offset, int length) throws IOException {
         boolean flushOut = false;
-        for (int i = 0; i < length; i++) {
-            flushOut |= doProcessInputByte(input[offset + i]);
+        int end = offset + length;
+        int start = offset;
+        if (perByteInput) {
+            for (int i = offset; i < end; i++) {
+                flushOut |= doProcessInputByte(input[i]);
+            }
+            start = end;
+        }
+        while (start < end) {
+            // Bytes which are not translated are copied in bulk,
+            // other bytes are processed one at a time
+            boolean isig = attributes.getLocalFlag(LocalFlag.ISIG);
+            int vintr = attributes.getControlChar(ControlChar.VINTR);
+            int vquit = attributes.getControlChar(ControlChar.VQUIT);
+            int vsusp = attributes.getControlChar(ControlChar.VSUSP);
+            int vstatus = attributes.getControlChar(ControlChar.VSTATUS);
+            int i = start;
+            while (i < end) {
+                int c = input[i];
+                if (c == '\r' || c == '\n' || isig && (c == vintr || c == vquit || c == vsusp || c == vstatus)) {
+                    break;
+                }
+                i++;
+            }
+            if (i > start) {
+                skipNextLf = false;
+                if (attributes.getLocalFlag(LocalFlag.ECHO)) {
+                    processOutputBytes(input, start, i - start);
+                    flushOut = true;
+                }
+                slaveInputPipe.write(input, start, i - start);
+            }
+            if (i < end) {
+                flushOut |= doProcessInputByte(input[i]);
+                i++;
+            }
+            start = i;
         }
         slaveInputPipe.flush();
         if (flushOut) {
-            masterOutput.flush();
+            filteringOutput.flush();
         }
     }
 
+    /**
+     * Processes a single input byte.
+     * When a subclass overrides this method, {@link #processInputBytes(byte[], int, int)}
+     * calls it for every byte, otherwise it is only called for the bytes which need
+     * translating (CR, LF and the signal characters).
+     *
+     * @param c the input byte
+     * @return whether the output needs to be flushed
+     * @throws IOException if anything wrong happens
+     */
     protected boolean doProcessInputByte(int c) throws IOException {
         if (attributes.getLocalFlag(LocalFlag.ISIG)) {
             if (c == attributes.getControlChar(ControlChar.VINTR)) {
@@ -337,6 +407,8 @@ public class LineDisciplineTerminal extends AbstractTerminal {
     /**
      * Master output processing.
      * All data going to the master should be provided by this method.
+     * When a subclass overrides this method, {@link #processOutputBytes(byte[], int, int)}
+     * calls it for every byte instead of copying runs of bytes in bulk.
      *
      * @param c the output byte
      * @throws IOException if anything wrong happens
@@ -345,13 +417,46 @@ public class LineDisciplineTerminal extends AbstractTerminal {
         if (attributes.getOutputFlag(OutputFlag.OPOST)) {
             if (c == '\n') {
                 if (attributes.getOutputFlag(OutputFlag.ONLCR)) {
-                    masterOutput.write('\r');
-                    masterOutput.write('\n');
+                    filteringOutput.put('\r');
+                    filteringOutput.put('\n');
                     return;
                 }
             }
         }
-        masterOutput.write(c);
+        filteringOutput.put(c);
+    }
+
+    /**
+     * Master output processing of a buffer.
+     * Runs of bytes which do not need any translation are copied in bulk.
+     *
+     * @param b the output bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @throws IOException if anything wrong happens
+     */
+    protected void processOutputBytes(byte[] b, int off, int len) throws IOException {
+        if (perByteOutput) {
+            for (int i = 0; i < len; i++) {
+                processOutputByte(b[off + i]);
+            }
+            return;
+        }
+        if (!attributes.getOutputFlag(OutputFlag.OPOST) || !attributes.getOutputFlag(OutputFlag.ONLCR)) {
+            filteringOutput.put(b, off, len);
+            return;
+        }
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                filteringOutput.put(b, start, i - start);
+                filteringOutput.put('\r');
+                filteringOutput.put('\n');
+                start = i + 1;
+            }
+        }
+        filteringOutput.put(b, start, end - start);
     }
 
     protected void processIOException(IOException ioException) {
@@ -384,15 +489,21 @@ public class LineDisciplineTerminal extends AbstractTerminal {
         return null;
     }
 
+    /**
+     * The slave output stream.  Processed bytes are buffered and written to
+     * the master output when the buffer is full or the stream is flushed.
+     */
     private class FilteringOutputStream extends OutputStream {
+        private final byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+        private int count;
+
         @Override
-        public void write(int b) throws IOException {
+        public synchronized void write(int b) throws IOException {
             processOutputByte(b);
-            flush();
         }
 
         @Override
-        public void write(byte[] b, int off, int len) throws IOException {
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
             if (b == null) {
                 throw new NullPointerException();
             } else if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0)) {
@@ -400,20 +511,50 @@ public class LineDisciplineTerminal extends AbstractTerminal {
             } else if (len == 0) {
                 return;
             }
-            for (int i = 0; i < len; i++) {
-                processOutputByte(b[off + i]);
+            processOutputBytes(b, off, len);
+        }
+
+        synchronized void put(int b) throws IOException {
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        synchronized void put(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - count) {
+                drain();
+                if (len >= buffer.length) {
+                    masterOutput.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        private void drain() throws IOException {
+            if (count > 0) {
+                masterOutput.write(buffer, 0, count);
+                count = 0;
             }
-            flush();
         }
 
         @Override
-        public void flush() throws IOException {
+        public synchronized void flush() throws IOException {
+            drain();
             masterOutput.flush();
         }
 
         @Override
         public void close() throws IOException {
-            masterOutput.close();
+            try {
+                synchronized (this) {
+                    drain();
+                }
+            } finally {
+                masterOutput.close();
+            }
         }
     }
 }
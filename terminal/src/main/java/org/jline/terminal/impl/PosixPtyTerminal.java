@@ -228,6 +228,11 @@ public class PosixPtyTerminal extends AbstractPosixTerminal {
             return in.read(timeout, isPeek);
         }
 
+        @Override
+        public int available() throws IOException {
+            return closed ? 0 : in.available();
+        }
+
         @Override
         public void close() throws IOException {
             closed = true;
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import org.jline.terminal.Terminal;
+import org.jline.terminal.impl.AbstractWindowsTerminal;
+import org.jline.utils.AttributedCharSequence.ForceMode;
+import org.jline.utils.InfoCmp.Capability;
+
+import static org.jline.utils.AttributedCharSequence.DISABLE_ALTERNATE_CHARSET;
+import static org.jline.utils.AttributedStyle.BG_COLOR;
+import static org.jline.utils.AttributedStyle.BG_COLOR_EXP;
+import static org.jline.utils.AttributedStyle.FG_COLOR;
+import static org.jline.utils.AttributedStyle.FG_COLOR_EXP;
+import static org.jline.utils.AttributedStyle.F_BACKGROUND;
+import static org.jline.utils.AttributedStyle.F_BACKGROUND_IND;
+import static org.jline.utils.AttributedStyle.F_BACKGROUND_RGB;
+import static org.jline.utils.AttributedStyle.F_BLINK;
+import static org.jline.utils.AttributedStyle.F_BOLD;
+import static org.jline.utils.AttributedStyle.F_CONCEAL;
+import static org.jline.utils.AttributedStyle.F_CROSSED_OUT;
+import static org.jline.utils.AttributedStyle.F_FAINT;
+import static org.jline.utils.AttributedStyle.F_FOREGROUND;
+import static org.jline.utils.AttributedStyle.F_FOREGROUND_IND;
+import static org.jline.utils.AttributedStyle.F_FOREGROUND_RGB;
+import static org.jline.utils.AttributedStyle.F_HIDDEN;
+import static org.jline.utils.AttributedStyle.F_INVERSE;
+import static org.jline.utils.AttributedStyle.F_ITALIC;
+import static org.jline.utils.AttributedStyle.F_UNDERLINE;
+import static org.jline.utils.AttributedStyle.MASK;
+
+/**
+ * Encodes attributed character sequences with ANSI escape sequences.
+ * <p>
+ * The characters are appended by runs of characters with the same style, directly
+ * to the target {@link Appendable}, and the SGR sequence switching from a style to
+ * another is only computed the first time the encoder meets this change of style.
+ * <p>
+ * An encoder is not thread safe, and must not be kept once the palette it uses
+ * has been modified.
+ */
+final class AnsiEncoder {
+
+    private static final int HIGH_COLORS = 0x7FFF;
+    private static final int CACHE_SIZE = 64;
+
+    private final int colors;
+    private final ForceMode force;
+    private final ColorPalette palette;
+    private final String altIn;
+    private final String altOut;
+    private final boolean plain;
+    // Direct-mapped cache of the SGR sequences, indexed by the previous and the new styles
+    private long[] cachedFrom;
+    private long[] cachedTo;
+    private String[] cachedSgr;
+
+    /**
+     * Creates an encoder for the capabilities of the given terminal.
+     *
+     * @param terminal the terminal, or <code>null</code> to use the default capabilities
+     * @return the encoder
+     */
+    static AnsiEncoder of(Terminal terminal) {
+        if (terminal != null && Terminal.TYPE_DUMB.equals(terminal.getType())) {
+            return new AnsiEncoder();
+        }
+        int colors = 256;
+        ForceMode forceMode = ForceMode.None;
+        ColorPalette palette = null;
+        String alternateIn = null, alternateOut = null;
+        if (terminal != null) {
+            Integer max_colors = terminal.getNumericCapability(Capability.max_colors);
+            if (max_colors != null) {
+                colors = max_colors;
+            }
+            if (AbstractWindowsTerminal.TYPE_WINDOWS_256_COLOR.equals(terminal.getType())
+                    || AbstractWindowsTerminal.TYPE_WINDOWS_CONEMU.equals(terminal.getType())) {
+                forceMode = ForceMode.Force256Colors;
+            }
+            palette = terminal.getPalette();
+            if (!DISABLE_ALTERNATE_CHARSET) {
+                alternateIn = Curses.tputs(terminal.getStringCapability(Capability.enter_alt_charset_mode));
+                alternateOut = Curses.tputs(terminal.getStringCapability(Capability.exit_alt_charset_mode));
+            }
+        }
+        return new AnsiEncoder(colors, forceMode, palette, alternateIn, alternateOut);
+    }
+
+    /**
+     * Creates an encoder which drops the styles.
+     */
+    private AnsiEncoder() {
+        this.colors = 0;
+        this.force = ForceMode.None;
+        this.palette = null;
+        this.altIn = null;
+        this.altOut = null;
+        this.plain = true;
+    }
+
+    /**
+     * Creates an encoder.
+     *
+     * @param colors the number of colors to use
+     * @param force the force mode to use for color rendering
+     * @param palette the color palette to use for color conversion, or null for the default palette
+     * @param altIn the sequence to enable the alternate character set, or null to disable
+     * @param altOut the sequence to disable the alternate character set, or null to disable
+     */
+    AnsiEncoder(int colors, ForceMode force, ColorPalette palette, String altIn, String altOut) {
+        this.colors = colors;
+        this.force = force;
+        this.palette = palette != null ? palette : ColorPalette.DEFAULT;
+        this.altIn = altIn != null && altOut != null ? altIn : null;
+        this.altOut = altIn != null && altOut != null ? altOut : null;
+        this.plain = false;
+    }
+
+    /**
+     * Appends the given sequence with its styles encoded.
+     *
+     * @param str the sequence to encode
+     * @param out the target
+     * @throws IOException if the target can not be written
+     */
+    void encode(AttributedCharSequence str, Appendable out) throws IOException {
+        char[] buffer = str.buffer();
+        int offset = str.offset();
+        int length = str.length();
+        if (plain) {
+            append(out, buffer, offset, offset + length);
+            return;
+        }
+        long style = 0;
+        boolean alt = false;
+        int i = 0;
+        while (i < length) {
+            long s = str.styleCodeAt(i) & ~F_HIDDEN; // The hidden flag does not change the ansi styles
+            int end = i + 1;
+            while (end < length && (str.styleCodeAt(end) & ~F_HIDDEN) == s) {
+                end++;
+            }
+            if (altIn != null) {
+                // The character set is switched before the style
+                char c = buffer[offset + i];
+                if (alt != (altChar(c) != c)) {
+                    alt = !alt;
+                    out.append(alt ? altIn : altOut);
+                }
+            }
+            if (style != s) {
+                out.append(sgr(style, s));
+                style = s;
+            }
+            if (altIn != null) {
+                int from = i;
+                for (int j = i; j < end; j++) {
+                    char c = buffer[offset + j];
+                    char ac = altChar(c);
+                    if (ac != c) {
+                        append(out, buffer, offset + from, offset + j);
+                        if (!alt) {
+                            alt = true;
+                            out.append(altIn);
+                        }
+                        out.append(ac);
+                        from = j + 1;
+                    } else if (alt) {
+                        alt = false;
+                        out.append(altOut);
+                    }
+                }
+                append(out, buffer, offset + from, offset + end);
+            } else {
+                append(out, buffer, offset + i, offset + end);
+            }
+            i = end;
+        }
+        if (alt) {
+            out.append(altOut);
+        }
+        if (style != 0) {
+            out.append("\033[0m");
+        }
+    }
+
+    private static void append(Appendable out, char[] buffer, int start, int end) throws IOException {
+        if (start < end) {
+            if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(buffer, start, end - start);
+            } else if (out instanceof Writer) {
+                ((Writer) out).write(buffer, start, end - start);
+            } else {
+                out.append(CharBuffer.wrap(buffer, start, end - start));
+            }
+        }
+    }
+
+    private static char altChar(char c) {
+        // @spotless:off
+        switch (c) {
+            case '┘': return 'j';
+            case '┐': return 'k';
+            case '┌': return 'l';
+            case '└': return 'm';
+            case '┼': return 'n';
+            case '─': return 'q';
+            case '├': return 't';
+            case '┤': return 'u';
+            case '┴': return 'v';
+            case '┬': return 'w';
+            case '│': return 'x';
+            default: return c;
+        }
+        // @spotless:on
+    }
+
+    /**
+     * Returns the SGR sequence switching from a style to another.
+     */
+    private String sgr(long style, long s) {
+        if (cachedSgr == null) {
+            cachedFrom = new long[CACHE_SIZE];
+            cachedTo = new long[CACHE_SIZE];
+            cachedSgr = new String[CACHE_SIZE];
+        }
+        long h = (style * 31 + s) * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h >>> 58);
+        if (cachedSgr[slot] == null || cachedFrom[slot] != style || cachedTo[slot] != s) {
+            cachedFrom[slot] = style;
+            cachedTo[slot] = s;
+            cachedSgr[slot] = computeSgr(style, s);
+        }
+        return cachedSgr[slot];
+    }
+
+    private String computeSgr(long style, long s) {
+        if (s == 0) {
+            return "\033[0m";
+        }
+        // The colors of the previous style are the current colors of the terminal
+        long foreground = (style & F_FOREGROUND) != 0 ? style & (FG_COLOR | F_FOREGROUND) : 0;
+        long background = (style & F_BACKGROUND) != 0 ? style & (BG_COLOR | F_BACKGROUND) : 0;
+        long d = (style ^ s) & MASK;
+        long fg = (s & F_FOREGROUND) != 0 ? s & (FG_COLOR | F_FOREGROUND) : 0;
+        long bg = (s & F_BACKGROUND) != 0 ? s & (BG_COLOR | F_BACKGROUND) : 0;
+        StringBuilder sb = new StringBuilder();
+        sb.append("\033[");
+        boolean first = true;
+        if ((d & F_ITALIC) != 0) {
+            first = attr(sb, (s & F_ITALIC) != 0 ? "3" : "23", first);
+        }
+        if ((d & F_UNDERLINE) != 0) {
+            first = attr(sb, (s & F_UNDERLINE) != 0 ? "4" : "24", first);
+        }
+        if ((d & F_BLINK) != 0) {
+            first = attr(sb, (s & F_BLINK) != 0 ? "5" : "25", first);
+        }
+        if ((d & F_INVERSE) != 0) {
+            first = attr(sb, (s & F_INVERSE) != 0 ? "7" : "27", first);
+        }
+        if ((d & F_CONCEAL) != 0) {
+            first = attr(sb, (s & F_CONCEAL) != 0 ? "8" : "28", first);
+        }
+        if ((d & F_CROSSED_OUT) != 0) {
+            first = attr(sb, (s & F_CROSSED_OUT) != 0 ? "9" : "29", first);
+        }
+        if (foreground != fg) {
+            if (fg > 0) {
+                int rounded = -1;
+                if ((fg & F_FOREGROUND_RGB) != 0) {
+                    int r = (int) (fg >> (FG_COLOR_EXP + 16)) & 0xFF;
+                    int g = (int) (fg >> (FG_COLOR_EXP + 8)) & 0xFF;
+                    int b = (int) (fg >> FG_COLOR_EXP) & 0xFF;
+                    if (colors >= HIGH_COLORS) {
+                        first = attr(sb, "38;2;" + r + ";" + g + ";" + b, first);
+                    } else {
+                        rounded = palette.round(r, g, b);
+                    }
+                } else if ((fg & F_FOREGROUND_IND) != 0) {
+                    rounded = palette.round((int) (fg >> FG_COLOR_EXP) & 0xFF);
+                }
+                if (rounded >= 0) {
+                    if (colors >= HIGH_COLORS && force == ForceMode.ForceTrueColors) {
+                        int col = palette.getColor(rounded);
+                        int r = (col >> 16) & 0xFF;
+                        int g = (col >> 8) & 0xFF;
+                        int b = col & 0xFF;
+                        first = attr(sb, "38;2;" + r + ";" + g + ";" + b, first);
+                    } else if (force == ForceMode.Force256Colors || rounded >= 16) {
+                        first = attr(sb, "38;5;" + rounded, first);
+                    } else if (rounded >= 8) {
+                        first = attr(sb, "9" + (rounded - 8), first);
+                        // small hack to force setting bold again after a foreground color change
+                        d |= (s & F_BOLD);
+                    } else {
+                        first = attr(sb, "3" + rounded, first);
+                        // small hack to force setting bold again after a foreground color change
+                        d |= (s & F_BOLD);
+                    }
+                }
+            } else {
+                first = attr(sb, "39", first);
+            }
+        }
+        if (background != bg) {
+            if (bg > 0) {
+                int rounded = -1;
+                if ((bg & F_BACKGROUND_RGB) != 0) {
+                    int r = (int) (bg >> (BG_COLOR_EXP + 16)) & 0xFF;
+                    int g = (int) (bg >> (BG_COLOR_EXP + 8)) & 0xFF;
+                    int b = (int) (bg >> BG_COLOR_EXP) & 0xFF;
+                    if (colors >= HIGH_COLORS) {
+                        first = attr(sb, "48;2;" + r + ";" + g + ";" + b, first);
+                    } else {
+                        rounded = palette.round(r, g, b);
+                    }
+                } else if ((bg & F_BACKGROUND_IND) != 0) {
+                    rounded = palette.round((int) (bg >> BG_COLOR_EXP) & 0xFF);
+                }
+                if (rounded >= 0) {
+                    if (colors >= HIGH_COLORS && force == ForceMode.ForceTrueColors) {
+                        int col = palette.getColor(rounded);
+                        int r = (col >> 16) & 0xFF;
+                        int g = (col >> 8) & 0xFF;
+                        int b = col & 0xFF;
+                        first = attr(sb, "48;2;" + r + ";" + g + ";" + b, first);
+                    } else if (force == ForceMode.Force256Colors || rounded >= 16) {
+                        first = attr(sb, "48;5;" + rounded, first);
+                    } else if (rounded >= 8) {
+                        first = attr(sb, "10" + (rounded - 8), first);
+                    } else {
+                        first = attr(sb, "4" + rounded, first);
+                    }
+                }
+            } else {
+                first = attr(sb, "49", first);
+            }
+        }
+        if ((d & (F_BOLD | F_FAINT)) != 0) {
+            if ((d & F_BOLD) != 0 && (s & F_BOLD) == 0 || (d & F_FAINT) != 0 && (s & F_FAINT) == 0) {
+                first = attr(sb, "22", first);
+            }
+            if ((d & F_BOLD) != 0 && (s & F_BOLD) != 0) {
+                first = attr(sb, "1", first);
+            }
+            if ((d & F_FAINT) != 0 && (s & F_FAINT) != 0) {
+                first = attr(sb, "2", first);
+            }
+        }
+        sb.append("m");
+        return sb.toString();
+    }
+
+    private static boolean attr(StringBuilder sb, String s, boolean first) {
+        if (!first) {
+            sb.append(";");
+        }
+        sb.append(s);
+        return false;
+    }
+}
@@ -57,6 +57,7 @@ public class ColorPalette {
     private final Terminal terminal;
     private String distanceName;
     private Colors.Distance distance;
+    private Colors.Quantizer quantizer;
     private boolean osc4;
     private int[] palette;
 
@@ -91,6 +92,8 @@ public class ColorPalette {
      */
     public void setDistance(String name) {
         this.distanceName = name;
+        this.distance = null;
+        this.quantizer = null;
     }
 
     /**
@@ -116,6 +119,7 @@ public class ColorPalette {
     }
 
     protected void loadPalette(boolean doLoad) throws IOException {
+        this.quantizer = null;
         if (terminal != null) {
             int[] pal = doLoad ? doLoad(terminal) : null;
             if (pal != null) {
@@ -164,6 +168,10 @@ public class ColorPalette {
      */
     public void setColor(int index, int color) {
         palette[index] = color;
+        quantizer = null;
+        if (palette == Colors.DEFAULT_COLORS_256) {
+            Colors.paletteChanged();
+        }
         if (canChange()) {
             String initc = terminal.getStringCapability(InfoCmp.Capability.initialize_color);
             if (initc != null || osc4) {
@@ -186,16 +194,25 @@ public class ColorPalette {
     }
 
     public int round(int r, int g, int b) {
-        return Colors.roundColor((r << 16) + (g << 8) + b, palette, palette.length, getDist());
+        return getQuantizer().round((r << 16) + (g << 8) + b);
     }
 
     public int round(int col) {
         if (col >= palette.length) {
-            col = Colors.roundColor(DEFAULT.getColor(col), palette, palette.length, getDist());
+            col = getQuantizer().round(DEFAULT.getColor(col));
         }
         return col;
     }
 
+    private Colors.Quantizer getQuantizer() {
+        Colors.Quantizer q = quantizer;
+        if (q == null) {
+            q = new Colors.Quantizer(palette, palette.length, getDist());
+            quantizer = q;
+        }
+        return q;
+    }
+
     protected Colors.Distance getDist() {
         if (distance == null) {
             distance = Colors.getDistance(distanceName);
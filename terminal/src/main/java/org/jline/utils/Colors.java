@@ -13,8 +13,12 @@ import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleBiFunction;
 import java.util.stream.Stream;
 
 import static org.jline.terminal.TerminalBuilder.PROP_COLOR_DISTANCE;
@@ -208,13 +212,13 @@ public class Colors {
     public static int roundColor(int col, int max, String dist) {
         if (col >= max) {
             int c = COLORS_256[col];
-            col = roundColor(c, COLORS_256, max, dist);
+            col = quantizer(max, dist).round(c);
         }
         return col;
     }
 
     public static int roundRgbColor(int r, int g, int b, int max) {
-        return roundColor((r << 16) + (g << 8) + b, COLORS_256, max, (String) null);
+        return quantizer(max, null).round((r << 16) + (g << 8) + b);
     }
 
     static int roundColor(int color, int[] colors, int max, String dist) {
@@ -239,72 +243,104 @@ public class Colors {
         return best_index;
     }
 
+    private static final Map<String, NamedDistance> DISTANCES = new ConcurrentHashMap<>();
+    // The quantizers of the 256 colors palette, indexed by the number of colors they round to
+    private static final Map<Distance, Quantizer[]> QUANTIZERS = new ConcurrentHashMap<>();
+    // The distance named by the system property, resolved once
+    private static volatile Distance defaultDistance;
+
     static Distance getDistance(String dist) {
         if (dist == null) {
             dist = System.getProperty(PROP_COLOR_DISTANCE, "cie76");
         }
-        return new NamedDistance(dist, doGetDistance(dist));
+        NamedDistance distance = DISTANCES.get(dist);
+        if (distance == null) {
+            distance = doGetDistance(dist);
+            DISTANCES.put(dist, distance);
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the quantizer rounding colors to the first colors of the 256 colors palette,
+     * using the distance named by the system property if <code>dist</code> is <code>null</code>.
+     */
+    static Quantizer quantizer(int max, String dist) {
+        Distance distance = dist != null ? getDistance(dist) : defaultDistance();
+        Quantizer[] quantizers = QUANTIZERS.computeIfAbsent(distance, d -> new Quantizer[257]);
+        if (max < 0 || max >= quantizers.length) {
+            return new Quantizer(COLORS_256, max, distance);
+        }
+        Quantizer quantizer = quantizers[max];
+        if (quantizer == null || !quantizer.isFor(COLORS_256)) {
+            quantizer = new Quantizer(COLORS_256, max, distance);
+            quantizers[max] = quantizer;
+        }
+        return quantizer;
     }
 
-    private static Distance doGetDistance(String dist) {
+    private static Distance defaultDistance() {
+        Distance distance = defaultDistance;
+        if (distance == null) {
+            distance = getDistance(null);
+            defaultDistance = distance;
+        }
+        return distance;
+    }
+
+    /**
+     * Discards the quantizers of the 256 colors palette, which must be called when it is modified.
+     */
+    static void paletteChanged() {
+        QUANTIZERS.clear();
+    }
+
+    private static NamedDistance doGetDistance(String dist) {
         if (dist.equals("rgb")) {
-            return (p1, p2) -> {
-                // rgb: see https://www.compuphase.com/cmetric.htm
-                double[] c1 = rgb(p1);
-                double[] c2 = rgb(p2);
+            // rgb: see https://www.compuphase.com/cmetric.htm
+            return new NamedDistance(dist, Colors::rgb, (c1, c2) -> {
                 double rmean = (c1[0] + c2[0]) / 2.0;
                 double[] w = {2.0 + rmean, 4.0, 3.0 - rmean};
                 return scalar(c1, c2, w);
-            };
+            });
         }
         if (dist.matches("rgb\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
-            return (p1, p2) -> scalar(rgb(p1), rgb(p2), getWeights(dist));
+            double[] w = getWeights(dist);
+            return new NamedDistance(dist, Colors::rgb, (c1, c2) -> scalar(c1, c2, w));
         }
         if (dist.equals("lab") || dist.equals("cie76")) {
-            return (p1, p2) -> scalar(rgb2cielab(p1), rgb2cielab(p2));
+            return new NamedDistance(dist, Colors::rgb2cielab, Colors::scalar);
         }
         if (dist.matches("lab\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
             double[] w = getWeights(dist);
-            return (p1, p2) -> scalar(rgb2cielab(p1), rgb2cielab(p2), new double[] {w[0], w[1], w[1]});
+            double[] w3 = new double[] {w[0], w[1], w[1]};
+            return new NamedDistance(dist, Colors::rgb2cielab, (c1, c2) -> scalar(c1, c2, w3));
         }
         if (dist.equals("cie94")) {
-            return (p1, p2) -> cie94(rgb2cielab(p1), rgb2cielab(p2));
+            return new NamedDistance(dist, Colors::rgb2cielab, Colors::cie94);
         }
         if (dist.equals("cie00") || dist.equals("cie2000")) {
-            return (p1, p2) -> cie00(rgb2cielab(p1), rgb2cielab(p2));
+            return new NamedDistance(dist, Colors::rgb2cielab, Colors::cie00);
         }
         if (dist.equals("cam02")) {
-            return (p1, p2) -> cam02(p1, p2, sRGB_typical_environment);
+            return new NamedDistance(dist, c -> jmh2ucs(camlch(c, sRGB_typical_environment)), Colors::scalar);
         }
         if (dist.equals("camlab")) {
-            return (p1, p2) -> {
-                double[] c1 = camlab(p1, sRGB_typical_environment);
-                double[] c2 = camlab(p2, sRGB_typical_environment);
-                return scalar(c1, c2);
-            };
+            return new NamedDistance(dist, c -> camlab(c, sRGB_typical_environment), Colors::scalar);
         }
         if (dist.matches("camlab\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
-            return (p1, p2) -> {
-                double[] c1 = camlab(p1, sRGB_typical_environment);
-                double[] c2 = camlab(p2, sRGB_typical_environment);
-                double[] w = getWeights(dist);
-                return scalar(c1, c2, new double[] {w[0], w[1], w[1]});
-            };
+            double[] w = getWeights(dist);
+            double[] w3 = new double[] {w[0], w[1], w[1]};
+            return new NamedDistance(
+                    dist, c -> camlab(c, sRGB_typical_environment), (c1, c2) -> scalar(c1, c2, w3));
         }
         if (dist.matches("camlch")) {
-            return (p1, p2) -> {
-                double[] c1 = camlch(p1, sRGB_typical_environment);
-                double[] c2 = camlch(p2, sRGB_typical_environment);
-                return camlch(c1, c2);
-            };
+            return new NamedDistance(dist, c -> camlch(c, sRGB_typical_environment), Colors::camlch);
         }
         if (dist.matches("camlch\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
-            return (p1, p2) -> {
-                double[] c1 = camlch(p1, sRGB_typical_environment);
-                double[] c2 = camlch(p2, sRGB_typical_environment);
-                double[] w = getWeights(dist);
-                return camlch(c1, c2, w);
-            };
+            double[] w = getWeights(dist);
+            return new NamedDistance(
+                    dist, c -> camlch(c, sRGB_typical_environment), (c1, c2) -> camlch(c1, c2, w));
         }
         throw new IllegalArgumentException("Unsupported distance function: " + dist);
     }
@@ -323,18 +359,25 @@ public class Colors {
         return sqr(c1[0] - c2[0]) + sqr(c1[1] - c2[1]) + sqr(c1[2] - c2[2]);
     }
 
+    /**
+     * A distance computed between the coordinates of the colors in a color space,
+     * so that the coordinates of the colors of a palette can be computed once.
+     */
     private static class NamedDistance implements Distance {
         private final String name;
-        private final Distance delegate;
+        private final IntFunction<double[]> space;
+        private final ToDoubleBiFunction<double[], double[]> metric;
 
-        public NamedDistance(String name, Distance delegate) {
+        public NamedDistance(
+                String name, IntFunction<double[]> space, ToDoubleBiFunction<double[], double[]> metric) {
             this.name = name;
-            this.delegate = delegate;
+            this.space = space;
+            this.metric = metric;
         }
 
         @Override
         public double compute(int c1, int c2) {
-            return delegate.compute(c1, c2);
+            return metric.applyAsDouble(space.apply(c1), space.apply(c2));
         }
 
         @Override
@@ -343,6 +386,97 @@ public class Colors {
         }
     }
 
+    /**
+     * Rounds colors to the nearest color of a palette.
+     * <p>
+     * The coordinates of the colors of the palette are computed once, and the
+     * rounded colors are kept in a direct-mapped cache indexed by a hash of the
+     * color, so that rounding the few colors of a screen over and over is a
+     * lookup.  The palette is copied, so the quantizer must be recreated when it
+     * is modified.
+     * <p>
+     * This class is thread safe: the entries of the cache are single ints, and
+     * a lost or stale entry only means that the color is rounded again.
+     */
+    static final class Quantizer {
+        private static final int CACHE_BITS = 12;
+        private static final int CACHE_MASK = (1 << CACHE_BITS) - 1;
+
+        private final int[] source;
+        private final int max;
+        private final int[] colors;
+        private final Distance distance;
+        private final double[][] coordinates;
+        // The color in the lower 24 bits, and its rounded index in the upper 8 bits
+        private final int[] cache = new int[1 << CACHE_BITS];
+
+        Quantizer(int[] palette, int max, Distance distance) {
+            this.source = palette;
+            this.max = max;
+            this.colors = max > 0 && max <= palette.length && max <= 256 ? Arrays.copyOf(palette, max) : null;
+            this.distance = distance;
+            if (colors != null && distance instanceof NamedDistance) {
+                NamedDistance named = (NamedDistance) distance;
+                coordinates = new double[colors.length][];
+                for (int i = 0; i < colors.length; i++) {
+                    coordinates[i] = named.space.apply(colors[i]);
+                }
+            } else {
+                coordinates = null;
+            }
+            // Fill the cache with colors which are never looked up in their slot
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = i ^ 1;
+            }
+        }
+
+        boolean isFor(int[] palette) {
+            return source == palette;
+        }
+
+        /**
+         * Returns the index of the nearest color of the palette, the last one
+         * if several colors are at the same distance.
+         *
+         * @param color the rgb color
+         * @return the index of the nearest color
+         */
+        int round(int color) {
+            if (colors == null) {
+                // Palettes larger than a byte, or smaller than required, are not cached
+                return roundColor(color, source, max, distance);
+            }
+            color &= 0xFFFFFF;
+            // The slot and the upper 12 bits give the lower 12 bits back
+            int slot = (color ^ (color >>> CACHE_BITS)) & CACHE_MASK;
+            int entry = cache[slot];
+            if ((entry & 0xFFFFFF) == color) {
+                return entry >>> 24;
+            }
+            int index = nearest(color);
+            cache[slot] = color | (index << 24);
+            return index;
+        }
+
+        private int nearest(int color) {
+            if (coordinates == null) {
+                return roundColor(color, colors, colors.length, distance);
+            }
+            NamedDistance named = (NamedDistance) distance;
+            double[] c = named.space.apply(color);
+            double best_distance = Integer.MAX_VALUE;
+            int best_index = Integer.MAX_VALUE;
+            for (int idx = 0; idx < coordinates.length; idx++) {
+                double d = named.metric.applyAsDouble(c, coordinates[idx]);
+                if (d <= best_distance) {
+                    best_index = idx;
+                    best_distance = d;
+                }
+            }
+            return best_index;
+        }
+    }
+
     private static final int L = 0;
     private static final int A = 1;
     private static final int B = 2;
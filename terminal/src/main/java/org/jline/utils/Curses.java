@@ -11,8 +11,11 @@ package org.jline.utils;
 import java.io.Flushable;
 import java.io.IOError;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * Utility class for terminal cursor and screen manipulation using ANSI escape sequences.
@@ -51,11 +54,28 @@ public final class Curses {
     private static final Object[] sv = new Object[26];
     private static final Object[] dv = new Object[26];
 
-    private static final int IFTE_NONE = 0;
     private static final int IFTE_IF = 1;
     private static final int IFTE_THEN = 2;
     private static final int IFTE_ELSE = 3;
 
+    // Instructions of the compiled programs, each one followed by its operands
+    private static final int OP_TEXT = 0; // literal index
+    private static final int OP_PARAM = 1; // parameter index, increment
+    private static final int OP_PRINT_PARAM = 2; // parameter index, increment
+    private static final int OP_CONST = 3; // value
+    private static final int OP_GET_DYNAMIC = 4; // variable index
+    private static final int OP_GET_STATIC = 5; // variable index
+    private static final int OP_SET_DYNAMIC = 6; // variable index
+    private static final int OP_SET_STATIC = 7; // variable index
+    private static final int OP_LENGTH = 8;
+    private static final int OP_BINARY = 9; // operator
+    private static final int OP_UNARY = 10; // operator
+    private static final int OP_JUMP = 11; // target
+    private static final int OP_JUMP_IF_FALSE = 12; // target
+    private static final int OP_PRINT = 13;
+    private static final int OP_FORMAT = 14; // format index
+    private static final int OP_DELAY = 15; // milliseconds
+
     private Curses() {}
 
     /**
@@ -67,9 +87,7 @@ public final class Curses {
      */
     public static String tputs(String cap, Object... params) {
         if (cap != null) {
-            StringWriter sw = new StringWriter();
-            tputs(sw, cap, params);
-            return sw.toString();
+            return compile(cap).execute(params);
         }
         return null;
     }
@@ -82,421 +100,641 @@ public final class Curses {
      * @param params optional parameters
      */
     public static void tputs(Appendable out, String str, Object... params) {
+        compile(str).execute(out, params);
+    }
+
+    /**
+     * Compiles the given terminal capability into a program which can be
+     * executed many times without parsing the capability again.
+     *
+     * @param str the capability
+     * @return the compiled program
+     * @throws IOError if the capability is malformed
+     */
+    public static Program compile(String str) {
         try {
-            doTputs(out, str, params);
+            return new Compiler(str).compile();
         } catch (Exception e) {
             throw new IOError(e);
         }
     }
 
-    private static void doTputs(Appendable out, String str, Object... params) throws IOException {
-        int index = 0;
-        int length = str.length();
-        int ifte = IFTE_NONE;
-        boolean exec = true;
-        ArrayDeque<Object> stack = new ArrayDeque<>();
-        while (index < length) {
-            char ch = str.charAt(index++);
-            switch (ch) {
-                case '\\':
-                    ch = str.charAt(index++);
-                    if (ch >= '0' && ch <= '7') {
-                        int val = ch - '0';
-                        for (int i = 0; i < 2; i++) {
-                            ch = str.charAt(index++);
-                            if (ch < '0' || ch > '7') {
-                                throw new IllegalStateException();
-                            }
-                            val = val * 8 + (ch - '0');
+    /**
+     * A compiled terminal capability.
+     * <p>
+     * Programs are immutable and can be shared between threads.  Numeric
+     * parameters are evaluated on a stack of primitive integers, and the
+     * common <code>%p1%d</code> sequences are printed without any stack at all.
+     */
+    public static final class Program {
+
+        private final String source;
+        private final int[] code;
+        private final String[] literals;
+        private final Format[] formats;
+        private final int depth;
+        private final boolean objects;
+
+        private Program(
+                String source, int[] code, String[] literals, Format[] formats, int depth, boolean objects) {
+            this.source = source;
+            this.code = code;
+            this.literals = literals;
+            this.formats = formats;
+            this.depth = depth;
+            this.objects = objects;
+        }
+
+        /**
+         * Returns the capability this program has been compiled from.
+         *
+         * @return the capability
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Executes the program.
+         *
+         * @param params optional parameters
+         * @return the result string
+         */
+        public String execute(Object... params) {
+            StringBuilder sb = new StringBuilder();
+            execute(sb, params);
+            return sb.toString();
+        }
+
+        /**
+         * Executes the program.
+         *
+         * @param out the output stream
+         * @param params optional parameters
+         */
+        public void execute(Appendable out, Object... params) {
+            try {
+                doExecute(out, params);
+            } catch (Exception e) {
+                throw new IOError(e);
+            }
+        }
+
+        private void doExecute(Appendable out, Object[] params) throws IOException {
+            // Only the programs using strings need to keep the objects pushed on the stack
+            int[] ints = depth > 0 ? new int[depth] : null;
+            Object[] objs = depth > 0 && objects ? new Object[depth] : null;
+            int sp = 0;
+            int pc = 0;
+            while (pc < code.length) {
+                switch (code[pc++]) {
+                    case OP_TEXT:
+                        out.append(literals[code[pc++]]);
+                        break;
+                    case OP_PARAM: {
+                        Object param = params[code[pc++]];
+                        int increment = code[pc++];
+                        if (objs != null && increment == 0) {
+                            objs[sp++] = param;
+                        } else {
+                            sp = push(ints, objs, sp, toInteger(param) + increment);
                         }
-                        out.append((char) val);
-                    } else {
-                        switch (ch) {
-                            case 'e':
-                            case 'E':
-                                if (exec) {
-                                    out.append((char) 27); // escape
-                                }
-                                break;
-                            case 'n':
-                                out.append('\n');
-                                break;
-                            //                        case 'l':
-                            //                            rawPrint('\l');
-                            //                            break;
-                            case 'r':
-                                if (exec) {
-                                    out.append('\r');
-                                }
-                                break;
-                            case 't':
-                                if (exec) {
-                                    out.append('\t');
-                                }
-                                break;
-                            case 'b':
-                                if (exec) {
-                                    out.append('\b');
-                                }
-                                break;
-                            case 'f':
-                                if (exec) {
-                                    out.append('\f');
-                                }
-                                break;
-                            case 's':
-                                if (exec) {
-                                    out.append(' ');
-                                }
-                                break;
-                            case ':':
-                            case '^':
-                            case '\\':
-                                if (exec) {
-                                    out.append(ch);
-                                }
-                                break;
-                            default:
-                                throw new IllegalArgumentException();
+                        break;
+                    }
+                    case OP_PRINT_PARAM: {
+                        Object param = params[code[pc++]];
+                        appendInt(out, toInteger(param) + code[pc++]);
+                        break;
+                    }
+                    case OP_CONST:
+                        sp = push(ints, objs, sp, code[pc++]);
+                        break;
+                    case OP_GET_DYNAMIC:
+                    case OP_GET_STATIC: {
+                        Object value = (code[pc - 1] == OP_GET_DYNAMIC ? dv : sv)[code[pc++]];
+                        if (objs != null) {
+                            objs[sp++] = value;
+                        } else {
+                            ints[sp++] = toInteger(value);
                         }
+                        break;
                     }
-                    break;
-                case '^':
-                    ch = str.charAt(index++);
-                    if (exec) {
-                        out.append((char) (ch - '@'));
+                    case OP_SET_DYNAMIC:
+                    case OP_SET_STATIC:
+                        (code[pc - 1] == OP_SET_DYNAMIC ? dv : sv)[code[pc++]] = objectAt(ints, objs, --sp);
+                        break;
+                    case OP_LENGTH:
+                        sp--;
+                        sp = push(ints, objs, sp, objectAt(ints, objs, sp).toString().length());
+                        break;
+                    case OP_BINARY: {
+                        int v2 = intAt(ints, objs, --sp);
+                        int v1 = intAt(ints, objs, --sp);
+                        sp = push(ints, objs, sp, binary(code[pc++], v1, v2));
+                        break;
                     }
-                    break;
-                case '%':
-                    ch = str.charAt(index++);
-                    switch (ch) {
-                        case '%':
-                            if (exec) {
-                                out.append('%');
-                            }
-                            break;
-                        case 'p':
-                            ch = str.charAt(index++);
-                            if (exec) {
-                                stack.push(params[ch - '1']);
-                            }
-                            break;
-                        case 'P':
-                            ch = str.charAt(index++);
-                            if (ch >= 'a' && ch <= 'z') {
-                                if (exec) {
-                                    dv[ch - 'a'] = stack.pop();
-                                }
-                            } else if (ch >= 'A' && ch <= 'Z') {
-                                if (exec) {
-                                    sv[ch - 'A'] = stack.pop();
-                                }
-                            } else {
-                                throw new IllegalArgumentException();
-                            }
-                            break;
-                        case 'g':
-                            ch = str.charAt(index++);
-                            if (ch >= 'a' && ch <= 'z') {
-                                if (exec) {
-                                    stack.push(dv[ch - 'a']);
-                                }
-                            } else if (ch >= 'A' && ch <= 'Z') {
-                                if (exec) {
-                                    stack.push(sv[ch - 'A']);
-                                }
-                            } else {
-                                throw new IllegalArgumentException();
-                            }
-                            break;
-                        case '\'':
-                            ch = str.charAt(index++);
-                            if (exec) {
-                                stack.push((int) ch);
-                            }
-                            ch = str.charAt(index++);
-                            if (ch != '\'') {
-                                throw new IllegalArgumentException();
-                            }
-                            break;
-                        case '{':
-                            int start = index;
-                            while (str.charAt(index++) != '}')
-                                ;
-                            if (exec) {
-                                int v = Integer.parseInt(str.substring(start, index - 1));
-                                stack.push(v);
-                            }
-                            break;
-                        case 'l':
-                            if (exec) {
-                                stack.push(stack.pop().toString().length());
-                            }
-                            break;
-                        case '+':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 + v2);
-                            }
-                            break;
-                        case '-':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 - v2);
-                            }
-                            break;
-                        case '*':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 * v2);
-                            }
-                            break;
-                        case '/':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 / v2);
-                            }
-                            break;
-                        case 'm':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 % v2);
-                            }
-                            break;
-                        case '&':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 & v2);
-                            }
-                            break;
-                        case '|':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 | v2);
-                            }
-                            break;
-                        case '^':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 ^ v2);
-                            }
-                            break;
-                        case '=':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 == v2);
-                            }
-                            break;
-                        case '>':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 > v2);
-                            }
-                            break;
-                        case '<':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 < v2);
-                            }
-                            break;
-                        case 'A':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 != 0 && v2 != 0);
-                            }
-                            break;
-                        case '!':
-                            if (exec) {
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 == 0);
-                            }
-                            break;
-                        case '~':
-                            if (exec) {
-                                int v1 = toInteger(stack.pop());
-                                stack.push(~v1);
-                            }
-                            break;
-                        case 'O':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 != 0 || v2 != 0);
-                            }
-                            break;
-                        case '?':
-                            if (ifte != IFTE_NONE) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_IF;
-                            }
-                            break;
-                        case 't':
-                            if (ifte != IFTE_IF && ifte != IFTE_ELSE) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_THEN;
-                            }
-                            exec = toInteger(stack.pop()) != 0;
-                            break;
-                        case 'e':
-                            if (ifte != IFTE_THEN) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_ELSE;
-                            }
-                            exec = !exec;
-                            break;
-                        case ';':
-                            if (ifte == IFTE_NONE || ifte == IFTE_IF) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_NONE;
-                            }
-                            exec = true;
-                            break;
-                        case 'i':
-                            if (params.length >= 1) {
-                                params[0] = toInteger(params[0]) + 1;
-                            }
-                            if (params.length >= 2) {
-                                params[1] = toInteger(params[1]) + 1;
-                            }
-                            break;
-                        case 'd':
-                            out.append(Integer.toString(toInteger(stack.pop())));
-                            break;
-                        default:
-                            if (ch == ':') {
-                                ch = str.charAt(index++);
-                            }
-                            boolean alternate = false;
-                            boolean left = false;
-                            boolean space = false;
-                            boolean plus = false;
-                            int width = 0;
-                            int prec = -1;
-                            int cnv;
-                            while ("-+# ".indexOf(ch) >= 0) {
-                                switch (ch) {
-                                    case '-':
-                                        left = true;
-                                        break;
-                                    case '+':
-                                        plus = true;
-                                        break;
-                                    case '#':
-                                        alternate = true;
-                                        break;
-                                    case ' ':
-                                        space = true;
-                                        break;
-                                }
-                                ch = str.charAt(index++);
-                            }
-                            if ("123456789".indexOf(ch) >= 0) {
-                                do {
-                                    width = width * 10 + (ch - '0');
-                                    ch = str.charAt(index++);
-                                } while ("0123456789".indexOf(ch) >= 0);
-                            }
-                            if (ch == '.') {
-                                prec = 0;
-                                ch = str.charAt(index++);
-                            }
-                            if ("0123456789".indexOf(ch) >= 0) {
-                                do {
-                                    prec = prec * 10 + (ch - '0');
-                                    ch = str.charAt(index++);
-                                } while ("0123456789".indexOf(ch) >= 0);
-                            }
-                            if ("cdoxXs".indexOf(ch) < 0) {
-                                throw new IllegalArgumentException();
-                            }
-                            cnv = ch;
-                            if (exec) {
-                                String res;
-                                if (cnv == 's') {
-                                    res = (String) stack.pop();
-                                    if (prec >= 0) {
-                                        res = res.substring(0, prec);
-                                    }
-                                } else {
-                                    int p = toInteger(stack.pop());
-                                    StringBuilder fmt = new StringBuilder(16);
-                                    fmt.append('%');
-                                    if (alternate) {
-                                        fmt.append('#');
-                                    }
-                                    if (plus) {
-                                        fmt.append('+');
-                                    }
-                                    if (space) {
-                                        fmt.append(' ');
-                                    }
-                                    if (prec >= 0) {
-                                        fmt.append('0');
-                                        fmt.append(prec);
-                                    }
-                                    fmt.append((char) cnv);
-                                    res = String.format(fmt.toString(), p);
-                                }
-                                if (width > res.length()) {
-                                    res = String.format("%" + (left ? "-" : "") + width + "s", res);
-                                }
-                                out.append(res);
-                            }
-                            break;
+                    case OP_UNARY: {
+                        int v1 = intAt(ints, objs, --sp);
+                        sp = push(ints, objs, sp, code[pc++] == '!' ? (v1 == 0 ? 1 : 0) : ~v1);
+                        break;
                     }
-                    break;
-                case '$':
-                    if (index < length && str.charAt(index) == '<') {
-                        // We don't honour delays, just skip
-                        int nb = 0;
-                        while ((ch = str.charAt(++index)) != '>') {
-                            if (ch >= '0' && ch <= '9') {
-                                nb = nb * 10 + (ch - '0');
-                            } else if (ch == '*') {
-                                // ignore
-                            } else if (ch == '/') {
-                                // ignore
-                            } else {
-                                // illegal, but ...
-                            }
+                    case OP_JUMP:
+                        pc = code[pc];
+                        break;
+                    case OP_JUMP_IF_FALSE:
+                        if (intAt(ints, objs, --sp) == 0) {
+                            pc = code[pc];
+                        } else {
+                            pc++;
                         }
-                        index++;
+                        break;
+                    case OP_PRINT:
+                        appendInt(out, intAt(ints, objs, --sp));
+                        break;
+                    case OP_FORMAT:
+                        formats[code[pc++]].append(out, objectAt(ints, objs, --sp));
+                        break;
+                    case OP_DELAY:
+                        // We don't honour delays, just flush and wait
                         try {
                             if (out instanceof Flushable) {
                                 ((Flushable) out).flush();
                             }
-                            Thread.sleep(nb);
+                            Thread.sleep(code[pc++]);
                         } catch (InterruptedException e) {
                         }
-                    } else {
-                        if (exec) {
-                            out.append(ch);
+                        break;
+                    default:
+                        throw new IllegalStateException();
+                }
+            }
+        }
+
+        private static int push(int[] ints, Object[] objs, int sp, int value) {
+            if (objs != null) {
+                objs[sp] = null;
+            }
+            ints[sp] = value;
+            return sp + 1;
+        }
+
+        private static int intAt(int[] ints, Object[] objs, int sp) {
+            return objs != null && objs[sp] != null ? toInteger(objs[sp]) : ints[sp];
+        }
+
+        private static Object objectAt(int[] ints, Object[] objs, int sp) {
+            return objs != null && objs[sp] != null ? objs[sp] : Integer.valueOf(ints[sp]);
+        }
+
+        private static int binary(int op, int v1, int v2) {
+            switch (op) {
+                case '+':
+                    return v1 + v2;
+                case '-':
+                    return v1 - v2;
+                case '*':
+                    return v1 * v2;
+                case '/':
+                    return v1 / v2;
+                case 'm':
+                    return v1 % v2;
+                case '&':
+                    return v1 & v2;
+                case '|':
+                    return v1 | v2;
+                case '^':
+                    return v1 ^ v2;
+                case '=':
+                    return v1 == v2 ? 1 : 0;
+                case '>':
+                    return v1 > v2 ? 1 : 0;
+                case '<':
+                    return v1 < v2 ? 1 : 0;
+                case 'A':
+                    return v1 != 0 && v2 != 0 ? 1 : 0;
+                case 'O':
+                    return v1 != 0 || v2 != 0 ? 1 : 0;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        private static void appendInt(Appendable out, int v) throws IOException {
+            if (v < 0) {
+                if (v == Integer.MIN_VALUE) {
+                    out.append(Integer.toString(v));
+                    return;
+                }
+                out.append('-');
+                v = -v;
+            }
+            if (v >= 10) {
+                appendInt(out, v / 10);
+            }
+            out.append((char) ('0' + v % 10));
+        }
+    }
+
+    /**
+     * A printf-like conversion of a capability.
+     */
+    private static final class Format {
+        private final String format;
+        private final int prec;
+        private final int width;
+        private final boolean left;
+
+        Format(String format, int prec, int width, boolean left) {
+            this.format = format;
+            this.prec = prec;
+            this.width = width;
+            this.left = left;
+        }
+
+        void append(Appendable out, Object value) throws IOException {
+            String res;
+            if (format == null) {
+                res = (String) value;
+                if (prec >= 0) {
+                    res = res.substring(0, prec);
+                }
+            } else {
+                res = String.format(format, toInteger(value));
+            }
+            if (left) {
+                out.append(res);
+            }
+            for (int i = res.length(); i < width; i++) {
+                out.append(' ');
+            }
+            if (!left) {
+                out.append(res);
+            }
+        }
+    }
+
+    /**
+     * Translates a capability into the instructions of a {@link Program}.
+     */
+    private static final class Compiler {
+        private final String str;
+        private final StringBuilder text = new StringBuilder();
+        private final List<String> literals = new ArrayList<>();
+        private final List<Format> formats = new ArrayList<>();
+        private final Deque<Conditional> conditionals = new ArrayDeque<>();
+        private int[] code = new int[16];
+        private int size;
+        private int index;
+        private int last = -1; // position of the last instruction
+        private int label = -1; // position of the last jump target
+        private int depth;
+        private boolean objects;
+        private int increments;
+
+        Compiler(String str) {
+            this.str = str;
+        }
+
+        Program compile() {
+            int length = str.length();
+            while (index < length) {
+                char ch = str.charAt(index++);
+                switch (ch) {
+                    case '\\':
+                        ch = str.charAt(index++);
+                        if (ch >= '0' && ch <= '7') {
+                            int val = ch - '0';
+                            for (int i = 0; i < 2; i++) {
+                                ch = str.charAt(index++);
+                                if (ch < '0' || ch > '7') {
+                                    throw new IllegalStateException();
+                                }
+                                val = val * 8 + (ch - '0');
+                            }
+                            text.append((char) val);
+                        } else {
+                            switch (ch) {
+                                case 'e':
+                                case 'E':
+                                    text.append((char) 27); // escape
+                                    break;
+                                case 'n':
+                                    text.append('\n');
+                                    break;
+                                case 'r':
+                                    text.append('\r');
+                                    break;
+                                case 't':
+                                    text.append('\t');
+                                    break;
+                                case 'b':
+                                    text.append('\b');
+                                    break;
+                                case 'f':
+                                    text.append('\f');
+                                    break;
+                                case 's':
+                                    text.append(' ');
+                                    break;
+                                case ':':
+                                case '^':
+                                case '\\':
+                                    text.append(ch);
+                                    break;
+                                default:
+                                    throw new IllegalArgumentException();
+                            }
+                        }
+                        break;
+                    case '^':
+                        ch = str.charAt(index++);
+                        text.append((char) (ch - '@'));
+                        break;
+                    case '%':
+                        percent();
+                        break;
+                    case '$':
+                        if (index < length && str.charAt(index) == '<') {
+                            int nb = 0;
+                            while ((ch = str.charAt(++index)) != '>') {
+                                if (ch >= '0' && ch <= '9') {
+                                    nb = nb * 10 + (ch - '0');
+                                }
+                                // '*' and '/' are ignored, as well as illegal characters
+                            }
+                            index++;
+                            emit(OP_DELAY, nb);
+                        } else {
+                            text.append(ch);
                         }
+                        break;
+                    default:
+                        text.append(ch);
+                        break;
+                }
+            }
+            // Unterminated conditionals end with the capability
+            while (!conditionals.isEmpty()) {
+                endConditional();
+            }
+            flush();
+            return new Program(
+                    str,
+                    Arrays.copyOf(code, size),
+                    literals.toArray(new String[0]),
+                    formats.toArray(new Format[0]),
+                    depth,
+                    objects);
+        }
+
+        private void percent() {
+            char ch = str.charAt(index++);
+            switch (ch) {
+                case '%':
+                    text.append('%');
+                    break;
+                case 'p':
+                    ch = str.charAt(index++);
+                    if (ch < '1' || ch > '9') {
+                        throw new IllegalArgumentException();
                     }
+                    // %i increments the first two parameters
+                    emit(OP_PARAM, ch - '1', ch - '1' < 2 ? increments : 0);
+                    depth++;
                     break;
-                default:
-                    if (exec) {
-                        out.append(ch);
+                case 'P':
+                    ch = str.charAt(index++);
+                    if (ch >= 'a' && ch <= 'z') {
+                        emit(OP_SET_DYNAMIC, ch - 'a');
+                    } else if (ch >= 'A' && ch <= 'Z') {
+                        emit(OP_SET_STATIC, ch - 'A');
+                    } else {
+                        throw new IllegalArgumentException();
+                    }
+                    break;
+                case 'g':
+                    ch = str.charAt(index++);
+                    if (ch >= 'a' && ch <= 'z') {
+                        emit(OP_GET_DYNAMIC, ch - 'a');
+                    } else if (ch >= 'A' && ch <= 'Z') {
+                        emit(OP_GET_STATIC, ch - 'A');
+                    } else {
+                        throw new IllegalArgumentException();
+                    }
+                    depth++;
+                    break;
+                case '\'':
+                    ch = str.charAt(index++);
+                    emit(OP_CONST, ch);
+                    depth++;
+                    ch = str.charAt(index++);
+                    if (ch != '\'') {
+                        throw new IllegalArgumentException();
+                    }
+                    break;
+                case '{':
+                    int start = index;
+                    while (str.charAt(index++) != '}')
+                        ;
+                    emit(OP_CONST, Integer.parseInt(str.substring(start, index - 1)));
+                    depth++;
+                    break;
+                case 'l':
+                    emit(OP_LENGTH);
+                    objects = true;
+                    break;
+                case '+':
+                case '-':
+                case '*':
+                case '/':
+                case 'm':
+                case '&':
+                case '|':
+                case '^':
+                case '=':
+                case '>':
+                case '<':
+                case 'A':
+                case 'O':
+                    emit(OP_BINARY, ch);
+                    break;
+                case '!':
+                case '~':
+                    emit(OP_UNARY, ch);
+                    break;
+                case '?':
+                    conditionals.push(new Conditional());
+                    break;
+                case 't': {
+                    Conditional conditional = conditionals.peek();
+                    if (conditional == null || conditional.state != IFTE_IF && conditional.state != IFTE_ELSE) {
+                        throw new IllegalArgumentException();
+                    }
+                    conditional.state = IFTE_THEN;
+                    emit(OP_JUMP_IF_FALSE, -1);
+                    conditional.jumpIfFalse = size - 1;
+                    break;
+                }
+                case 'e': {
+                    Conditional conditional = conditionals.peek();
+                    if (conditional == null || conditional.state != IFTE_THEN) {
+                        throw new IllegalArgumentException();
                     }
+                    conditional.state = IFTE_ELSE;
+                    emit(OP_JUMP, -1);
+                    conditional.jumps.add(size - 1);
+                    target(conditional.jumpIfFalse);
+                    conditional.jumpIfFalse = -1;
+                    break;
+                }
+                case ';': {
+                    Conditional conditional = conditionals.peek();
+                    if (conditional == null || conditional.state == IFTE_IF) {
+                        throw new IllegalArgumentException();
+                    }
+                    endConditional();
+                    break;
+                }
+                case 'i':
+                    increments++;
+                    break;
+                case 'd':
+                    print();
+                    break;
+                default:
+                    format(ch);
                     break;
             }
         }
+
+        private void format(char ch) {
+            if (ch == ':') {
+                ch = str.charAt(index++);
+            }
+            boolean alternate = false;
+            boolean left = false;
+            boolean space = false;
+            boolean plus = false;
+            int width = 0;
+            int prec = -1;
+            while ("-+# ".indexOf(ch) >= 0) {
+                switch (ch) {
+                    case '-':
+                        left = true;
+                        break;
+                    case '+':
+                        plus = true;
+                        break;
+                    case '#':
+                        alternate = true;
+                        break;
+                    case ' ':
+                        space = true;
+                        break;
+                }
+                ch = str.charAt(index++);
+            }
+            if ("123456789".indexOf(ch) >= 0) {
+                do {
+                    width = width * 10 + (ch - '0');
+                    ch = str.charAt(index++);
+                } while ("0123456789".indexOf(ch) >= 0);
+            }
+            if (ch == '.') {
+                prec = 0;
+                ch = str.charAt(index++);
+            }
+            if ("0123456789".indexOf(ch) >= 0) {
+                do {
+                    prec = prec * 10 + (ch - '0');
+                    ch = str.charAt(index++);
+                } while ("0123456789".indexOf(ch) >= 0);
+            }
+            if ("cdoxXs".indexOf(ch) < 0) {
+                throw new IllegalArgumentException();
+            }
+            String format = null;
+            if (ch == 's') {
+                objects = true;
+            } else if (ch == 'd' && !alternate && !plus && !space && width == 0 && prec < 0) {
+                print();
+                return;
+            } else {
+                StringBuilder fmt = new StringBuilder(16);
+                fmt.append('%');
+                if (alternate) {
+                    fmt.append('#');
+                }
+                if (plus) {
+                    fmt.append('+');
+                }
+                if (space) {
+                    fmt.append(' ');
+                }
+                if (prec >= 0) {
+                    fmt.append('0');
+                    fmt.append(prec);
+                }
+                fmt.append(ch);
+                format = fmt.toString();
+            }
+            formats.add(new Format(format, prec, width, left));
+            emit(OP_FORMAT, formats.size() - 1);
+        }
+
+        private void print() {
+            // Print a parameter directly, unless the parameter instruction is a jump target
+            if (text.length() == 0 && last >= 0 && code[last] == OP_PARAM && label != size) {
+                code[last] = OP_PRINT_PARAM;
+                depth--;
+            } else {
+                emit(OP_PRINT);
+            }
+        }
+
+        private void endConditional() {
+            Conditional conditional = conditionals.pop();
+            target(conditional.jumpIfFalse);
+            for (int jump : conditional.jumps) {
+                target(jump);
+            }
+        }
+
+        private void target(int jump) {
+            if (jump >= 0) {
+                flush();
+                code[jump] = size;
+                label = size;
+            }
+        }
+
+        private void emit(int... instruction) {
+            flush();
+            append(instruction);
+        }
+
+        private void flush() {
+            if (text.length() > 0) {
+                literals.add(text.toString());
+                text.setLength(0);
+                append(OP_TEXT, literals.size() - 1);
+            }
+        }
+
+        private void append(int... instruction) {
+            if (size + instruction.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, size + instruction.length));
+            }
+            last = size;
+            System.arraycopy(instruction, 0, code, size, instruction.length);
+            size += instruction.length;
+        }
+    }
+
+    private static final class Conditional {
+        int state = IFTE_IF;
+        int jumpIfFalse = -1;
+        final List<Integer> jumps = new ArrayList<>();
     }
 
     private static int toInteger(Object pop) {
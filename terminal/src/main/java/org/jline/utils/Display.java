@@ -8,6 +8,8 @@
  */
 package org.jline.utils;
 
+import java.io.IOError;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -90,6 +92,8 @@ public class Display {
     protected final boolean wrapAtEol;
     protected final boolean delayedWrapAtEol;
     protected final boolean cursorDownIsNewLine;
+    // Encoder shared by the lines of an update, so that their recurring styles are only encoded once
+    private AnsiEncoder encoder;
 
     @SuppressWarnings("this-escape")
     public Display(Terminal terminal, boolean fullscreen) {
@@ -164,6 +168,8 @@ public class Display {
      * @param flush whether the output should be flushed or not
      */
     public void update(List<AttributedString> newLines, int targetCursorPos, boolean flush) {
+        // The palette of the terminal may have changed since the previous update
+        encoder = null;
         if (reset) {
             terminal.puts(Capability.clear_screen);
             oldLines.clear();
@@ -530,7 +536,14 @@ public class Display {
     }
 
     void rawPrint(AttributedString str) {
-        str.print(terminal);
+        if (encoder == null) {
+            encoder = AnsiEncoder.of(terminal);
+        }
+        try {
+            encoder.encode(str, terminal.writer());
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
     }
 
     public int wcwidth(String str) {
@@ -215,6 +215,18 @@ public class NonBlocking {
             }
         }
 
+        @Override
+        public int available() {
+            int available = chars.remaining();
+            try {
+                // bytes not decoded yet, an upper bound of the chars they will produce
+                available += input.available();
+            } catch (IOException e) {
+                // ignore
+            }
+            return available;
+        }
+
         @Override
         public int readBuffered(char[] b, int off, int len, long timeout) throws IOException {
             if (b == null) {
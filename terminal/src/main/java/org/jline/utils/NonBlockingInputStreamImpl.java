@@ -79,6 +79,11 @@ public class NonBlockingInputStreamImpl extends NonBlockingInputStream {
         shutdown();
     }
 
+    @Override
+    public synchronized int available() throws IOException {
+        return (b >= 0 ? 1 : 0) + in.available();
+    }
+
     /**
      * Attempts to read a byte from the input stream for a specific
      * period of time.
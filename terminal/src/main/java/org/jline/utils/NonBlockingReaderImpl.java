@@ -19,6 +19,13 @@ import java.io.Reader;
  * a separate thread perform all non-blocking read requests and then
  * waiting on the thread to complete.
  *
+ * <p>Characters are read in bulk: each read performed by the thread (or
+ * locally when no timeout is involved) stores all the characters the
+ * underlying reader can return at once into a buffer, which subsequent
+ * reads consume without waiting for the thread.  Reading still only
+ * happens when requested, so that no input is consumed while nobody is
+ * reading.
+ *
  * <p>VERY IMPORTANT NOTES
  * <ul>
  *   <li> This class is not thread safe. It expects at most one reader.
@@ -30,8 +37,13 @@ import java.io.Reader;
 public class NonBlockingReaderImpl extends NonBlockingReader {
     public static final int READ_EXPIRED = -2;
 
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
     private Reader in; // The actual input stream
-    private int ch = READ_EXPIRED; // Recently read character
+    private final char[] buffer; // Characters read and not consumed yet, from pos to end
+    private int pos;
+    private int end;
+    private boolean eof; // EOF has been read but not returned yet
 
     private String name;
     private boolean threadIsReading = false;
@@ -48,8 +60,20 @@ public class NonBlockingReaderImpl extends NonBlockingReader {
      * @param in The reader to wrap
      */
     public NonBlockingReaderImpl(String name, Reader in) {
+        this(name, in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a <code>NonBlockingReader</code> out of a normal blocking
+     * reader, reading at most <code>bufferSize</code> characters at once.
+     * @param name The reader name
+     * @param in The reader to wrap
+     * @param bufferSize The size of the read buffer
+     */
+    public NonBlockingReaderImpl(String name, Reader in, int bufferSize) {
         this.in = in;
         this.name = name;
+        this.buffer = new char[bufferSize];
     }
 
     private synchronized void startReadingThreadIfNeeded() {
@@ -84,7 +108,12 @@ public class NonBlockingReaderImpl extends NonBlockingReader {
 
     @Override
     public synchronized boolean ready() throws IOException {
-        return ch >= 0 || in.ready();
+        return pos < end || in.ready();
+    }
+
+    @Override
+    public synchronized int available() {
+        return end - pos;
     }
 
     @Override
@@ -95,25 +124,30 @@ public class NonBlockingReaderImpl extends NonBlockingReader {
             throw new IllegalArgumentException();
         } else if (len == 0) {
             return 0;
-        } else if (exception != null) {
-            assert ch == READ_EXPIRED;
-            IOException toBeThrown = exception;
-            exception = null;
-            throw toBeThrown;
-        } else if (ch >= -1) {
-            b[0] = (char) ch;
-            ch = READ_EXPIRED;
-            return 1;
-        } else if (!threadIsReading && timeout <= 0) {
-            return in.read(b, off, len);
-        } else {
-            // TODO: rework implementation to read as much as possible
-            int c = read(timeout, false);
-            if (c >= 0) {
-                b[off] = (char) c;
-                return 1;
+        }
+        synchronized (this) {
+            if (exception == null && pos == end && !eof) {
+                if (threadIsReading || timeout > 0) {
+                    awaitInput(timeout);
+                } else {
+                    return in.read(b, off, len);
+                }
+            }
+            if (exception != null) {
+                IOException toBeThrown = exception;
+                exception = null;
+                throw toBeThrown;
+            } else if (pos < end) {
+                // Drain everything available at once
+                int nb = Math.min(len, end - pos);
+                System.arraycopy(buffer, pos, b, off, nb);
+                pos += nb;
+                return nb;
+            } else if (eof) {
+                eof = false;
+                return EOF;
             } else {
-                return c;
+                return READ_EXPIRED;
             }
         }
     }
@@ -130,72 +164,87 @@ public class NonBlockingReaderImpl extends NonBlockingReader {
          * If the thread hit an IOException, we report it.
          */
         if (exception != null) {
-            assert ch == READ_EXPIRED;
             IOException toBeThrown = exception;
             if (!isPeek) exception = null;
             throw toBeThrown;
         }
 
         /*
-         * If there was a pending character from the thread, then
-         * we send it. If the timeout is 0L or the thread was shut down
+         * If there are pending characters from the thread, then
+         * we send them. If the timeout is 0L or the thread was shut down
          * then do a local read.
          */
-        if (ch >= -1) {
-            assert exception == null;
-        } else if (!isPeek && timeout <= 0L && !threadIsReading) {
-            ch = in.read();
-        } else {
-            /*
-             * If the thread isn't reading already, then ask it to do so.
-             */
-            if (!threadIsReading) {
-                threadIsReading = true;
-                startReadingThreadIfNeeded();
-                notifyAll();
-            }
-
-            /*
-             * So the thread is currently doing the reading for us. So
-             * now we play the waiting game.
-             */
-            Timeout t = new Timeout(timeout);
-            while (!t.elapsed()) {
-                try {
-                    if (Thread.interrupted()) {
-                        throw new InterruptedException();
-                    }
-                    wait(t.timeout());
-                } catch (InterruptedException e) {
-                    exception = (IOException) new InterruptedIOException().initCause(e);
-                }
-
+        if (pos == end && !eof) {
+            if (!isPeek && timeout <= 0L && !threadIsReading) {
+                fill(in.read(buffer, 0, buffer.length));
+            } else {
+                awaitInput(timeout);
                 if (exception != null) {
-                    assert ch == READ_EXPIRED;
-
                     IOException toBeThrown = exception;
                     if (!isPeek) exception = null;
                     throw toBeThrown;
                 }
-
-                if (ch >= -1) {
-                    assert exception == null;
-                    break;
-                }
             }
         }
 
         /*
-         * ch is the character that was just read. Either we set it because
-         * a local read was performed or the read thread set it (or failed to
-         * change it).  We will return it's value, but if this was a peek
+         * We return the next buffered character, but if this was a peek
          * operation, then we leave it in place.
          */
-        int ret = ch;
-        if (!isPeek) {
-            ch = READ_EXPIRED;
+        if (pos < end) {
+            return isPeek ? buffer[pos] : buffer[pos++];
+        } else if (eof) {
+            if (!isPeek) {
+                eof = false;
+            }
+            return EOF;
+        } else {
+            return READ_EXPIRED;
+        }
+    }
+
+    /**
+     * Asks the thread to read and waits until it has read something, failed
+     * or the timeout has elapsed.  Must be called with the lock held and
+     * an empty buffer.
+     */
+    private void awaitInput(long timeout) {
+        /*
+         * If the thread isn't reading already, then ask it to do so.
+         */
+        if (!threadIsReading) {
+            threadIsReading = true;
+            startReadingThreadIfNeeded();
+            notifyAll();
+        }
+
+        /*
+         * So the thread is currently doing the reading for us. So
+         * now we play the waiting game.
+         */
+        Timeout t = new Timeout(timeout);
+        while (!t.elapsed()) {
+            try {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                wait(t.timeout());
+            } catch (InterruptedException e) {
+                exception = (IOException) new InterruptedIOException().initCause(e);
+            }
+            if (exception != null || pos < end || eof) {
+                break;
+            }
+        }
+    }
+
+    private void fill(int nb) {
+        if (nb < 0) {
+            eof = true;
+        } else {
+            pos = 0;
+            end = nb;
         }
-        return ret;
     }
 
     private void run() {
@@ -232,25 +281,26 @@ public class NonBlockingReaderImpl extends NonBlockingReader {
                 /*
                  * We're not shutting down, but we need to read. This cannot
                  * happen while we are holding the lock (which we aren't now).
+                 * The buffer is empty and the reading thread does not access
+                 * it until threadIsReading is reset, so we can read into it.
                  */
-                int charRead = READ_EXPIRED;
+                int nb = 0;
                 IOException failure = null;
                 try {
-                    charRead = in.read();
-                    //                    if (charRead < 0) {
-                    //                        continue;
-                    //                    }
+                    nb = in.read(buffer, 0, buffer.length);
                 } catch (IOException e) {
                     failure = e;
-                    //                    charRead = -1;
                 }
 
                 /*
                  * Re-grab the lock to update the state.
                  */
                 synchronized (this) {
-                    exception = failure;
-                    ch = charRead;
+                    if (failure != null) {
+                        exception = failure;
+                    } else {
+                        fill(nb);
+                    }
                     threadIsReading = false;
                     notify();
                 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2002-2025, the original author(s).
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.terminal.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jline.terminal.Attributes;
+import org.jline.terminal.Attributes.LocalFlag;
+import org.jline.terminal.Attributes.OutputFlag;
+import org.jline.terminal.Terminal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LineDisciplineTerminalTest {
+
+    @Test
+    public void testOutputIsTranslatedAndBuffered() throws IOException {
+        ByteArrayOutputStream master = new ByteArrayOutputStream();
+        LineDisciplineTerminal terminal =
+                new LineDisciplineTerminal("test", "ansi", master, StandardCharsets.UTF_8);
+        terminal.output().write("foo\nbar\n\nbaz".getBytes(StandardCharsets.UTF_8));
+        terminal.output().write('\n');
+        assertEquals("", master.toString("UTF-8"));
+        terminal.output().flush();
+        assertEquals("foo\r\nbar\r\n\r\nbaz\r\n", master.toString("UTF-8"));
+
+        master.reset();
+        Attributes attributes = terminal.getAttributes();
+        attributes.setOutputFlag(OutputFlag.ONLCR, false);
+        terminal.setAttributes(attributes);
+        terminal.output().write("foo\nbar".getBytes(StandardCharsets.UTF_8));
+        terminal.output().flush();
+        assertEquals("foo\nbar", master.toString("UTF-8"));
+        terminal.close();
+    }
+
+    @Test
+    public void testLargeOutput() throws IOException {
+        ByteArrayOutputStream master = new ByteArrayOutputStream();
+        LineDisciplineTerminal terminal =
+                new LineDisciplineTerminal("test", "ansi", master, StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("line ").append(i).append('\n');
+            expected.append("line ").append(i).append("\r\n");
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        terminal.output().write(bytes, 0, 7);
+        terminal.output().write(bytes, 7, bytes.length - 7);
+        terminal.output().flush();
+        assertEquals(expected.toString(), master.toString("UTF-8"));
+        terminal.close();
+    }
+
+    @Test
+    public void testInputProcessing() throws IOException {
+        ByteArrayOutputStream master = new ByteArrayOutputStream();
+        LineDisciplineTerminal terminal =
+                new LineDisciplineTerminal("test", "ansi", master, StandardCharsets.UTF_8);
+        AtomicInteger interrupts = new AtomicInteger();
+        terminal.handle(Terminal.Signal.INT, s -> interrupts.incrementAndGet());
+        terminal.processInputBytes("ab\rcd\u0003ef".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, interrupts.get());
+        assertEquals("ab\ncdef", read(terminal, 7));
+        // echo is flushed to the master output
+        assertEquals("ab\r\ncdef", master.toString("UTF-8"));
+
+        master.reset();
+        Attributes attributes = terminal.getAttributes();
+        attributes.setLocalFlag(LocalFlag.ECHO, false);
+        terminal.setAttributes(attributes);
+        terminal.processInputBytes("gh".getBytes(StandardCharsets.UTF_8));
+        assertEquals("gh", read(terminal, 2));
+        assertEquals("", master.toString("UTF-8"));
+        terminal.close();
+    }
+
+    @Test
+    public void testOverriddenHooks() throws IOException {
+        ByteArrayOutputStream master = new ByteArrayOutputStream();
+        StringBuilder input = new StringBuilder();
+        StringBuilder output = new StringBuilder();
+        LineDisciplineTerminal terminal =
+                new LineDisciplineTerminal("test", "ansi", master, StandardCharsets.UTF_8) {
+                    @Override
+                    protected boolean doProcessInputByte(int c) throws IOException {
+                        input.append((char) c);
+                        return super.doProcessInputByte(c);
+                    }
+
+                    @Override
+                    protected void processOutputByte(int c) throws IOException {
+                        output.append((char) c);
+                        super.processOutputByte(c);
+                    }
+                };
+        terminal.processInputBytes("ab\ncd".getBytes(StandardCharsets.UTF_8));
+        assertEquals("ab\ncd", input.toString());
+        assertEquals("ab\ncd", output.toString());
+        assertEquals("ab\ncd", read(terminal, 5));
+
+        terminal.writer().print("ef\n");
+        terminal.writer().flush();
+        assertEquals("ab\ncdef\n", output.toString());
+        assertEquals("ab\r\ncdef\r\n", master.toString("UTF-8"));
+        terminal.close();
+    }
+
+    private static String read(Terminal terminal, int nb) throws IOException {
+        byte[] buf = new byte[nb];
+        for (int i = 0; i < nb; i++) {
+            buf[i] = (byte) terminal.input().read();
+        }
+        return new String(buf, StandardCharsets.UTF_8);
+    }
+}
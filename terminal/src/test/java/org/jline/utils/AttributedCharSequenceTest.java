@@ -17,6 +17,7 @@ import org.jline.terminal.impl.ExternalTerminal;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AttributedCharSequenceTest {
 
@@ -76,4 +77,43 @@ public class AttributedCharSequenceTest {
 
         assertEquals(org, rndTrip);
     }
+
+    @Test
+    public void testPrint() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExternalTerminal terminal = new ExternalTerminal(
+                "my term", "xterm", new ByteArrayInputStream(new byte[0]), out, StandardCharsets.UTF_8);
+
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        for (int i = 0; i < 20; i++) {
+            sb.styled(AttributedStyle.BOLD.foreground(i % 3), "bold " + i)
+                    .append(" ")
+                    .styled(AttributedStyle.DEFAULT.background(AttributedStyle.BLUE), "┌─┐")
+                    .append("│ plain │");
+        }
+        AttributedString as = sb.toAttributedString();
+        String ansi = as.toAnsi(terminal);
+
+        as.print(terminal);
+        terminal.flush();
+        assertEquals(ansi, out.toString("UTF-8"));
+
+        out.reset();
+        as.subSequence(3, 200).println(terminal);
+        terminal.flush();
+        assertTrue(out.toString("UTF-8").startsWith(as.subSequence(3, 200).toAnsi(terminal)));
+    }
+
+    @Test
+    public void testRecurringStyles() {
+        AttributedStyle red = AttributedStyle.DEFAULT.foreground(AttributedStyle.RED);
+        AttributedStyle boldGreen = AttributedStyle.BOLD.foreground(AttributedStyle.GREEN);
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.styled(red, "a").styled(boldGreen, "b").append("c");
+            expected.append("\033[31ma\033[32;1mb\033[0mc");
+        }
+        assertEquals(expected.toString(), sb.toAnsi(256, AttributedCharSequence.ForceMode.None));
+    }
 }
@@ -111,4 +111,26 @@ public class ColorPaletteTest {
         int background = terminal.getDefaultBackgroundColor();
         assertEquals(0x0000FF, background, "Default background color should be blue");
     }
+
+    @Test
+    public void testRoundAfterChanges() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayInputStream input = new ByteArrayInputStream(new byte[0]);
+
+        Terminal terminal = new TestDumbTerminal("test", "dumb", input, output, StandardCharsets.UTF_8, -1, -1);
+
+        ColorPalette palette = new ColorPalette(terminal, "cie76");
+        assertEquals(
+                Colors.roundColor(0x123456, Colors.DEFAULT_COLORS_256, 256, "cie76"),
+                palette.round(0x12, 0x34, 0x56));
+
+        // Rounding uses the modified colors
+        palette.setColor(200, 0x123456);
+        assertEquals(200, palette.round(0x12, 0x34, 0x56));
+
+        // and the new distance
+        palette.setDistance("rgb");
+        assertEquals("rgb", palette.getDist().toString());
+        assertEquals(200, palette.round(0x12, 0x34, 0x56));
+    }
 }
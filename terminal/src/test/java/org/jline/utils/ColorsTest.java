@@ -8,9 +8,13 @@
  */
 package org.jline.utils;
 
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 public class ColorsTest {
 
@@ -30,4 +34,48 @@ public class ColorsTest {
     public void testRgb() {
         assertEquals(2, Colors.roundRgbColor(0, 128, 0, 16));
     }
+
+    @Test
+    public void testQuantizer() {
+        Random random = new Random(0);
+        for (String dist : new String[] {"rgb", "rgb(2,4,3)", "cie76", "cie94", "cie00", "cam02", "camlch(1,2,3)"}) {
+            Colors.Distance distance = Colors.getDistance(dist);
+            Colors.Quantizer quantizer = new Colors.Quantizer(Colors.DEFAULT_COLORS_256, 256, distance);
+            for (int i = 0; i < 2000; i++) {
+                // Repeat some colors to hit the cache
+                int color = i % 2 == 0 ? random.nextInt(1 << 24) : Colors.DEFAULT_COLORS_256[i % 256] ^ (i % 3);
+                int expected = Colors.roundColor(color, Colors.DEFAULT_COLORS_256, 256, distance);
+                assertEquals(expected, quantizer.round(color), dist + " " + Integer.toHexString(color));
+                assertEquals(expected, quantizer.round(color), dist + " " + Integer.toHexString(color));
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizerPalette() {
+        int[] colors = new int[16];
+        System.arraycopy(Colors.DEFAULT_COLORS_256, 0, colors, 0, 16);
+        Colors.Distance distance = Colors.getDistance("cie76");
+        Colors.Quantizer quantizer = new Colors.Quantizer(colors, 16, distance);
+        assertEquals(2, quantizer.round(0x008700));
+        colors[5] = 0x008700;
+        // A quantizer keeps the colors it has been created with
+        assertEquals(2, quantizer.round(0x008700));
+        assertEquals(5, new Colors.Quantizer(colors, 16, distance).round(0x008700));
+    }
+
+    @Test
+    public void testQuantizerCache() {
+        Colors.Quantizer quantizer = Colors.quantizer(16, "cie76");
+        assertSame(quantizer, Colors.quantizer(16, "cie76"));
+        // The default distance is cie76
+        assertSame(quantizer, Colors.quantizer(16, null));
+        assertNotSame(quantizer, Colors.quantizer(256, null));
+        assertNotSame(quantizer, Colors.quantizer(16, "rgb"));
+        assertEquals(2, Colors.roundRgbColor(0, 128, 0, 16));
+
+        Colors.paletteChanged();
+        assertNotSame(quantizer, Colors.quantizer(16, null));
+        assertEquals(2, Colors.roundRgbColor(0, 128, 0, 16));
+    }
 }
@@ -32,4 +32,32 @@ public class CursesTest {
                         "\\E]4;%p1%d;rgb\\:%p2%{255}%*%{1000}%/%2.2X/%p3%{255}%*%{1000}%/%2.2X/%p4%{255}%*%{1000}%/%2.2X\\E\\\\",
                         123, 0xfa, 0x00, 0x89));
     }
+
+    @Test
+    public void testElseIf() throws Exception {
+        String setaf = "\\E[%?%p1%{8}%<%t3%p1%d%e%p1%{16}%<%t9%p1%{8}%-%d%e38;5;%p1%d%;m";
+        assertEquals("\033[31m", Curses.tputs(setaf, 1));
+        assertEquals("\033[91m", Curses.tputs(setaf, 9));
+        assertEquals("\033[38;5;100m", Curses.tputs(setaf, 100));
+    }
+
+    @Test
+    public void testConditionalEscapes() throws Exception {
+        String sgr = "\\E[0%?%p1%t;1%;m%?%p9%t\\016%e\\017%;";
+        assertEquals("\033[0;1m\016", Curses.tputs(sgr, 1, 0, 0, 0, 0, 0, 0, 0, 1));
+        assertEquals("\033[0m\017", Curses.tputs(sgr, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void testProgram() throws Exception {
+        Curses.Program program = Curses.compile("\\E[%i%p1%d;%p2%dH");
+        Object[] params = {4, 9};
+        assertEquals("\033[5;10H", program.execute(params));
+        assertEquals("\033[5;10H", program.execute(params));
+        assertEquals(4, params[0]);
+
+        StringBuilder sb = new StringBuilder();
+        Curses.compile("%?%p2%{1}%<%t%?%p2%tA%eB%;%eC%;%p1%l%d%p1%5s|%p2%:-3d|").execute(sb, "xy", 0);
+        assertEquals("B2   xy|0  |", sb.toString());
+    }
 }
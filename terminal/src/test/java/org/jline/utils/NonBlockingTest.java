@@ -10,6 +10,7 @@ package org.jline.utils;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.StringReader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
@@ -177,4 +178,36 @@ public class NonBlockingTest {
         }
         assertEquals(NonBlockingInputStream.READ_EXPIRED, is.read(100));
     }
+
+    @Test
+    public void testNonBlockingReaderImplReadsInBulk() throws IOException {
+        NonBlockingReaderImpl nbr = new NonBlockingReaderImpl("name", new StringReader("abcdefgh"), 4);
+        try {
+            assertEquals('a', nbr.peek(100));
+            assertEquals(4, nbr.available());
+            assertEquals('a', nbr.read(100));
+            char[] buf = new char[8];
+            assertEquals(3, nbr.readBuffered(buf, 100));
+            assertEquals("bcd", new String(buf, 0, 3));
+            assertEquals(0, nbr.available());
+            assertEquals(4, nbr.readBuffered(buf, 100));
+            assertEquals("efgh", new String(buf, 0, 4));
+            assertEquals(-1, nbr.read(100));
+            assertEquals(-1, nbr.read(100));
+        } finally {
+            nbr.close();
+        }
+    }
+
+    @Test
+    public void testNonBlockingReaderImplLocalRead() throws IOException {
+        NonBlockingReaderImpl nbr = new NonBlockingReaderImpl("name", new StringReader("xyz"));
+        assertEquals('x', nbr.read());
+        assertTrue(nbr.ready());
+        assertEquals(2, nbr.available());
+        assertEquals('y', nbr.read(100));
+        assertEquals('z', nbr.read());
+        assertEquals(-1, nbr.read());
+        nbr.close();
+    }
 }